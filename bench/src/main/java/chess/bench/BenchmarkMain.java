@@ -0,0 +1,27 @@
+package chess.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * BenchmarkMain runs the benchmarks like org.openjdk.jmh.Main does (same command line options,
+ * e.g. a regex selecting benchmarks or -p phase=endgame), but always with the GC profiler, so
+ * that allocation per operation is reported next to throughput and average time.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain(){
+    }
+
+    public static void main(String[] args) throws Exception{
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if(cmd.shouldHelp() || cmd.shouldList() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()){
+            org.openjdk.jmh.Main.main(args);
+            return;
+        }
+        new Runner(new OptionsBuilder().parent(cmd).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,110 @@
+package chess.bench;
+
+import chess.Chess;
+import chess.Position;
+
+/**
+ * Corpus is the fixed set of positions every benchmark runs over, split into opening, middlegame
+ * and endgame positions so that a change that only helps (or hurts) one phase shows up as such.
+ * The positions never change; results are only comparable between runs over the same corpus.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Corpus {
+    /**
+     * Opening positions: the initial position, a few main lines and a position after fool's mate.
+     */
+    public static final String[] OPENING = {
+        "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1",
+        "r1bqkbnr/pppp1ppp/2n5/1B2p3/4P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3",
+        "rnbqkb1r/pp2pppp/3p1n2/8/3NP3/8/PPP2PPP/RNBQKB1R w KQkq - 1 5",
+        "rnbqkb1r/ppp2ppp/4pn2/3p4/2PP4/2N5/PP2PPPP/R1BQKBNR w KQkq - 2 4",
+        "rnbqkbnr/ppp1pppp/8/8/3pP3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 3",
+        "rnb1kbnr/pppp1ppp/8/4p3/6Pq/5P2/PPPPP2P/RNBQKBNR w KQkq - 1 3",
+    };
+    /**
+     * Middlegame positions, including the usual perft test positions with many captures, pins,
+     * castling and promotion possibilities, and a position with the side to move in check.
+     */
+    public static final String[] MIDDLEGAME = {
+        "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+        "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+        "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+        "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+        "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP1B1PPP/R2QKB1R w KQ - 4 8",
+        "2r2rk1/pp1bqpp1/2nppn1p/8/2PNP3/2N1BP2/PP1Q2PP/2KR3R b - - 3 14",
+    };
+    /**
+     * Endgame positions with few pieces, where king and pawn moves dominate, ending with a stalemate.
+     */
+    public static final String[] ENDGAME = {
+        "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+        "8/8/8/4k3/8/8/8/4K2R w K - 0 1",
+        "8/8/4k3/8/3PK3/8/8/8 w - - 0 1",
+        "8/5pk1/6p1/R7/5P2/6KP/r7/8 b - - 2 40",
+        "6k1/8/8/8/8/8/5q2/3R2K1 w - - 0 50",
+        "8/8/1k6/8/2pP4/8/8/3K4 b - d3 0 45",
+        "7k/5Q2/6K1/8/8/8/8/8 b - - 0 60",
+    };
+
+    private Corpus(){
+    }
+
+    /**
+     * Returns the FEN strings of one phase of the corpus.
+     *
+     * @param phase "opening", "middlegame", "endgame" or "all"
+     * @return      FEN strings of that phase
+     */
+    public static String[] fens(String phase){
+        switch(phase){
+            case "opening":
+                return OPENING;
+            case "middlegame":
+                return MIDDLEGAME;
+            case "endgame":
+                return ENDGAME;
+            case "all":
+                String[] rl = new String[OPENING.length + MIDDLEGAME.length + ENDGAME.length];
+                System.arraycopy(OPENING, 0, rl, 0, OPENING.length);
+                System.arraycopy(MIDDLEGAME, 0, rl, OPENING.length, MIDDLEGAME.length);
+                System.arraycopy(ENDGAME, 0, rl, OPENING.length + MIDDLEGAME.length, ENDGAME.length);
+                return rl;
+            default:
+                throw new IllegalArgumentException("Unknown phase: " + phase);
+        }
+    }
+
+    /**
+     * Returns the positions of one phase of the corpus.
+     *
+     * @param phase "opening", "middlegame", "endgame" or "all"
+     * @return      the positions
+     */
+    public static Position[] positions(String phase){
+        String[] fens = fens(phase);
+        Position[] rl = new Position[fens.length];
+        for(int i = 0; i < fens.length; i++){
+            rl[i] = Position.fromFen(fens[i]);
+        }
+        return rl;
+    }
+
+    /**
+     * Returns one Chess game per position of a phase of the corpus, each set up at its position
+     * with the right side to move, the way a game in progress would be.
+     *
+     * @param phase "opening", "middlegame", "endgame" or "all"
+     * @return      the games
+     */
+    public static Chess[] games(String phase){
+        Position[] positions = positions(phase);
+        Chess[] rl = new Chess[positions.length];
+        for(int i = 0; i < positions.length; i++){
+            Chess game = new Chess();
+            game.setPosition(positions[i]);
+            rl[i] = game;
+        }
+        return rl;
+    }
+}
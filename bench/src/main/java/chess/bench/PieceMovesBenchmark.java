@@ -0,0 +1,99 @@
+package chess.bench;
+
+import chess.PackedPosition;
+import chess.Piece;
+import chess.Position;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PieceMovesBenchmark measures the move generation of one piece type at a time (the per-piece
+ * Piece.generateMoves(), which replaced getAllPossibleMoves()), over every piece of that type and
+ * of either color in all corpus positions. One operation is one pass over those pieces.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class PieceMovesBenchmark {
+    /**
+     * Piece type to generate moves for.
+     */
+    @Param({"PAWN", "KNIGHT", "BISHOP", "ROOK", "QUEEN", "KING"})
+    public String type;
+
+    /**
+     * Position of each piece to generate moves for.
+     */
+    private Position[] positions;
+    /**
+     * Square of each piece to generate moves for.
+     */
+    private int[] squares;
+    private int[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        int type_code = "PNBRQK".indexOf(this.type.equals("KNIGHT") ? 'N' : this.type.charAt(0)) + 1;
+        Position[] corpus = Corpus.positions("all");
+        Position[] positions = new Position[corpus.length * 16];
+        int[] squares = new int[positions.length];
+        int n = 0;
+        for(Position position : corpus){
+            //move generation expects a piece of the side to move, so look at each position from both sides
+            Position[] sides = {position, Position.fromFen(flipTurn(position.toFen()))};
+            for(Position side : sides){
+                int own = side.turn == 'w' ? 0 : PackedPosition.BLACK;
+                for(int sq = 0; sq < 64; sq++){
+                    if(side.pieceAt(sq) == (type_code | own) && !side.isAttacked(side.kingSquare(side.turn == 'w' ? 'b' : 'w'), side.turn)){
+                        positions[n] = side;
+                        squares[n++] = sq;
+                    }
+                }
+            }
+        }
+        this.positions = Arrays.copyOf(positions, n);
+        this.squares = Arrays.copyOf(squares, n);
+        this.buffer = new int[Position.MAX_MOVES];
+    }
+
+    @Benchmark
+    public int generateMoves(){
+        int n = 0;
+        for(int i = 0; i < this.positions.length; i++){
+            Position position = this.positions[i];
+            int from = this.squares[i];
+            n += Piece.of(position.pieceAt(from)).generateMoves(position, from, this.buffer, 0);
+        }
+        return n;
+    }
+
+    /**
+     * Returns a FEN string with the other side to move and no en passant square.
+     *
+     * @param fen   FEN string
+     * @return      the same position with the other side to move
+     */
+    private static String flipTurn(String fen){
+        String[] fields = fen.split(" ");
+        fields[1] = fields[1].equals("w") ? "b" : "w";
+        fields[3] = "-";
+        return String.join(" ", fields);
+    }
+}
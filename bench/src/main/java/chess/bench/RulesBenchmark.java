@@ -0,0 +1,186 @@
+package chess.bench;
+
+import chess.Chess;
+import chess.LegalMoveCache;
+import chess.Move;
+import chess.PackedPosition;
+import chess.Position;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * RulesBenchmark measures the rule checks a game calls for every move typed: Chess.canMove(),
+ * Chess.checkCheckStatus() and Chess.isCheckMate(), plus the Position queries they are built on
+ * (the "would the king be attacked after this move" test, full legal move generation and making a
+ * move). One operation is one pass over all positions of the selected corpus phase.
+ * <p>
+ * canMove() runs against warm caches after the first operation, so it times the move set lookups;
+ * canMoveCold() starts every position with empty caches, which is what the first query after a
+ * move costs.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RulesBenchmark {
+    /**
+     * Corpus phase to run over.
+     */
+    @Param({"opening", "middlegame", "endgame"})
+    public String phase;
+
+    private Chess[] games;
+    private Position[] positions;
+    /**
+     * Equal copies of positions, distinct objects: canMoveCold() alternates between the two so
+     * that no game finds its own cached move set either.
+     */
+    private Position[] copies;
+    private boolean useCopies = false;
+    /**
+     * Per position, the moves given to canMove(): all legal moves and as many random
+     * from/to pairs starting on an own piece, most of them illegal.
+     */
+    private int[][] candidates;
+    /**
+     * Per position, its legal moves.
+     */
+    private int[][] legal;
+    private int[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp(){
+        this.games = Corpus.games(this.phase);
+        this.positions = Corpus.positions(this.phase);
+        this.copies = Corpus.positions(this.phase);
+        this.candidates = new int[this.positions.length][];
+        this.legal = new int[this.positions.length][];
+        this.buffer = new int[Position.MAX_MOVES];
+        SplittableRandom random = new SplittableRandom(42);
+        for(int i = 0; i < this.positions.length; i++){
+            Position position = this.positions[i];
+            int[] moves = position.legalMoves();
+            this.legal[i] = moves;
+            int[] own = new int[16];
+            int own_count = 0;
+            for(int sq = 0; sq < 64; sq++){
+                int code = position.pieceAt(sq);
+                if(code != 0 && ((code & PackedPosition.BLACK) == 0) == (position.turn == 'w') && own_count < own.length){
+                    own[own_count++] = sq;
+                }
+            }
+            int[] c = new int[moves.length * 2];
+            System.arraycopy(moves, 0, c, 0, moves.length);
+            for(int j = moves.length; j < c.length; j++){
+                c[j] = Move.of(own[random.nextInt(own_count)], random.nextInt(64));
+            }
+            this.candidates[i] = c;
+        }
+    }
+
+    @Benchmark
+    public int canMove(){
+        int n = 0;
+        for(int i = 0; i < this.games.length; i++){
+            Chess game = this.games[i];
+            for(int move : this.candidates[i]){
+                int from = Move.from(move);
+                int to = Move.to(move);
+                if(game.canMove(from >> 3, from & 7, to >> 3, to & 7)){
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    /**
+     * canMove() right after each game is set to a new Position object, with the shared
+     * LegalMoveCache cleared: the first query of every position generates its legal moves. Also
+     * times Chess.setPosition(), which is small next to the move generation.
+     */
+    @Benchmark
+    public int canMoveCold(){
+        LegalMoveCache.SHARED.clear();
+        Position[] next = this.useCopies ? this.copies : this.positions;
+        this.useCopies = !this.useCopies;
+        for(int i = 0; i < this.games.length; i++){
+            this.games[i].setPosition(next[i]);
+        }
+        return this.canMove();
+    }
+
+    @Benchmark
+    public int checkCheckStatus(){
+        int n = 0;
+        for(Chess game : this.games){
+            n += game.checkCheckStatus();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int isCheckMate(){
+        int n = 0;
+        for(Chess game : this.games){
+            if(game.isCheckMate()){
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * The test that replaced Piece.leavesKingChecked(): whether the own King is safe after each
+     * legal move, looked at without making the move.
+     */
+    @Benchmark
+    public int isSafeAfter(){
+        int n = 0;
+        for(int i = 0; i < this.positions.length; i++){
+            Position position = this.positions[i];
+            for(int move : this.legal[i]){
+                if(position.isSafeAfter(Move.from(move), Move.to(move), -1)){
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int generateMoves(){
+        int n = 0;
+        for(Position position : this.positions){
+            n += position.generateMoves(this.buffer);
+        }
+        return n;
+    }
+
+    @Benchmark
+    public void play(Blackhole bh){
+        for(int i = 0; i < this.positions.length; i++){
+            Position position = this.positions[i];
+            for(int move : this.legal[i]){
+                bh.consume(position.play(move));
+            }
+        }
+    }
+}
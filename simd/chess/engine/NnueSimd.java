@@ -0,0 +1,69 @@
+package chess.engine;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * NnueSimd is the NnueKernel written with the Vector API, so that the loops run on as many lanes as
+ * the CPU has (8 ints with AVX2, 16 with AVX-512). It is the only class of the simd/ source root,
+ * which has to be compiled with --add-modules jdk.incubator.vector onto the class path of the engine:
+ * <pre>
+ *     javac --add-modules jdk.incubator.vector -cp out -d out simd/chess/engine/NnueSimd.java
+ * </pre>
+ * NnueNetwork creates it by name when the module is loaded. Every loop finishes the lanes that do
+ * not fill a vector with plain code.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+final class NnueSimd implements NnueKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+
+    NnueSimd(){
+    }
+
+    public void update(int[] src, int[] dst, int[] weights, int[] adds, int nadd, int[] subs, int nsub, int hidden){
+        int bound = SPECIES.loopBound(hidden);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()){
+            IntVector v = IntVector.fromArray(SPECIES, src, i);
+            for(int a = 0; a < nadd; a++){
+                v = v.add(IntVector.fromArray(SPECIES, weights, adds[a] + i));
+            }
+            for(int s = 0; s < nsub; s++){
+                v = v.sub(IntVector.fromArray(SPECIES, weights, subs[s] + i));
+            }
+            v.intoArray(dst, i);
+        }
+        for(; i < hidden; i++){
+            int v = src[i];
+            for(int a = 0; a < nadd; a++){
+                v += weights[adds[a] + i];
+            }
+            for(int s = 0; s < nsub; s++){
+                v -= weights[subs[s] + i];
+            }
+            dst[i] = v;
+        }
+    }
+
+    public int output(int[] us, int[] them, int[] weights, int hidden){
+        IntVector zero = IntVector.zero(SPECIES);
+        IntVector top = IntVector.broadcast(SPECIES, NnueNetwork.QA);
+        IntVector sum = zero;
+        int bound = SPECIES.loopBound(hidden);
+        int i = 0;
+        for(; i < bound; i += SPECIES.length()){
+            IntVector a = IntVector.fromArray(SPECIES, us, i).max(zero).min(top);
+            IntVector b = IntVector.fromArray(SPECIES, them, i).max(zero).min(top);
+            sum = sum.add(a.mul(IntVector.fromArray(SPECIES, weights, i)))
+                .add(b.mul(IntVector.fromArray(SPECIES, weights, hidden + i)));
+        }
+        int rl = sum.reduceLanes(VectorOperators.ADD);
+        for(; i < hidden; i++){
+            rl += Math.min(Math.max(us[i], 0), NnueNetwork.QA) * weights[i]
+                + Math.min(Math.max(them[i], 0), NnueNetwork.QA) * weights[hidden + i];
+        }
+        return rl;
+    }
+}
@@ -1,25 +1,39 @@
 package chess;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.Scanner;
-import java.util.ArrayList;
-import chess.piece.*;
+import java.util.Map;
+import java.util.TreeMap;
+import chess.engine.EngineConfig;
+import chess.engine.EnginePlayer;
+import chess.jfr.CheckmateDetectionEvent;
+import chess.jfr.MovePieceEvent;
+import chess.jfr.MoveValidationEvent;
+import chess.journal.MoveJournal;
+import chess.metrics.RulesMetrics;
+import chess.piece.Pawn;
 
 /**
- * Chess is a class that takes care of the game logic of chess. It contains 
- * a 2D array of Piece, which is a class for the chess pieces. 
+ * Chess is a class that takes care of the game logic of chess. It keeps the current
+ * Position, which stores one byte per square; the move logic of each piece type lives in
+ * the shared Piece instances (see Piece.of()).
  * 
  * @author Seok Yim, Mae Khaled
  */
 public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS I NEWLY IMPLEMENTED!// CHECK AND CHECK MATE IMPLEMENATION!// ALSO, ANY MOVE THAT MAKES THEIR OWN KING CHECKED/CHECKMATED IS NOT ALLOWED!
     //ALSO, HAVE TO WRITE JAVA DOC FOR THE CLASSES AS WELL!!
     /**
-     * This is a chessboard of grid size 8 * 8 (regular chessboard). Is a 
-     * 2D matrix for Piece instances.
+     * The current position of the game (regular 8 * 8 chessboard, one piece code per square, plus
+     * castling rights, En Passant square and the fifty-move counter). Replaced by a new Position on
+     * every move.
      */
-    public Piece[][] chessboard;
+    public Position position;
     /**
      * Specifies who's turn it is (either is 'w' or 'b', each standing for white and black,
-     * respectively). Initial value is 'w', since white starts first in chess.
+     * respectively). Initial value is 'w', since white starts first in chess. Always position.turn:
+     * set by playMove() and setPosition(), never flipped on its own.
      */
     public char turn = 'w';
     /**
@@ -38,23 +52,194 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
     public int turns_passed = 0;
 
     /**
-     * The main method.
+     * Hashes of every position of the game so far, used for repetition detection.
+     */
+    public PositionHistory history = new PositionHistory();
+    /**
+     * Immutable snapshot of the current position, replaced after every move. Other threads
+     * (analysis workers, spectators) read it to query legal moves and check status without
+     * locking. Positions are immutable, so this is simply the position as of the last changeTurn().
+     */
+    public volatile Position snapshot;
+
+    /**
+     * Stream that the board, prompts and game messages are written to. Defaults to System.out,
+     * but can be pointed at a socket so that the same game logic can serve a remote player.
+     */
+    public PrintStream out = System.out;
+
+    /**
+     * Journal that every accepted move, draw and resignation is appended to, so the game can be
+     * rebuilt after a crash. Null (the default) means the game is not journaled.
+     */
+    public MoveJournal journal;
+    /**
+     * Identifies this game in the journal. Only meaningful when journal is not null.
+     */
+    public long gameId;
+
+    /**
+     * Rules engine metrics of this game, exposed over JMX. Null (the default) means the game is not
+     * measured; it is only ever set when RulesMetrics.ENABLED is true.
+     */
+    public RulesMetrics metrics;
+
+    /**
+     * Engine playing one of the colors, or null (the default) if both are played at the console.
+     * The engine's moves are answered in promptInput(), and it ponders while the human is to move.
+     */
+    public EnginePlayer bot;
+    /**
+     * Set while the opponent of a draw proposal is asked to accept it, so that the bot accepts.
+     */
+    private boolean drawOffered = false;
+    /**
+     * Legal moves of legalMovesOf (see LegalMoveCache), fetched on the first canMove() query in a
+     * position and dropped when a move is made, so that repeated queries are set lookups.
+     */
+    private short[] legalMoves;
+    /**
+     * Position that legalMoves belongs to.
+     */
+    private Position legalMovesOf;
+
+    /**
+     * The main method. Usage: Chess [--bot=w|b] [--engine=spec] [journalFile]
+     * <p>
+     * With --bot the engine described by --engine (see EngineConfig, e.g. "bot:depth=6") plays
+     * that color. If a journal file is given, the games that were still in progress in it (console
+     * games as well as ChessServer sessions journaled to the same file) are listed and the user
+     * chooses one to resume or starts a new journaled game (see chooseGame()).
      * 
      * @param args  the command line arguments
+     * @throws IOException	if the journal file cannot be opened
+     */
+    public static void main(String[] args) throws IOException{
+        String journal_file = null;
+        char bot_color = 0;
+        String engine_spec = "bot";
+        for(String arg : args){
+            if(arg.startsWith("--bot=")){
+                bot_color = arg.charAt(6);
+            }
+            else if(arg.startsWith("--engine=")){
+                engine_spec = arg.substring(9);
+            }
+            else{
+                journal_file = arg;
+            }
+        }
+        EnginePlayer bot = bot_color == 0 ? null : new EnginePlayer(new EngineConfig(engine_spec), bot_color);
+
+        if(journal_file == null){
+            Chess game = new Chess();
+            game.bot = bot;
+            if(RulesMetrics.ENABLED){
+                game.metrics = RulesMetrics.register("console");
+            }
+            game.initiateGame();
+            return;
+        }
+
+        try(MoveJournal journal = MoveJournal.open(Paths.get(journal_file))){
+            Map<Long, Chess> live_games = journal.recover();
+            Scanner scanner = new Scanner(System.in);
+            Chess resumed = chooseGame(live_games, scanner);
+            if(resumed == null){
+                Chess game = new Chess();
+                game.bot = bot;
+                game.journal = journal;
+                game.gameId = journal.nextGameId();
+                if(RulesMetrics.ENABLED){
+                    game.metrics = RulesMetrics.register("game " + game.gameId);
+                }
+                game.initiateGame(scanner);
+            }
+            else{
+                Chess game = resumed;
+                game.bot = bot;
+                if(RulesMetrics.ENABLED){
+                    game.metrics = RulesMetrics.register("game " + game.gameId);
+                }
+                game.showBoard();
+                game.playGame(scanner);
+            }
+            scanner.close();
+        }
+    }
+
+    /**
+     * Lists the games recovered from a journal and asks which one to resume. An empty line picks
+     * the most recent one, "new" starts a new game, and anything else is asked again.
+     * 
+     * @param liveGames	recovered games by game id
+     * @param scanner	Scanner over the console
+     * @return			the game to resume, or null for a new game (also if there is none to resume)
      */
-    public static void main(String[] args){
-        Chess game = new Chess();
-        game.initiateGame();
+    private static Chess chooseGame(Map<Long, Chess> liveGames, Scanner scanner){
+        if(liveGames.isEmpty()){
+            return null;
+        }
+        TreeMap<Long, Chess> games = new TreeMap<>(liveGames);
+        System.out.println("Games in progress:");
+        for(Map.Entry<Long, Chess> entry : games.entrySet()){
+            Chess game = entry.getValue();
+            System.out.println("  " + entry.getKey() + ": " + game.turns_passed + " plies, "
+                + (game.turn == 'w' ? "White" : "Black") + " to move");
+        }
+        while(true){
+            System.out.print("Resume which game (id, or new; default " + games.lastKey() + ")? ");
+            String answer = scanner.nextLine().trim();
+            if(answer.isEmpty()){
+                return games.lastEntry().getValue();
+            }
+            if(answer.equals("new")){
+                return null;
+            }
+            try{
+                Chess rl = games.get(Long.parseLong(answer));
+                if(rl != null){
+                    return rl;
+                }
+            }
+            catch(NumberFormatException e){
+                //not an id; ask again
+            }
+        }
     }
 
     /**
      * Starts chess game by doing all the setups required. Takes care of
      * game logic and applying rules.
      */
-    public void initiateGame(){//where the game logic lives; ASSUMES ALL INPUT GIVEN BY USER IS VALID!
+    public void initiateGame(){
+        Scanner scanner = new Scanner(System.in);
+        this.initiateGame(scanner);
+        scanner.close();
+    }
+
+    /**
+     * Starts chess game reading moves from the given Scanner and writing everything to the out
+     * stream. The Scanner is not closed by this method; the caller owns it.
+     * 
+     * @param scanner	Scanner instance the moves are read from
+     */
+    public void initiateGame(Scanner scanner){
         this.generateBoard();
+        if(this.journal != null){
+            this.journal.appendStart(this.gameId);
+        }
         this.showBoard();
-        Scanner scanner = new Scanner(System.in);
+        this.playGame(scanner);
+    }
+
+    /**
+     * Plays the game from its current position until it is over. Used directly (without
+     * initiateGame) to resume a game that was rebuilt from the journal.
+     * 
+     * @param scanner	Scanner instance the moves are read from
+     */
+    public void playGame(Scanner scanner){//where the game logic lives; ASSUMES ALL INPUT GIVEN BY USER IS VALID!
         while(!this.isOver){
             String response = this.promptInput(scanner);
             response = response.trim();
@@ -68,12 +253,13 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
                     else{
                         this.winner = 'w';
                     }
+                    this.journalEvent(MoveJournal.RESIGN);
                     this.endGame();
                     break;
                 }
                 else{
                     //should never reach here;
-                        System.out.print("Illegal move, try again");
+                        this.out.print("Illegal move, try again");
                         continue;//since the game should not change whose turn it is
                 }
             }
@@ -82,7 +268,7 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
             	
             	//locations are supposed to be only two characters long!
             	if(elements[0].length() != 2 || elements[1].length() != 2) {
-            		System.out.print("Illegal move, try again");
+            		this.out.print("Illegal move, try again");
                     continue;//since the game should not change whose turn it is
             	}
             	
@@ -92,7 +278,7 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
                 er = 8 - (int)(elements[1].charAt(1) - '0');
                 ec = (int)(elements[1].charAt(0)-'a');
                 if(!this.canMove(sr, sc, er, ec)){//illegal move
-                    System.out.print("Illegal move, try again");
+                    this.out.print("Illegal move, try again");
                     continue;//since the game should not change whose turn it is
                 }
                 else{//legal move here
@@ -100,107 +286,174 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
                         if(elements.length == 3){
                             if(elements[2].equals("draw?")){
                                 movePiece(sr, sc, er, ec);
-                                System.out.println();
+                                this.journalMove(sr, sc, er, ec, null, true);
+                                this.out.println();
                                 this.showBoard();
                                 if(this.checkCheckStatus() == 1) {//check detected
-                                    System.out.println("\nCheck");
+                                    this.out.println("\nCheck");
                                 }
                                 this.changeTurn();
+                                this.drawOffered = true;
                                 response = this.promptInput(scanner);
                                 response = response.trim();
                                 while(!response.equals("draw")){
-                                    System.out.print("Illegal move, try again");
+                                    this.out.print("Illegal move, try again");
                                     response = this.promptInput(scanner);
                                     response = response.trim();
                                 }
+                                this.drawOffered = false;
+                                this.journalEvent(MoveJournal.DRAW);
                                 break;//ending game wihtout announcing winner; simply break out of the while loop
                             }
                             else{//promotion
                                 if(isValidPromotion(sr, sc, er, ec)){//do i need this condition checking part?
                                     movePieceWithPromotion(sr, sc, er, ec, elements[2]); 
+                                    this.journalMove(sr, sc, er, ec, elements[2], false);
                                 }
                                 else{
                                     //should never reach here; assumes all typed out promotions are valid promotions
 
-                                System.out.print("Illegal move, try again");
+                                this.out.print("Illegal move, try again");
                                 continue;//since the game should not change whose turn it is
                                 }
                             }
                         }
                         else if(elements.length == 4){//draw proposal with promotion
                             movePieceWithPromotion(sr, sc, er, ec, elements[2]);
-                            System.out.println();
+                            this.journalMove(sr, sc, er, ec, elements[2], true);
+                            this.out.println();
                             this.showBoard();
                             if(this.checkCheckStatus() == 1) {//check detected
-                                System.out.println("\nCheck");
+                                this.out.println("\nCheck");
                             }
                             this.changeTurn();
+                            this.drawOffered = true;
                             response = this.promptInput(scanner);
                             response = response.trim();
                             while(!response.equals("draw")){
-                                System.out.print("Illegal move, try again");
+                                this.out.print("Illegal move, try again");
                                 response = this.promptInput(scanner);
                                 response = response.trim();
                             }
+                            this.drawOffered = false;
+                            this.journalEvent(MoveJournal.DRAW);
                             break;//ending game without announcing winner; simply break out of the while loop
                         }
-                        else{
-                            //should never reach here; user input never exceeds 4 space-separated terms
-                        }
                     }
                     else{//a very regular move without any extra options
                         movePiece(sr, sc, er, ec);
+                        this.journalMove(sr, sc, er, ec, null, false);
                     }
                 }   
             }
-            else{
-                //should never reach here
+            else{//more than 4 terms: not a move, and the turn must not pass
+                this.out.print("Illegal move, try again");
+                continue;
             }
 
-            //check for check or checkmate after each valid move
+            //check for check, checkmate or stalemate after each valid move
             int check_status = this.checkCheckStatus();
             if(check_status == 0){
                 changeTurn();
-                System.out.println();
+                this.out.println();
                 this.showBoard();
             }
             else if(check_status == 1){//check
                 changeTurn();
-                System.out.println();
+                this.out.println();
+                this.showBoard();
+                this.out.println("\nCheck");
+            }
+            else if(check_status == 3){//stalemate, game drawn
+                this.out.println();
                 this.showBoard();
-                System.out.println("\nCheck");
+                this.out.println("\nDraw by stalemate");
+                this.journalEvent(MoveJournal.DRAW);
+                this.isOver = true;
             }
-            else{//check_status == 2, checkmate, gameover
+            else{//check_status == 2, checkmate, gameover; the side to move is the one mated
                 if(this.turn == 'w'){
-                    this.winner = 'w';
+                    this.winner = 'b';
                 }
                 else{
-                    this.winner = 'b';
+                    this.winner = 'w';
                 }
-                System.out.println();
+                this.out.println();
                 this.showBoard();
-                System.out.println("\nCheckmate");
+                this.out.println("\nCheckmate");
+                this.journalEvent(MoveJournal.CHECKMATE);
                 this.endGame();
             }
+
+            //draw adjudication; a checkmate on the same move takes precedence
+            if(!this.isOver && (this.isThreefoldRepetition() || this.isFiftyMoveRule())){
+                if(this.isThreefoldRepetition()){
+                    this.out.println("\nDraw by threefold repetition");
+                }
+                else{
+                    this.out.println("\nDraw by fifty-move rule");
+                }
+                this.journalEvent(MoveJournal.DRAW);
+                this.isOver = true;
+            }
         }
-        scanner.close();
-        System.out.println();
+        if(this.bot != null){
+            this.bot.stopPondering();
+        }
+        this.out.println();
+        this.out.flush();
     }
     
     /**
-     * Changes turn in chess after one player ends their move.
+     * Appends an accepted move to the journal, if the game has one.
+     * 
+     * @param sr        	starting row index
+     * @param sc        	starting column index
+     * @param er        	ending row index
+     * @param ec        	ending column index
+     * @param promoType 	promotion piece type as typed by the player, or null for no promotion
+     * @param drawOffer		whether the move came with a draw proposal
      */
-    public void changeTurn(){
-        if(this.turn == 'w'){
-            this.turn = 'b';
+    private void journalMove(int sr, int sc, int er, int ec, String promoType, boolean drawOffer){
+        if(this.journal != null){
+            char promo = promoType == null || promoType.isEmpty() ? 0 : promoType.charAt(0);
+            this.journal.appendMove(this.gameId, sr, sc, er, ec, promo, drawOffer);
         }
-        else{
-            this.turn = 'w';
+    }
+
+    /**
+     * Appends a game-ending event (MoveJournal.RESIGN, DRAW or CHECKMATE) to the journal, if the
+     * game has one.
+     * 
+     * @param type	journal record type of the event
+     */
+    private void journalEvent(byte type){
+        if(this.journal != null){
+            this.journal.appendEvent(this.gameId, type, this.turn);
         }
-        this.turns_passed++;
+    }
+
+    /**
+     * Hands the game over to the other player after one player ends their move: publishes the new
+     * position and records it in the history. turn already follows the position (see playMove()),
+     * so calling this without a move being made does not pass the turn.
+     */
+    public void changeTurn(){
+        this.turns_passed = this.position.plies;
+        this.publishSnapshot();
+    }
+
+    /**
+     * Takes a new snapshot of the current position, publishes it to readers and records its hash
+     * in the history. Called whenever the position changes hands between the two players.
+     */
+    public void publishSnapshot(){
+        this.history.push(this.position.hash);
+        this.snapshot = this.position;
     }
     /**
-     * Prompts input from user for the chess game.
+     * Prompts input from user for the chess game. If the bot is to move, its move is returned
+     * (and printed) as if it had been typed; otherwise the bot ponders while the user types.
      * 
      * @param scanner	Scanner instance used by initiateGame()
      * @return  		String typed in by user
@@ -214,7 +467,16 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
             which_player = "Black";
         }
 
-        System.out.print("\n" + which_player + "'s move: ");
+        this.out.print("\n" + which_player + "'s move: ");
+        this.out.flush();
+        if(this.bot != null && this.turn == this.bot.color){
+            String line = this.drawOffered ? "draw" : Move.toString(this.bot.chooseMove(this.position, this.history));
+            this.out.println(line);
+            return line;
+        }
+        if(this.bot != null){
+            this.bot.ponder(this.position, this.history);
+        }
         String line = scanner.nextLine();
         return line;
     }
@@ -228,66 +490,64 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
             winner = "Black";
         }
 
-        System.out.println("\n" + winner + " wins");
+        this.out.println("\n" + winner + " wins");
     }
 
     /**
-     * Generates the Piece[][] chessboard and populates it with the appropriate Piece instances. 
+     * Sets the game up at the given position, e.g. an opening position from a file, as if it was
+     * reached in play. The move counter is taken from the position and the game history is cleared.
+     * 
+     * @param position	position to start from
+     */
+    public void setPosition(Position position){
+        this.position = position;
+        this.turn = position.turn;
+        this.turns_passed = position.plies;
+        this.isOver = false;
+        this.winner = 'd';
+        this.history.clear();
+        this.publishSnapshot();
+    }
+
+    /**
+     * Generates the chessboard and populates it with the pieces at their starting squares.
      * Row and column length are both 8(regular chess board).
      */
     public void generateBoard(){
-        this.chessboard = new Piece[8][8];
-        
-        //inserting black pawns
-        for(int i = 0; i < this.chessboard[1].length; i++){
-            this.chessboard[1][i] = new Pawn(1, i, 'b');
-        }
-        //inserting white pawns
-        for(int i = 0; i < this.chessboard[6].length; i++){
-            this.chessboard[6][i] = new Pawn(6,i,'w');
-        }
-
-        //inserting other Pieces
-        this.chessboard[0][0] = new Rook(0,0,'b'); this.chessboard[0][7] = new Rook(0,7,'b');
-        this.chessboard[0][1] = new Knight(0,1,'b'); this.chessboard[0][6] = new Knight(0, 6, 'b');
-        this.chessboard[0][2] = new Bishop(0,2,'b'); this.chessboard[0][5] = new Bishop(0, 5, 'b');
-        this.chessboard[0][3] = new Queen(0, 3, 'b'); this.chessboard[0][4] = new King(0, 4, 'b');
-
-        this.chessboard[7][0] = new Rook(7,0,'w'); this.chessboard[7][7] = new Rook(7,7,'w');
-        this.chessboard[7][1] = new Knight(7,1,'w'); this.chessboard[7][6] = new Knight(7, 6, 'w');
-        this.chessboard[7][2] = new Bishop(7,2,'w'); this.chessboard[7][5] = new Bishop(7, 5, 'w');
-        this.chessboard[7][3] = new Queen(7, 3, 'w'); this.chessboard[7][4] = new King(7, 4, 'w');
+        this.position = Position.initial();
+        this.history.clear();
+        this.publishSnapshot();
     }
     /**
-     * Prints the Piece[][] chessboard.
+     * Prints the chessboard.
      */
     public void showBoard(){
-        for(int i = 0; i < this.chessboard.length; i++){
-            for(int j  = 0; j < this.chessboard[i].length; j++){
-                if(this.chessboard[i][j] == null){
+        for(int i = 0; i < 8; i++){
+            for(int j  = 0; j < 8; j++){
+                if(this.getPiece(i, j) == null){
                     if((i + j) % 2 == 0){
-                        System.out.print("   ");
+                        this.out.print("   ");
                     }
                     else{
-                        System.out.print("## ");
+                        this.out.print("## ");
                     }
                 }
                 else{
-                    System.out.print(this.chessboard[i][j] + " ");
+                    this.out.print(this.getPiece(i, j) + " ");
                 }
             }
-            System.out.println((8-i));
+            this.out.println((8-i));
         }
-        for(int i = 0 ; i < this.chessboard[0].length; i++){
-        	if(i == this.chessboard[0].length-1) {
-                System.out.print(" " + (char)('a'+i));
+        for(int i = 0 ; i < 8; i++){
+        	if(i == 7) {
+                this.out.print(" " + (char)('a'+i));
         	}
         	else {
-                System.out.print(" " + (char)('a'+i) + " ");
+                this.out.print(" " + (char)('a'+i) + " ");
 
         	}
         }
-        System.out.println();
+        this.out.println();
     }
     /**
      * Checks whether the specified piece can move to the specified location.
@@ -299,6 +559,40 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
      * @return      true if move specified is valid, false otherwise
      */
     public boolean canMove(int sr, int sc, int er, int ec){
+        MoveValidationEvent event = new MoveValidationEvent();
+        event.begin();
+        boolean legal = this.isAllowedMove(sr, sc, er, ec);
+        if(RulesMetrics.ENABLED && this.metrics != null){
+            this.metrics.moveChecked(legal);
+        }
+        if(event.shouldCommit()){
+            event.gameId = this.gameId;
+            event.move = coordinates(sr, sc) + " " + coordinates(er, ec);
+            event.legal = legal;
+            event.commit();
+        }
+        return legal;
+    }
+    /**
+     * Returns every legal move of the side to move at once, as a destination mask per origin
+     * square plus promotion and castling flags (see MoveTargets). Clients that highlight legal
+     * targets should use this instead of calling canMove() for every pair of squares.
+     * 
+     * @return  legal targets of the current position
+     */
+    public MoveTargets legalTargets(){
+        return MoveTargets.of(this.position);
+    }
+    /**
+     * Does the actual checking for canMove().
+     * 
+     * @param sr    starting row index
+     * @param sc    starting column index
+     * @param er    ending row index
+     * @param ec    ending column index
+     * @return      true if move specified is valid, false otherwise
+     */
+    private boolean isAllowedMove(int sr, int sc, int er, int ec){
         //1. check whether the move is within the board (cannot go outside the board, also I’m pretty sure you HAVE TO MAKE A MOVE, so going to the same position as the current location does not work)
         if(sr < 0 || sr > 7 || sc < 0 || sc > 7 
         || er < 0 || er > 7 || ec < 0 || ec > 7){
@@ -316,20 +610,22 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
         if(s_piece.color != this.turn){
             return false;
         }
-		//4. checks whether the piece type can perform the action (call Piece.isValidMove(er,ec) —> induces polymorphism)
-        if(!s_piece.isValidMove(er, ec, this.chessboard,this.turns_passed)){//this part also checks whether there is a piece of the same color 
-            //at the final location
-            return false;
+		//4. checks whether the piece type can perform the action (the Position asks the shared Piece for its moves —> induces polymorphism)
+        //this part also checks whether there is a piece of the same color at the final location, and whether the own King is left checked
+        //the legal moves of the position are generated once and cached, so this is a lookup
+        if(this.legalMovesOf != this.position){
+            this.legalMoves = LegalMoveCache.SHARED.get(this.position);
+            this.legalMovesOf = this.position;
         }
-        return true;
+        return LegalMoveCache.contains(this.legalMoves, sr * 8 + sc, er * 8 + ec);
     }
     /**
      * This method should be called only when the CanMove() method returned true for the specified pair of
      * sr and sc. 
      * <p>
-     * Moves the piece at the specified location from chessboard[sr][sc] to chessboard[er][ec].
-     * If an enemey piece is killed, remove that piece from the board. This method also takes into account Pawns
-     * being promoted after reaching the edge of the board.
+     * Moves the piece at the specified location from (sr, sc) to (er, ec).
+     * If an enemey piece is killed, remove that piece from the board. This method also takes into account
+     * castling, En Passant and Pawns being promoted (to a Queen) after reaching the edge of the board.
      * 
      * 
      * @param sr    staerting row index
@@ -338,59 +634,13 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
      * @param ec    ending column index
      */
     public void movePiece(int sr, int sc, int er, int ec){
-        //take CASTLING into consideration
-        if(this.getPiece(sr, sc) instanceof King && Math.abs(sc - ec) == 2){
-            int which_colored_king_row = 0;
-            if(this.getPiece(sr, sc).color == 'w'){
-                which_colored_king_row = 7;
-            }
-            if(sc > ec){
-                movePiece(which_colored_king_row,0,which_colored_king_row,3);    
-            }
-            else{
-                movePiece(which_colored_king_row,7,which_colored_king_row,5);    
-            }
-        }
-        else if(this.getPiece(sr, sc) instanceof Pawn){//part for handling En Passant
-            Pawn temp_pawn = (Pawn)this.getPiece(sr, sc);
-            if(Math.abs(er - sr) == 2){
-                temp_pawn.twoStepTurnNumber = this.turns_passed;
-            }
-            else if(Math.abs(temp_pawn.currentLocation[0] - er) == 1 && Math.abs(temp_pawn.currentLocation[1] - ec) == 1
-            && this.chessboard[er][ec] == null){
-                //En Passant DETECTED BABY
-                Piece EnPassant_enemey = this.chessboard[temp_pawn.currentLocation[0]][ec];
-                EnPassant_enemey.kill();
-                this.chessboard[temp_pawn.currentLocation[0]][ec] = null;
-            }
-        }
-        
-        //check if there exists an enemy piece. If there is, kill it.
-        Piece enemey = this.chessboard[er][ec];
-        if(enemey != null){
-            enemey.kill();
-            this.chessboard[er][ec] = null;
-        }
-		
-        Piece piece = this.getPiece(sr, sc);
-        //check if promotion takes place(only for pawns)
-            //if yes, call movePieceWithPromotion(sr,sc,er,ec,"Queen");
-        if(this.isValidPromotion(sr, sc, er, ec)){
-            movePieceWithPromotion(sr, sc, er, ec, "Q");
-        }
-        else{
-            //else...
-                //move 
-            piece.move(er,ec);
-            this.chessboard[sr][sc] = null;
-            this.chessboard[er][ec] = piece;
-        }
+        this.playMove(Move.of(sr, sc, er, ec));
     }
     /**
      * This method should be called only when the CanMove() method returned true for the specified pair of 
      * sr and sc. Also, this method assumes that isValidPromotion() already checked the validity of the promotion.
      * <p>
-     * Moves the piece at the specified location from chessboard[sr][sc] to chessboard[er][ec].
+     * Moves the piece at the specified location from (sr, sc) to (er, ec).
      * If an enemy piece is killed, remove that piece from the board. This method promotes Pawns to
      * the specified promoType (Rook,Knight,Bishop, or Queen).
      * 
@@ -401,33 +651,45 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
      * @param promoType String that specifies which type of piece to promote to
      */
     public void movePieceWithPromotion(int sr, int sc, int er, int ec, String promoType){
-        //check if there exists an enemy piece. If there is, kill it.
-        Piece enemey = this.chessboard[er][ec];
-        if(enemey != null){
-            enemey.kill();
-            chessboard[er][ec] = null;
-        }
+        this.playMove(Move.of(sr * 8 + sc, er * 8 + ec, Move.promotionType(promoType)));
+    }
 
-        //get hold of piece and move it
-        Piece piece = this.getPiece(sr, sc);
-        piece.move(er,ec);
-        this.chessboard[sr][sc] = null;
-        this.chessboard[er][ec] = piece;
-        
-        //promote the pawn to promoType
-        this.chessboard[er][ec] =  piece.promote(promoType);
+    /**
+     * This method should be called only for a legal move, e.g. one chosen by an engine from
+     * Position.legalMoves(). turn follows the position, so it is the opponent's right after the
+     * move; changeTurn() then publishes the position.
+     * <p>
+     * Makes a move given in packed form (see Move), including promotions to any piece type.
+     * 
+     * @param move	packed move
+     */
+    public void playMove(int move){
+        MovePieceEvent event = new MovePieceEvent();
+        event.begin();
+        boolean capture = this.position.pieceAt(Move.to(move)) != 0;
+        this.position = this.position.play(move);
+        this.turn = this.position.turn;
+        this.legalMoves = null;
+        this.legalMovesOf = null;
+        if(event.shouldCommit()){
+            event.gameId = this.gameId;
+            event.move = Move.toString(move);
+            event.capture = capture;
+            event.commit();
+        }
     }
     
     /**
      * Returns Piece at specified location of the chessboard. Can return null if
-     * Piece does not exist at the specified location.
+     * Piece does not exist at the specified location. The returned Piece is the shared
+     * instance for its type and color.
      * 
      * @param row   row index
      * @param col   column index
      * @return      Piece or null, depending on whether Piece exists at the specific location
      */
     public Piece getPiece(int row, int col){
-        return this.chessboard[row][col];
+        return Piece.of(this.position.pieceAt(row, col));
     }
 
     /**
@@ -447,30 +709,48 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
         return false;
     }
     /**
-     * Determines whether there is a check, a checkmate, or none.
+     * Checks whether the current position has occurred three times (with the same side to move,
+     * castling rights and en passant possibility).
      * 
-     * @return  0 if none, 1 if check, and 2 if checkmate
+     * @return  true if the position occurred at least three times, false otherwise
      */
-    public int checkCheckStatus(){
-        char temp_color = 'w';
-        if(this.turn == 'w'){
-            temp_color = 'b';
-        }
+    public boolean isThreefoldRepetition(){
+        return this.history.occurrences(this.position.halfmoveClock) >= 3;
+    }
+
+    /**
+     * Checks whether fifty moves by each side have been made without a capture or a pawn move.
+     * 
+     * @return  true if the fifty-move rule applies, false otherwise
+     */
+    public boolean isFiftyMoveRule(){
+        return this.position.halfmoveClock >= 100;
+    }
 
-        if(Piece.leavesKingChecked(this.chessboard,temp_color)){
-            //NEEDS TO FIND KING TO SET its isInCheck VALUE to TRUE
-            Piece.findKing(this.chessboard, temp_color).isInChcek = true;
+    /**
+     * Determines whether there is a check, a checkmate, a stalemate, or none. Called right after
+     * a move (before changeTurn()), so it looks at the player who is about to move.
+     * 
+     * @return  0 if none, 1 if check, 2 if checkmate, and 3 if stalemate
+     */
+    public int checkCheckStatus(){
+        long start = RulesMetrics.ENABLED ? System.nanoTime() : 0;
+        int status = 0;
+        if(this.position.isInCheck()){
             if(this.isCheckMate()){
-                return 2;
+                status = 2;
             }
             else{
-                return 1;
+                status = 1;
             }
         }
-        else{
-            Piece.findKing(this.chessboard, temp_color).isInChcek = false;
+        else if(this.isStalemate()){
+            status = 3;
+        }
+        if(RulesMetrics.ENABLED && this.metrics != null){
+            this.metrics.recordCheckStatus(System.nanoTime() - start);
         }
-        return 0;
+        return status;
     }
 
     /**
@@ -480,27 +760,41 @@ public class Chess {//HAVE TO IMPLEMENT CASTLING!!! ALSO NEED TO TEST THE THINGS
      * @return  true is there is a checkmate, false otherwise
      */
     public boolean isCheckMate(){
-        char temp_color = 'w';
-        if(this.turn == 'w'){
-            temp_color = 'b';
-        }
-
-        for(int i = 0; i < this.chessboard.length; i++){
-            for(int j = 0; j < this.chessboard[i].length; j++){
-                Piece piece = this.chessboard[i][j];
-                if(piece != null && piece.color == temp_color){
-                    ArrayList<Integer[]> possible_moves = piece.getAllPossibleMoves(this.chessboard, this.turns_passed);
-                    for(int k = 0; k < possible_moves.size(); k++){
-                        int er = possible_moves.get(k)[0];
-                        int ec = possible_moves.get(k)[1];
-                        if(piece.isValidMove(er, ec, this.chessboard, this.turns_passed)){
-                            return false;
-                        }
-                    }
-                }
-            }
+        CheckmateDetectionEvent event = new CheckmateDetectionEvent();
+        event.begin();
+        long start = RulesMetrics.ENABLED ? System.nanoTime() : 0;
+        boolean mate = !this.position.hasAnyLegalMove();
+        if(RulesMetrics.ENABLED && this.metrics != null){
+            this.metrics.recordCheckMate(System.nanoTime() - start);
         }
+        if(event.shouldCommit()){
+            event.gameId = this.gameId;
+            event.sideToMove = this.position.turn;
+            event.checkmate = mate;
+            event.commit();
+        }
+        return mate;
+    }
+
+    /**
+     * Checks whether there is a stalemate: the player to move has no legal move.
+     * This method should be called only when no check is detected.
+     * 
+     * @return  true if there is a stalemate, false otherwise
+     */
+    public boolean isStalemate(){
+        return !this.position.hasAnyLegalMove();
+    }
 
-        return true;
+    /**
+     * Returns the name of a square given by row and column index, e.g. "e2". Indices outside the
+     * board give a name outside "a1" to "h8".
+     * 
+     * @param row	row index
+     * @param col	column index
+     * @return		square name
+     */
+    private static String coordinates(int row, int col){
+        return "" + (char)('a' + col) + (8 - row);
     }
 }
@@ -0,0 +1,128 @@
+package chess;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LegalMoveCache remembers the legal moves of recently seen positions, keyed by Zobrist hash, so that
+ * a GUI asking "can this piece move there?" on every hover and drag does not generate and check
+ * the moves again each time. A move set is a sorted array of from | to << 6 keys (promotions to
+ * different pieces share a key), and a query is a binary search in it.
+ * <p>
+ * The cache is shared by all games (SHARED), so positions that occur in many games, like the
+ * openings, are generated once. It holds at most capacity positions and evicts the least recently
+ * used one. Lookups lock the cache only briefly; the moves are generated outside the lock. The size
+ * of the shared cache is set with -Dchess.legalMoveCache=N (default 4096, about 300 KB).
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class LegalMoveCache {
+    /**
+     * The cache shared by all games.
+     */
+    public static final LegalMoveCache SHARED = new LegalMoveCache(Integer.getInteger("chess.legalMoveCache", 4096));
+
+    /**
+     * Maximum number of positions kept.
+     */
+    public final int capacity;
+    /**
+     * Move sets by position hash, least recently used first. Guarded by itself.
+     */
+    private final LinkedHashMap<Long, short[]> sets;
+    private long hits = 0, misses = 0;
+
+    /**
+     * Constructor for LegalMoveCache.
+     *
+     * @param capacity	maximum number of positions kept
+     */
+    public LegalMoveCache(int capacity){
+        this.capacity = Math.max(1, capacity);
+        this.sets = new LinkedHashMap<Long, short[]>(16, 0.75f, true){
+            protected boolean removeEldestEntry(Map.Entry<Long, short[]> eldest){
+                return this.size() > LegalMoveCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the legal moves of a position, from the cache or generated and added to it.
+     *
+     * @param position	the position
+     * @return			sorted from | to << 6 keys of the legal moves; must not be modified
+     */
+    public short[] get(Position position){
+        synchronized(this.sets){
+            short[] set = this.sets.get(position.hash);
+            if(set != null){
+                this.hits++;
+                return set;
+            }
+            this.misses++;
+        }
+        int[] moves = position.legalMoves();
+        short[] set = new short[moves.length];
+        int n = 0;
+        for(int move : moves){
+            set[n++] = (short)(move & 0xFFF);
+        }
+        Arrays.sort(set, 0, n);
+        int distinct = 0;
+        for(int i = 0; i < n; i++){
+            if(distinct == 0 || set[distinct - 1] != set[i]){
+                set[distinct++] = set[i];
+            }
+        }
+        set = Arrays.copyOf(set, distinct);
+        synchronized(this.sets){
+            this.sets.put(position.hash, set);
+        }
+        return set;
+    }
+
+    /**
+     * Looks a move up in a move set.
+     *
+     * @param set	move set returned by get()
+     * @param from	square the piece moves from
+     * @param to	square the piece moves to
+     * @return		true if the move is legal, false otherwise
+     */
+    public static boolean contains(short[] set, int from, int to){
+        return Arrays.binarySearch(set, (short)(from | to << 6)) >= 0;
+    }
+
+    /**
+     * Drops every cached move set, e.g. to measure lookups that miss. The hit and miss counts are
+     * kept.
+     */
+    public void clear(){
+        synchronized(this.sets){
+            this.sets.clear();
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found the position in the cache.
+     *
+     * @return  number of hits
+     */
+    public long hits(){
+        synchronized(this.sets){
+            return this.hits;
+        }
+    }
+
+    /**
+     * Returns the number of lookups that had to generate the moves.
+     *
+     * @return  number of misses
+     */
+    public long misses(){
+        synchronized(this.sets){
+            return this.misses;
+        }
+    }
+}
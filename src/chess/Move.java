@@ -0,0 +1,137 @@
+package chess;
+
+/**
+ * Move packs a chess move into a single int so that move lists are plain int arrays: bits 0-5 hold
+ * the starting square, bits 6-11 the ending square and bits 12-14 the promotion type (one of the
+ * PackedPosition type codes, 0 for none). Square indices are row * 8 + col, with row 0 being the
+ * 8th rank, the same rows and columns Chess.canMove() and Chess.movePiece() take.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Move {
+    /**
+     * Value used for "no move".
+     */
+    public static final int NONE = 0;
+
+    private Move(){
+    }
+
+    /**
+     * Packs a move without promotion.
+     *
+     * @param from	starting square index
+     * @param to	ending square index
+     * @return		packed move
+     */
+    public static int of(int from, int to){
+        return from | (to << 6);
+    }
+
+    /**
+     * Packs a move with a promotion.
+     *
+     * @param from		starting square index
+     * @param to		ending square index
+     * @param promo		PackedPosition type code of the piece to promote to, 0 for none
+     * @return			packed move
+     */
+    public static int of(int from, int to, int promo){
+        return from | (to << 6) | (promo << 12);
+    }
+
+    /**
+     * Packs a move given in row/column indices, as used by Chess.canMove() and Chess.movePiece().
+     *
+     * @param sr	starting row index
+     * @param sc	starting column index
+     * @param er	ending row index
+     * @param ec	ending column index
+     * @return		packed move
+     */
+    public static int of(int sr, int sc, int er, int ec){
+        return of(sr * 8 + sc, er * 8 + ec);
+    }
+
+    /**
+     * Returns the starting square of a move.
+     *
+     * @param move	packed move
+     * @return		starting square index
+     */
+    public static int from(int move){
+        return move & 63;
+    }
+
+    /**
+     * Returns the ending square of a move.
+     *
+     * @param move	packed move
+     * @return		ending square index
+     */
+    public static int to(int move){
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * Returns the promotion type of a move.
+     *
+     * @param move	packed move
+     * @return		PackedPosition type code of the promotion, 0 if the move is not a promotion
+     */
+    public static int promotion(int move){
+        return (move >>> 12) & 7;
+    }
+
+    /**
+     * Returns the promotion type for the letter typed after a move ("N", "B", "R" or "Q").
+     * Anything else promotes to a Queen, like Piece.promote() does.
+     *
+     * @param promoType	promotion letter as typed by the player
+     * @return			PackedPosition type code
+     */
+    public static int promotionType(String promoType){
+        switch(promoType == null ? "" : promoType){
+            case "N":
+                return PackedPosition.KNIGHT;
+            case "B":
+                return PackedPosition.BISHOP;
+            case "R":
+                return PackedPosition.ROOK;
+            default:
+                return PackedPosition.QUEEN;
+        }
+    }
+
+    /**
+     * Returns the name of a square, e.g. "e2".
+     *
+     * @param sq	square index
+     * @return		square name
+     */
+    public static String squareName(int sq){
+        return "" + (char)('a' + (sq & 7)) + (char)('8' - (sq >> 3));
+    }
+
+    /**
+     * Returns a move in the coordinate form typed at the console, e.g. "e2 e4" or "e7 e8 N".
+     *
+     * @param move	packed move
+     * @return		move in coordinate form
+     */
+    public static String toString(int move){
+        String s = squareName(from(move)) + " " + squareName(to(move));
+        switch(promotion(move)){
+            case PackedPosition.KNIGHT:
+                return s + " N";
+            case PackedPosition.BISHOP:
+                return s + " B";
+            case PackedPosition.ROOK:
+                return s + " R";
+            case PackedPosition.QUEEN:
+                return s + " Q";
+            default:
+                return s;
+        }
+    }
+}
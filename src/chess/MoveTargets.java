@@ -0,0 +1,76 @@
+package chess;
+
+/**
+ * MoveTargets holds every legal move of a position as one 64-bit destination mask per origin
+ * square, for clients that highlight legal targets: one generator pass instead of a canMove() call
+ * for each of the 64 * 64 square pairs. Bit sq of a mask stands for square sq = row * 8 + col
+ * (row 0 is the 8th rank), the same numbering as Position and Move.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class MoveTargets {
+    /**
+     * Destination mask of each origin square.
+     */
+    public final long[] destinations = new long[64];
+    /**
+     * Mask of the origin squares that have at least one legal move.
+     */
+    public long origins = 0;
+    /**
+     * Mask of the origin squares whose moves are promotions (the piece to promote to is asked for).
+     */
+    public long promotions = 0;
+    /**
+     * Castling moves that are legal right now, as PackedPosition castling bits (WHITE_KING_SIDE,
+     * WHITE_QUEEN_SIDE, BLACK_KING_SIDE, BLACK_QUEEN_SIDE).
+     */
+    public int castling = 0;
+    /**
+     * Total number of legal moves, counting each promotion piece separately.
+     */
+    public int moveCount = 0;
+
+    private MoveTargets(){
+    }
+
+    /**
+     * Computes the targets of the side to move in a position, from a single move generation.
+     *
+     * @param position	the position
+     * @return			its legal targets
+     */
+    public static MoveTargets of(Position position){
+        MoveTargets rl = new MoveTargets();
+        int[] moves = new int[Position.MAX_MOVES];
+        int n = position.generateMoves(moves);
+        rl.moveCount = n;
+        for(int i = 0; i < n; i++){
+            int from = Move.from(moves[i]);
+            int to = Move.to(moves[i]);
+            rl.destinations[from] |= 1L << to;
+            rl.origins |= 1L << from;
+            if(Move.promotion(moves[i]) != 0){
+                rl.promotions |= 1L << from;
+            }
+            else if((position.pieceAt(from) & 7) == PackedPosition.KING && Math.abs(to - from) == 2){
+                boolean king_side = to > from;
+                rl.castling |= position.turn == 'w'
+                    ? (king_side ? PackedPosition.WHITE_KING_SIDE : PackedPosition.WHITE_QUEEN_SIDE)
+                    : (king_side ? PackedPosition.BLACK_KING_SIDE : PackedPosition.BLACK_QUEEN_SIDE);
+            }
+        }
+        return rl;
+    }
+
+    /**
+     * Checks whether a piece can move from one square to another.
+     *
+     * @param from	origin square
+     * @param to	destination square
+     * @return		true if the move is legal, false otherwise
+     */
+    public boolean canMove(int from, int to){
+        return (this.destinations[from] >>> to & 1) != 0;
+    }
+}
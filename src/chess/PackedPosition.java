@@ -0,0 +1,310 @@
+package chess;
+
+import java.nio.ByteBuffer;
+
+/**
+ * PackedPosition is a compact, fixed-size (32 bytes) encoding of a chess position, meant to be used
+ * as a hash map key and as a storage record, e.g. for storing positions by the hundred million where
+ * even a Position (64-byte board plus fields) would be twice as large.
+ * <p>
+ * The 32 bytes are four longs:
+ * <ul>
+ * <li>occupancy: bit (row * 8 + col) is set if a piece stands on that square</li>
+ * <li>low and high: one 4-bit piece code per occupied square, in increasing square order
+ * (at most 32 pieces, so 32 nibbles). Bit 3 is the color (set for black), bits 0-2 the type.</li>
+ * <li>state: bit 0 side to move (set for black), bits 1-4 castling rights (white king side,
+ * white queen side, black king side, black queen side), bits 5-8 en passant column + 1 (0 if none).
+ * The other bits are reserved and always 0.</li>
+ * </ul>
+ * Two positions that are the same for the rules of chess (same pieces, side to move, castling
+ * rights and en passant possibility) have equal encodings.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class PackedPosition {
+    /**
+     * Number of bytes in the binary form of a PackedPosition.
+     */
+    public static final int BYTES = 32;
+
+    /**
+     * Type code for an empty square (only used by pieceAt()).
+     */
+    public static final int EMPTY = 0;
+    /**
+     * Type code for a Pawn.
+     */
+    public static final int PAWN = 1;
+    /**
+     * Type code for a Knight.
+     */
+    public static final int KNIGHT = 2;
+    /**
+     * Type code for a Bishop.
+     */
+    public static final int BISHOP = 3;
+    /**
+     * Type code for a Rook.
+     */
+    public static final int ROOK = 4;
+    /**
+     * Type code for a Queen.
+     */
+    public static final int QUEEN = 5;
+    /**
+     * Type code for a King.
+     */
+    public static final int KING = 6;
+    /**
+     * Flag added to a type code for black pieces.
+     */
+    public static final int BLACK = 8;
+
+    /**
+     * Castling right bit for white castling king side.
+     */
+    public static final int WHITE_KING_SIDE = 1;
+    /**
+     * Castling right bit for white castling queen side.
+     */
+    public static final int WHITE_QUEEN_SIDE = 2;
+    /**
+     * Castling right bit for black castling king side.
+     */
+    public static final int BLACK_KING_SIDE = 4;
+    /**
+     * Castling right bit for black castling queen side.
+     */
+    public static final int BLACK_QUEEN_SIDE = 8;
+
+    /**
+     * Bit set of occupied squares (square index is row * 8 + col).
+     */
+    public final long occupancy;
+    /**
+     * Piece codes of the first 16 occupied squares, 4 bits each.
+     */
+    public final long low;
+    /**
+     * Piece codes of the occupied squares after the first 16, 4 bits each.
+     */
+    public final long high;
+    /**
+     * Side to move, castling rights and en passant column.
+     */
+    public final long state;
+
+    /**
+     * Constructor for PackedPosition from its four raw words. Does no validity checking.
+     *
+     * @param occupancy	bit set of occupied squares
+     * @param low		piece codes of the first 16 occupied squares
+     * @param high		piece codes of the remaining occupied squares
+     * @param state		side to move, castling rights and en passant column
+     */
+    public PackedPosition(long occupancy, long low, long high, long state){
+        this.occupancy = occupancy;
+        this.low = low;
+        this.high = high;
+        this.state = state;
+    }
+
+    /**
+     * Encodes the current position of a chess game.
+     *
+     * @param game	game whose position is encoded
+     * @return		encoding of the game's position
+     * @throws IllegalArgumentException	if more than 32 pieces are on the board
+     */
+    public static PackedPosition encode(Chess game){
+        return game.position.toPacked();
+    }
+
+    /**
+     * Decodes this position into a new Chess game.
+     *
+     * @return  new Chess instance set up at this position
+     */
+    public Chess decode(){
+        Chess game = new Chess();
+        this.decodeInto(game);
+        return game;
+    }
+
+    /**
+     * Replaces the position of the given game with this position. The game's turns_passed is reset
+     * to 0 since the move number is not part of the encoding.
+     *
+     * @param game	game to set up
+     */
+    public void decodeInto(Chess game){
+        game.setPosition(Position.of(this));
+    }
+
+    /**
+     * Returns the piece code (type plus BLACK flag) on the given square, or EMPTY.
+     *
+     * @param sq	square index (row * 8 + col)
+     * @return		piece code, or EMPTY if no piece stands there
+     */
+    public int pieceAt(int sq){
+        if((this.occupancy & (1L << sq)) == 0){
+            return EMPTY;
+        }
+        int index = Long.bitCount(this.occupancy & ((1L << sq) - 1));
+        if(index < 16){
+            return (int)(this.low >>> (index * 4)) & 15;
+        }
+        return (int)(this.high >>> ((index - 16) * 4)) & 15;
+    }
+
+    /**
+     * Returns the side to move.
+     *
+     * @return  'w' or 'b'
+     */
+    public char sideToMove(){
+        return (this.state & 1) == 0 ? 'w' : 'b';
+    }
+
+    /**
+     * Returns the castling rights as a combination of the WHITE_KING_SIDE, ..., BLACK_QUEEN_SIDE bits.
+     *
+     * @return  castling right bits
+     */
+    public int castlingRights(){
+        return (int)(this.state >>> 1) & 15;
+    }
+
+    /**
+     * Returns the column an en passant capture can be made on, or -1 if there is none.
+     *
+     * @return  en passant column, or -1
+     */
+    public int enPassantColumn(){
+        return ((int)(this.state >>> 5) & 15) - 1;
+    }
+
+    /**
+     * Writes the 32-byte binary form of this position into the given array.
+     *
+     * @param dst		destination array
+     * @param offset	index of the first byte to write
+     */
+    public void toBytes(byte[] dst, int offset){
+        putLong(dst, offset, this.occupancy);
+        putLong(dst, offset + 8, this.low);
+        putLong(dst, offset + 16, this.high);
+        putLong(dst, offset + 24, this.state);
+    }
+
+    /**
+     * Returns the 32-byte binary form of this position.
+     *
+     * @return  new array of length BYTES
+     */
+    public byte[] toBytes(){
+        byte[] rl = new byte[BYTES];
+        this.toBytes(rl, 0);
+        return rl;
+    }
+
+    /**
+     * Reads a position from its 32-byte binary form.
+     *
+     * @param src		source array
+     * @param offset	index of the first byte to read
+     * @return			the decoded PackedPosition
+     */
+    public static PackedPosition fromBytes(byte[] src, int offset){
+        return new PackedPosition(getLong(src, offset), getLong(src, offset + 8),
+            getLong(src, offset + 16), getLong(src, offset + 24));
+    }
+
+    /**
+     * Writes this position to a ByteBuffer at its current position (32 bytes).
+     *
+     * @param buffer	buffer to write to
+     */
+    public void writeTo(ByteBuffer buffer){
+        buffer.putLong(this.occupancy).putLong(this.low).putLong(this.high).putLong(this.state);
+    }
+
+    /**
+     * Reads a position from a ByteBuffer at its current position (32 bytes).
+     *
+     * @param buffer	buffer to read from
+     * @return			the decoded PackedPosition
+     */
+    public static PackedPosition readFrom(ByteBuffer buffer){
+        return new PackedPosition(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+    }
+
+    /**
+     * Overrides the equals method from Object. Two PackedPositions are equal if all four words are.
+     *
+     * @param o	object to compare to
+     * @return	true if o is a PackedPosition encoding the same position, false otherwise
+     */
+    public boolean equals(Object o){
+        if(this == o){
+            return true;
+        }
+        if(!(o instanceof PackedPosition)){
+            return false;
+        }
+        PackedPosition p = (PackedPosition)o;
+        return this.occupancy == p.occupancy && this.low == p.low && this.high == p.high && this.state == p.state;
+    }
+
+    /**
+     * Overrides the hashCode method from Object.
+     *
+     * @return  hash code mixing all four words
+     */
+    public int hashCode(){
+        long h = this.occupancy * 0x9E3779B97F4A7C15L;
+        h = (h ^ this.low) * 0xC2B2AE3D27D4EB4FL;
+        h = (h ^ this.high) * 0x165667B19E3779F9L;
+        h = (h ^ this.state) * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    /**
+     * Overrides the toString method from Object.
+     *
+     * @return  the four words in hexadecimal
+     */
+    public String toString(){
+        return String.format("%016x:%016x:%016x:%x", this.occupancy, this.low, this.high, this.state);
+    }
+
+    /**
+     * Writes a long into a byte array, big endian.
+     *
+     * @param dst		destination array
+     * @param offset	index of the first byte
+     * @param value		value to write
+     */
+    private static void putLong(byte[] dst, int offset, long value){
+        for(int i = 7; i >= 0; i--){
+            dst[offset + i] = (byte)value;
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * Reads a big endian long from a byte array.
+     *
+     * @param src		source array
+     * @param offset	index of the first byte
+     * @return			the value read
+     */
+    private static long getLong(byte[] src, int offset){
+        long value = 0;
+        for(int i = 0; i < 8; i++){
+            value = (value << 8) | (src[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
@@ -1,167 +1,199 @@
 package chess;
 
 import chess.piece.*;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
- * Piece is an abstract class that is part of a Board (for chess). A Piece has a current location on 
- * the board of a specific size, and it has its location set as {-1,- 1} when it is killed
- * (moved out of the board). A Piece is an abstract superclass for all the actual chess 
- * Pieces, such as Pawn, Knight, etc. 
- * 
+ * Piece is an abstract superclass for all the actual chess Pieces, such as Pawn, Knight, etc.
+ * <p>
+ * Pieces are flyweights. The board itself (Position) only stores a one-byte code per square
+ * (PackedPosition.PAWN, ..., KING, plus PackedPosition.BLACK), and there is exactly one shared,
+ * stateless Piece instance per type and color, which holds the move logic for that type. Where a
+ * piece stands, whether it has moved, and so on is part of the Position, not of the Piece, so
+ * looking up or promoting a Piece never allocates anything.
+ *
  * @author Seok Yim, Mae Khaled
  */
 public abstract class Piece {
     /**
-     * This is the current location for the Piece. CurrentLocation[0] is the row index, and
-     * CurrentLocation[1] is the column index.
+     * Squares a knight on each square attacks.
      */
-    public int[] currentLocation;
+    protected static final int[][] KNIGHT_TARGETS = new int[64][];
     /**
-     * This is the color of the Piece. It has a value of either 'w' or 'b', which stand for 
-     * white and black, respectively.
+     * Squares a king on each square attacks.
      */
-    public char color;
-
+    protected static final int[][] KING_TARGETS = new int[64][];
     /**
-     * The one and only constructor for Piece. Initializes currentLocation and color.
-     * 
-     * @param cr    current row index
-     * @param cc    current column index
-     * @param color color of the Piece
+     * Squares along each of the 8 directions from each square, nearest first. Directions 0-3 are
+     * orthogonal (rook lines), 4-7 diagonal (bishop lines).
      */
-    public Piece(int cr, int cc, char color){
-        this.currentLocation = new int[]{cr,cc};
-        this.color = color;
+    protected static final int[][][] RAYS = new int[64][8][];
+
+    static{
+        int[][] knight_adders = {{2,1},{2,-1},{-2,1},{-2,-1},{1,2},{1,-2},{-1,2},{-1,-2}};
+        int[][] king_adders = {{1,1},{1,0},{1,-1},{0,1},{0,-1},{-1,1},{-1,0},{-1,-1}};
+        int[][] directions = {{1,0},{-1,0},{0,1},{0,-1},{1,1},{1,-1},{-1,1},{-1,-1}};
+        for(int sq = 0; sq < 64; sq++){
+            KNIGHT_TARGETS[sq] = targets(sq, knight_adders);
+            KING_TARGETS[sq] = targets(sq, king_adders);
+            for(int d = 0; d < 8; d++){
+                int[] ray = new int[8];
+                int n = 0;
+                int r = (sq >> 3) + directions[d][0];
+                int c = (sq & 7) + directions[d][1];
+                while(r >= 0 && r <= 7 && c >= 0 && c <= 7){
+                    ray[n++] = r * 8 + c;
+                    r += directions[d][0];
+                    c += directions[d][1];
+                }
+                RAYS[sq][d] = Arrays.copyOf(ray, n);
+            }
+        }
     }
-    
+
     /**
-     * Checks whether a specific move for a Piece
-     * is valid. Assumes the move is not repeating the current Piece location.
-     * Assumes that er and ec are between 0 and 7, inclusive on both sides.
-     * 
-     * @param er    		ending/final row index for this move
-     * @param ec    		ending/final column index for this move
-     * @param chessboard	Piece[][] chessboard
-     * @param turn_number	the number of turns passed since the start of game
-     * @return      		true if is a valid move, false otherwise
+     * The shared Piece instance of every piece code (null for codes that are not a piece).
      */
-    public abstract boolean isValidMove(int er, int ec, Piece[][] chessboard, int turn_number);
+    private static final Piece[] BY_CODE = new Piece[16];
 
+    static{
+        for(char color : new char[]{'w', 'b'}){
+            int black = color == 'b' ? PackedPosition.BLACK : 0;
+            BY_CODE[PackedPosition.PAWN | black] = new Pawn(color);
+            BY_CODE[PackedPosition.KNIGHT | black] = new Knight(color);
+            BY_CODE[PackedPosition.BISHOP | black] = new Bishop(color);
+            BY_CODE[PackedPosition.ROOK | black] = new Rook(color);
+            BY_CODE[PackedPosition.QUEEN | black] = new Queen(color);
+            BY_CODE[PackedPosition.KING | black] = new King(color);
+        }
+    }
+
+    /**
+     * This is the color of the Piece. It has a value of either 'w' or 'b', which stand for
+     * white and black, respectively.
+     */
+    public final char color;
     /**
-     * Moves Piece to a specific location. Assumes that the move to be made is valid (
-     * does no condition checking).
-     * 
-     * @param er    ending/final row index after move
-     * @param ec    ending/final column index after move
+     * The piece code of this Piece (type plus PackedPosition.BLACK for black pieces).
      */
-    public void move(int er, int ec){
-        setCurrentLocation(er, ec);
-    }
+    public final int code;
 
     /**
-     * Promotes Piece to Pawn to specified Piece type. (Only applicable to Pawns)
-     * 
-     * @param promoType Piece to promote Pawn to
-     * @return          Piece that Pawn was promoted to
+     * The one and only constructor for Piece. Only used to create the shared instances; use
+     * Piece.of() to get them.
+     *
+     * @param type  PackedPosition type code
+     * @param color color of the Piece
      */
-    public Piece promote(String promoType){
-        switch(promoType){
-            case "B":
-                return new Bishop(this.currentLocation[0], this.currentLocation[1], this.color);
-            case "N":
-                return new Knight(this.currentLocation[0], this.currentLocation[1], this.color);
-            case "R":
-                return new Rook(this.currentLocation[0], this.currentLocation[1], this.color);
-            case "Q":
-                return new Queen(this.currentLocation[0], this.currentLocation[1], this.color);
-            default:
-                return new Queen(this.currentLocation[0], this.currentLocation[1], this.color);
-        }
+    protected Piece(int type, char color){
+        this.color = color;
+        this.code = color == 'b' ? type | PackedPosition.BLACK : type;
     }
 
     /**
-     *  Sets the current location for Piece. 
-     * 
-     * @param cr    current row index
-     * @param cc    current column index
+     * Returns the shared Piece instance for a piece code.
+     *
+     * @param code  PackedPosition piece code
+     * @return      the Piece, or null if code is 0 (empty square)
      */
-    public void setCurrentLocation(int cr, int cc){
-        this.currentLocation = new int[]{cr,cc};
+    public static Piece of(int code){
+        return BY_CODE[code];
     }
 
     /**
-     * Kills the Piece. Here, kill means removing the Piece from the board by settings 
-     * its current location to {-1,-1}.
+     * Returns the type of this Piece.
+     *
+     * @return  PackedPosition type code (PAWN, ..., KING)
      */
-    public void kill(){
-        this.currentLocation = new int[]{-1,-1};
+    public int type(){
+        return this.code & 7;
     }
 
     /**
-     * Determines whether a Piece can reach a specific location to kill an enemy
-     * if the enemy were to be there.
-     * 
-     * @param er            ending row index
-     * @param ec            ending column index
-     * @param chessboard    Piece[][] chessboard
-     * @return				true if the piece can reach the specified location to possibly kill an enemy, false otherwise
+     * Writes the legal moves of a piece of this type standing on the given square into out,
+     * starting at index n. Pieces only read the position; legality is checked with
+     * Position.isSafeAfter(), which looks at the board as if the move had been made.
+     *
+     * @param position  the position the piece is in
+     * @param from      square the piece stands on
+     * @param out       move array (see Move)
+     * @param n         number of moves already in out
+     * @return          number of moves in out afterwards
      */
-    public abstract boolean canReach(int er, int ec, Piece[][] chessboard);
+    public abstract int generateMoves(Position position, int from, int[] out, int n);
 
     /**
-     * Checks whether a specific move leaves its own team's king checked. This method should
-     * only be called when the move is deemed to be valid in any other way(satisfying a piece specific requirement,
-     * not killing its own teammate, a Pawn not jumping over other piece, etc.). All
-     * subclasses of Piece should call this method inside their isValidMove() method.
-     * 
-     * @param color         either 'w' or 'b', denoting whose king is being observed for their safety
-     * @param chessboard    Piece[][] chessboard
-     * @return				true if a king of the specified color is checked, false otherwise
+     * Promotes Piece to Pawn to specified Piece type. (Only applicable to Pawns)
+     *
+     * @param promoType Piece to promote Pawn to ("N", "B", "R" or "Q"; anything else means Queen)
+     * @return          Piece that Pawn was promoted to
      */
-    public static boolean leavesKingChecked(Piece[][] chessboard, char color){
-        Piece king = findKing(chessboard, color);
-        int dest_row = king.currentLocation[0];
-        int dest_col = king.currentLocation[1];
+    public Piece promote(String promoType){
+        return of(Move.promotionType(promoType) | (this.code & PackedPosition.BLACK));
+    }
 
-        for(int i = 0; i < 8; i++){
-            for(int j = 0; j < 8; j++){
-                if(chessboard[i][j] != null && chessboard[i][j].color != color 
-                && chessboard[i][j].canReach(dest_row, dest_col, chessboard)){
-                    return true;
-                }
-            }
+    /**
+     * Adds a move to an empty or enemy-occupied square if it does not leave the own King attacked.
+     *
+     * @param position  the position
+     * @param from      starting square
+     * @param to        ending square
+     * @param out       move array
+     * @param n         number of moves already in out
+     * @return          number of moves in out afterwards
+     */
+    protected static int addIfLegal(Position position, int from, int to, int[] out, int n){
+        int target = position.pieceAt(to);
+        if(target != 0 && ((target ^ position.pieceAt(from)) & PackedPosition.BLACK) == 0){
+            return n;//cannot kill its own teammate
         }
-        return false;
+        if(!position.isSafeAfter(from, to, -1)){
+            return n;
+        }
+        out[n] = Move.of(from, to);
+        return n + 1;
     }
 
     /**
-     * Finds the King for the specified color.
-     * 
-     * @param chessboard    Piece[][] chessboard
-     * @param color         color of King
-     * @return				King of the specified color
+     * Adds the legal moves of a sliding piece (Bishop, Rook or Queen) along the given RAYS directions.
+     *
+     * @param position  the position
+     * @param from      starting square
+     * @param firstDir  first direction to follow
+     * @param endDir    direction after the last one to follow
+     * @param out       move array
+     * @param n         number of moves already in out
+     * @return          number of moves in out afterwards
      */
-    public static King findKing(Piece[][] chessboard, char color){
-        for(int i = 0; i < 8; i++){
-            for(int j = 0; j < 8; j++){
-                if(chessboard[i][j] instanceof King && chessboard[i][j].color == color){
-                    return (King)chessboard[i][j];
+    protected static int slide(Position position, int from, int firstDir, int endDir, int[] out, int n){
+        for(int d = firstDir; d < endDir; d++){
+            for(int to : RAYS[from][d]){
+                n = addIfLegal(position, from, to, out, n);
+                if(position.pieceAt(to) != 0){
+                    break;//blocked
                 }
             }
         }
-        //shouldn't reach here the King is alive
-        return null;
+        return n;
     }
 
     /**
-     * Returns all possible moves that a specific piece is capable of making.
-     * The returned possible moves might be blocked by other pieces (so they could be
-     * considered invalid), but they are ensured to be moves within the board.
-     * 
-     * @param chessboard	Piece[][] chessboard
-     * @param turn_number	the number of turns passed since the start of the game
-     * @return				the ArrayList of Integer[] of length 2 containing the row and column indices of the final location for the possible move
+     * Returns the squares reachable from a square with the given row/column steps.
+     *
+     * @param sq        square index
+     * @param adders    row and column steps
+     * @return          target squares that are on the board
      */
-    public abstract ArrayList<Integer[]> getAllPossibleMoves(Piece[][] chessboard, int turn_number);
+    private static int[] targets(int sq, int[][] adders){
+        int[] rl = new int[adders.length];
+        int n = 0;
+        for(int[] adder : adders){
+            int r = (sq >> 3) + adder[0];
+            int c = (sq & 7) + adder[1];
+            if(r >= 0 && r <= 7 && c >= 0 && c <= 7){
+                rl[n++] = r * 8 + c;
+            }
+        }
+        return Arrays.copyOf(rl, n);
+    }
 }
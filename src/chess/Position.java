@@ -0,0 +1,860 @@
+package chess;
+
+import java.util.Arrays;
+
+/**
+ * Position is an immutable snapshot of a chess position: one byte per square holding a
+ * PackedPosition piece code, plus side to move, castling rights, en passant square and the move
+ * counters. Making a move never changes a Position; play() returns a new one (copy-on-make).
+ * <p>
+ * Because nothing in a Position is ever written after construction, any number of threads (analysis
+ * workers, spectators, ...) can ask it for legal moves or check status at the same time without any
+ * locking, while the game they were taken from goes on. None of the queries touch the board;
+ * legality is decided by looking at the board "as if" the move had been made. The move logic of
+ * each piece type lives in the shared, stateless Piece instances (see Piece.of()).
+ * <p>
+ * Square indices are row * 8 + col, with row 0 being the 8th rank, the same rows and columns
+ * Chess.canMove() and Chess.movePiece() take.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Position {
+    /**
+     * Upper bound on the number of legal moves in any chess position.
+     */
+    public static final int MAX_MOVES = 256;
+
+    /**
+     * Returned by checker() when the King is attacked by two pieces at once.
+     */
+    private static final int DOUBLE_CHECK = -2;
+    /**
+     * Castling right bits that stay set when a piece moves from or to each square.
+     */
+    private static final int[] CASTLING_MASK = new int[64];
+    /**
+     * Per-thread move buffer for queries that only need to look at moves (isLegal(), hasAnyLegalMove()),
+     * so that they allocate nothing.
+     */
+    private static final ThreadLocal<int[]> SCRATCH = ThreadLocal.withInitial(() -> new int[MAX_MOVES]);
+
+    static{
+        for(int sq = 0; sq < 64; sq++){
+            CASTLING_MASK[sq] = 15;
+        }
+        CASTLING_MASK[60] &= ~(PackedPosition.WHITE_KING_SIDE | PackedPosition.WHITE_QUEEN_SIDE);
+        CASTLING_MASK[63] &= ~PackedPosition.WHITE_KING_SIDE;
+        CASTLING_MASK[56] &= ~PackedPosition.WHITE_QUEEN_SIDE;
+        CASTLING_MASK[4] &= ~(PackedPosition.BLACK_KING_SIDE | PackedPosition.BLACK_QUEEN_SIDE);
+        CASTLING_MASK[7] &= ~PackedPosition.BLACK_KING_SIDE;
+        CASTLING_MASK[0] &= ~PackedPosition.BLACK_QUEEN_SIDE;
+    }
+
+    /**
+     * Piece code per square (PackedPosition.PAWN, ..., KING, plus PackedPosition.BLACK; 0 if empty).
+     * Never modified after construction.
+     */
+    private final byte[] squares;
+    /**
+     * Side to move, either 'w' or 'b'.
+     */
+    public final char turn;
+    /**
+     * Castling rights (PackedPosition.WHITE_KING_SIDE, ..., BLACK_QUEEN_SIDE bits).
+     */
+    public final int castling;
+    /**
+     * Square a pawn can capture en passant onto, or -1. Only set when an enemy pawn actually stands
+     * next to the pawn that just moved two steps, like PackedPosition does.
+     */
+    public final int enPassantSquare;
+    /**
+     * Number of moves made since the last capture or pawn move.
+     */
+    public final int halfmoveClock;
+    /**
+     * Number of moves made since the start of the game (Chess.turns_passed).
+     */
+    public final int plies;
+    /**
+     * Zobrist hash of the position; equal to Zobrist.hash() of the game it was taken from.
+     */
+    public final long hash;
+    /**
+     * Square of the white King.
+     */
+    private final int whiteKing;
+    /**
+     * Square of the black King.
+     */
+    private final int blackKing;
+
+    /**
+     * Constructor for Position. Takes ownership of the squares array.
+     *
+     * @param squares			piece code per square
+     * @param turn				side to move
+     * @param castling			castling right bits
+     * @param enPassantSquare	en passant target square, or -1
+     * @param halfmoveClock		moves since the last capture or pawn move
+     * @param plies				moves since the start of the game
+     */
+    private Position(byte[] squares, char turn, int castling, int enPassantSquare, int halfmoveClock, int plies){
+        this.squares = squares;
+        this.turn = turn;
+        this.castling = castling;
+        this.enPassantSquare = enPassantSquare;
+        this.halfmoveClock = halfmoveClock;
+        this.plies = plies;
+
+        long h = 0;
+        int white_king = -1, black_king = -1;
+        for(int sq = 0; sq < 64; sq++){
+            int code = squares[sq];
+            if(code != 0){
+                h ^= Zobrist.PIECE_SQUARE[code][sq];
+                if(code == PackedPosition.KING){
+                    white_king = sq;
+                }
+                else if(code == (PackedPosition.KING | PackedPosition.BLACK)){
+                    black_king = sq;
+                }
+            }
+        }
+        if(turn == 'b'){
+            h ^= Zobrist.BLACK_TO_MOVE;
+        }
+        h ^= Zobrist.CASTLING[castling];
+        if(enPassantSquare >= 0){
+            h ^= Zobrist.EN_PASSANT[enPassantSquare & 7];
+        }
+        this.hash = h;
+        this.whiteKing = white_king;
+        this.blackKing = black_king;
+    }
+
+    /**
+     * Returns the position of a packed encoding. The move counters start at 0.
+     *
+     * @param packed	packed position
+     * @return			the same position as a Position
+     */
+    public static Position of(PackedPosition packed){
+        byte[] squares = new byte[64];
+        for(int sq = 0; sq < 64; sq++){
+            squares[sq] = (byte)packed.pieceAt(sq);
+        }
+        int ep_col = packed.enPassantColumn();
+        int ep_square = -1;
+        if(ep_col >= 0){
+            ep_square = (packed.sideToMove() == 'w' ? 2 : 5) * 8 + ep_col;
+        }
+        return new Position(squares, packed.sideToMove(), packed.castlingRights(), ep_square, 0, 0);
+    }
+
+    /**
+     * Returns the position at the start of a game.
+     *
+     * @return  the initial position
+     */
+    public static Position initial(){
+        byte[] squares = new byte[64];
+        int[] back_row = {PackedPosition.ROOK, PackedPosition.KNIGHT, PackedPosition.BISHOP, PackedPosition.QUEEN,
+            PackedPosition.KING, PackedPosition.BISHOP, PackedPosition.KNIGHT, PackedPosition.ROOK};
+        for(int col = 0; col < 8; col++){
+            squares[col] = (byte)(back_row[col] | PackedPosition.BLACK);
+            squares[8 + col] = (byte)(PackedPosition.PAWN | PackedPosition.BLACK);
+            squares[48 + col] = (byte)PackedPosition.PAWN;
+            squares[56 + col] = (byte)back_row[col];
+        }
+        return new Position(squares, 'w', 15, -1, 0, 0);
+    }
+
+    /**
+     * Returns a position from its parts. The squares array is copied.
+     *
+     * @param squares			piece code per square (row * 8 + col)
+     * @param turn				side to move, 'w' or 'b'
+     * @param castling			castling right bits
+     * @param enPassantSquare	square a pawn can capture en passant onto, or -1
+     * @param halfmoveClock		moves since the last capture or pawn move
+     * @param plies				moves since the start of the game
+     * @return					the position
+     */
+    public static Position of(byte[] squares, char turn, int castling, int enPassantSquare, int halfmoveClock, int plies){
+        return new Position(squares.clone(), turn, castling, enPassantSquare, halfmoveClock, plies);
+    }
+
+    /**
+     * Returns the position described by a FEN string, e.g.
+     * "rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1". The move counters may be left
+     * out. An en passant square is only kept if a pawn can actually capture onto it.
+     *
+     * @param fen	position in Forsyth-Edwards Notation
+     * @return		the position
+     * @throws IllegalArgumentException	if fen is not a valid FEN string
+     */
+    public static Position fromFen(String fen){
+        String[] fields = fen.trim().split("\\s+");
+        if(fields.length < 4){
+            throw new IllegalArgumentException("Not a FEN string: " + fen);
+        }
+        byte[] squares = new byte[64];
+        int sq = 0;
+        for(char ch : fields[0].toCharArray()){
+            if(ch == '/'){
+                continue;
+            }
+            if(ch >= '1' && ch <= '8'){
+                sq += ch - '0';
+                continue;
+            }
+            int type = " PNBRQK".indexOf(Character.toUpperCase(ch));
+            if(type <= 0 || sq >= 64){
+                throw new IllegalArgumentException("Not a FEN string: " + fen);
+            }
+            squares[sq++] = (byte)(Character.isLowerCase(ch) ? type | PackedPosition.BLACK : type);
+        }
+        if(sq != 64){
+            throw new IllegalArgumentException("Not a FEN string: " + fen);
+        }
+        char turn = fields[1].equals("b") ? 'b' : 'w';
+        int castling = 0;
+        for(char ch : fields[2].toCharArray()){
+            castling |= ch == 'K' ? PackedPosition.WHITE_KING_SIDE : ch == 'Q' ? PackedPosition.WHITE_QUEEN_SIDE
+                : ch == 'k' ? PackedPosition.BLACK_KING_SIDE : ch == 'q' ? PackedPosition.BLACK_QUEEN_SIDE : 0;
+        }
+        int ep_square = -1;
+        if(fields[3].length() == 2){
+            int target = ('8' - fields[3].charAt(1)) * 8 + (fields[3].charAt(0) - 'a');
+            int pawn_sq = turn == 'w' ? target + 8 : target - 8;
+            int own_pawn = turn == 'w' ? PackedPosition.PAWN : PackedPosition.PAWN | PackedPosition.BLACK;
+            int col = target & 7;
+            if(pawn_sq >= 0 && pawn_sq < 64 && ((col > 0 && squares[pawn_sq - 1] == own_pawn)
+                || (col < 7 && squares[pawn_sq + 1] == own_pawn))){
+                ep_square = target;
+            }
+        }
+        int halfmove = fields.length > 4 ? Integer.parseInt(fields[4]) : 0;
+        int fullmove = fields.length > 5 ? Integer.parseInt(fields[5]) : 1;
+        return new Position(squares, turn, castling, ep_square, halfmove, (fullmove - 1) * 2 + (turn == 'b' ? 1 : 0));
+    }
+
+    /**
+     * Returns this position in Forsyth-Edwards Notation.
+     *
+     * @return  FEN string
+     */
+    public String toFen(){
+        StringBuilder sb = new StringBuilder();
+        for(int row = 0; row < 8; row++){
+            int empty = 0;
+            for(int col = 0; col < 8; col++){
+                int code = this.squares[row * 8 + col];
+                if(code == 0){
+                    empty++;
+                    continue;
+                }
+                if(empty > 0){
+                    sb.append(empty);
+                    empty = 0;
+                }
+                char letter = " PNBRQK".charAt(code & 7);
+                sb.append((code & PackedPosition.BLACK) != 0 ? Character.toLowerCase(letter) : letter);
+            }
+            if(empty > 0){
+                sb.append(empty);
+            }
+            if(row < 7){
+                sb.append('/');
+            }
+        }
+        sb.append(' ').append(this.turn).append(' ');
+        if(this.castling == 0){
+            sb.append('-');
+        }
+        else{
+            int[] rights = {PackedPosition.WHITE_KING_SIDE, PackedPosition.WHITE_QUEEN_SIDE,
+                PackedPosition.BLACK_KING_SIDE, PackedPosition.BLACK_QUEEN_SIDE};
+            for(int i = 0; i < 4; i++){
+                if((this.castling & rights[i]) != 0){
+                    sb.append("KQkq".charAt(i));
+                }
+            }
+        }
+        sb.append(' ').append(this.enPassantSquare < 0 ? "-" : Move.squareName(this.enPassantSquare));
+        sb.append(' ').append(this.halfmoveClock).append(' ').append(this.plies / 2 + 1);
+        return sb.toString();
+    }
+
+    /**
+     * Returns the packed encoding of this position.
+     *
+     * @return  this position as a PackedPosition
+     * @throws IllegalArgumentException	if more than 32 pieces are on the board (possible from a FEN),
+     *									which do not fit in the encoding
+     */
+    public PackedPosition toPacked(){
+        long occupancy = 0, low = 0, high = 0;
+        int count = 0;
+        for(int sq = 0; sq < 64; sq++){
+            long code = this.squares[sq];
+            if(code == 0){
+                continue;
+            }
+            if(count == 32){
+                throw new IllegalArgumentException("More than 32 pieces cannot be packed: " + this.toFen());
+            }
+            occupancy |= 1L << sq;
+            if(count < 16){
+                low |= code << (count * 4);
+            }
+            else{
+                high |= code << ((count - 16) * 4);
+            }
+            count++;
+        }
+        long state = (this.turn == 'b' ? 1 : 0) | (this.castling << 1) | ((this.enPassantSquare < 0 ? 0 : (this.enPassantSquare & 7) + 1) << 5);
+        return new PackedPosition(occupancy, low, high, state);
+    }
+
+    /**
+     * Returns the piece code on a square.
+     *
+     * @param sq	square index
+     * @return		PackedPosition piece code, 0 if the square is empty
+     */
+    public int pieceAt(int sq){
+        return this.squares[sq];
+    }
+
+    /**
+     * Returns the piece code on a square.
+     *
+     * @param row	row index
+     * @param col	column index
+     * @return		PackedPosition piece code, 0 if the square is empty
+     */
+    public int pieceAt(int row, int col){
+        return this.squares[row * 8 + col];
+    }
+
+    /**
+     * Returns the square of the King of the given color.
+     *
+     * @param color	'w' or 'b'
+     * @return		square index of that King, -1 if it has none
+     */
+    public int kingSquare(char color){
+        return color == 'w' ? this.whiteKing : this.blackKing;
+    }
+
+    /**
+     * Checks whether the side to move is in check.
+     *
+     * @return  true if the side to move is in check, false otherwise
+     */
+    public boolean isInCheck(){
+        int king = this.kingSquare(this.turn);
+        return king >= 0 && this.isAttacked(king, this.turn == 'w' ? 'b' : 'w');
+    }
+
+    /**
+     * Checks whether a square is attacked by any piece of the given color.
+     *
+     * @param sq		square index
+     * @param byColor	color of the attacking side
+     * @return			true if the square is attacked, false otherwise
+     */
+    public boolean isAttacked(int sq, char byColor){
+        return this.attackedAfter(sq, byColor == 'b' ? PackedPosition.BLACK : 0, -1, -1, -1, 0);
+    }
+
+    /**
+     * Checks whether the side to move has at least one legal move, stopping at the first one found.
+     * This runs after every move to detect checkmate and stalemate, so it tries the moves most likely
+     * to exist first instead of generating all of them: King moves, then (in check) a capture of the
+     * single checking piece, then a piece moving between the checker and the King. Out of check,
+     * the other pieces are tried one at a time after the King. No move list is built in check, and
+     * at most one piece's moves otherwise.
+     *
+     * @return  true if there is a legal move, false otherwise
+     */
+    public boolean hasAnyLegalMove(){
+        int own = this.turn == 'b' ? PackedPosition.BLACK : 0;
+        int king = own == 0 ? this.whiteKing : this.blackKing;
+        if(king >= 0){
+            //1. King moves (castling never needs a look: it is only legal if the King could also step to the square next to it)
+            for(int to : Piece.KING_TARGETS[king]){
+                int target = this.squares[to];
+                if((target == 0 || (target & PackedPosition.BLACK) != own) && this.isSafeAfter(king, to, -1)){
+                    return true;
+                }
+            }
+            int checker = this.checker(king, own ^ PackedPosition.BLACK);
+            if(checker == DOUBLE_CHECK){
+                return false;//only the King could have moved
+            }
+            if(checker >= 0){
+                //2. capturing the checking piece, also En Passant if it is the pawn that just moved two steps
+                if(this.canInterceptOn(checker, own)){
+                    return true;
+                }
+                if(this.enPassantSquare >= 0 && checker == this.enPassantSquare + (own == 0 ? 8 : -8)){
+                    int pawn = PackedPosition.PAWN | own;
+                    int col = checker & 7;
+                    if((col > 0 && this.squares[checker - 1] == pawn && this.isSafeAfter(checker - 1, this.enPassantSquare, checker))
+                        || (col < 7 && this.squares[checker + 1] == pawn && this.isSafeAfter(checker + 1, this.enPassantSquare, checker))){
+                        return true;
+                    }
+                }
+                //3. moving a piece in between, if the checker is a sliding piece
+                int type = this.squares[checker] & 7;
+                if(type == PackedPosition.BISHOP || type == PackedPosition.ROOK || type == PackedPosition.QUEEN){
+                    for(int d = 0; d < 8; d++){
+                        int[] ray = Piece.RAYS[king][d];
+                        int length = indexOf(ray, checker);
+                        if(length >= 0){
+                            for(int i = 0; i < length; i++){
+                                if(this.canInterceptOn(ray[i], own)){
+                                    return true;
+                                }
+                            }
+                            break;
+                        }
+                    }
+                }
+                return false;
+            }
+        }
+        //not in check: any move of any other piece
+        int[] buffer = SCRATCH.get();
+        for(int sq = 0; sq < 64; sq++){
+            int code = this.squares[sq];
+            if(code != 0 && (code & PackedPosition.BLACK) == own && sq != king && this.generateMovesFrom(sq, buffer, 0) > 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the side to move is checkmated.
+     *
+     * @return  true if checkmate, false otherwise
+     */
+    public boolean isCheckmate(){
+        return this.isInCheck() && !this.hasAnyLegalMove();
+    }
+
+    /**
+     * Checks whether the side to move is stalemated.
+     *
+     * @return  true if stalemate, false otherwise
+     */
+    public boolean isStalemate(){
+        return !this.isInCheck() && !this.hasAnyLegalMove();
+    }
+
+    /**
+     * Returns all legal moves of the side to move.
+     *
+     * @return  packed moves (see Move)
+     */
+    public int[] legalMoves(){
+        int[] buffer = new int[MAX_MOVES];
+        int n = this.generateMoves(buffer);
+        return Arrays.copyOf(buffer, n);
+    }
+
+    /**
+     * Writes all legal moves of the side to move into the given array.
+     *
+     * @param out	array of length at least MAX_MOVES
+     * @return		number of moves written
+     */
+    public int generateMoves(int[] out){
+        int n = 0;
+        int own = this.turn == 'b' ? PackedPosition.BLACK : 0;
+        for(int sq = 0; sq < 64; sq++){
+            int code = this.squares[sq];
+            if(code != 0 && (code & PackedPosition.BLACK) == own){
+                n = this.generateMovesFrom(sq, out, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Checks whether a move is legal in this position.
+     *
+     * @param move	packed move
+     * @return		true if legal, false otherwise
+     */
+    public boolean isLegal(int move){
+        int from = Move.from(move);
+        int code = this.squares[from];
+        if(code == 0 || (code & PackedPosition.BLACK) != (this.turn == 'b' ? PackedPosition.BLACK : 0)){
+            return false;
+        }
+        int[] buffer = SCRATCH.get();
+        int n = this.generateMovesFrom(from, buffer, 0);
+        for(int i = 0; i < n; i++){
+            if(buffer[i] == move){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether moving the piece on one square to another is legal, ignoring which piece a pawn
+     * would promote to (like Chess.canMove()).
+     *
+     * @param sr	starting row index
+     * @param sc	starting column index
+     * @param er	ending row index
+     * @param ec	ending column index
+     * @return		true if legal, false otherwise
+     */
+    public boolean isLegal(int sr, int sc, int er, int ec){
+        if(sr < 0 || sr > 7 || sc < 0 || sc > 7 || er < 0 || er > 7 || ec < 0 || ec > 7){
+            return false;
+        }
+        int move = Move.of(sr, sc, er, ec);
+        if((this.squares[sr * 8 + sc] & 7) == PackedPosition.PAWN && (er == 0 || er == 7)){
+            move = Move.of(sr * 8 + sc, er * 8 + ec, PackedPosition.QUEEN);
+        }
+        return this.isLegal(move);
+    }
+
+    /**
+     * Returns the position after a move. Assumes the move is legal. A pawn reaching the last row
+     * without a promotion type is promoted to a Queen, like Chess.movePiece() does.
+     *
+     * @param move	packed move
+     * @return		new Position after the move
+     */
+    public Position play(int move){
+        int from = Move.from(move);
+        int to = Move.to(move);
+        int promo = Move.promotion(move);
+        byte[] next = this.squares.clone();
+        int piece = next[from];
+        int type = piece & 7;
+        int color = piece & PackedPosition.BLACK;
+        boolean irreversible = type == PackedPosition.PAWN || next[to] != 0;
+
+        if(type == PackedPosition.PAWN){
+            if(to == this.enPassantSquare){
+                next[to + (color == 0 ? 8 : -8)] = 0;
+            }
+            if((to >> 3) == 0 || (to >> 3) == 7){
+                piece = (promo == 0 ? PackedPosition.QUEEN : promo) | color;
+            }
+        }
+        else if(type == PackedPosition.KING && Math.abs(to - from) == 2){
+            int rook_from = to > from ? from + 3 : from - 4;
+            int rook_to = to > from ? from + 1 : from - 1;
+            next[rook_to] = next[rook_from];
+            next[rook_from] = 0;
+        }
+        next[to] = (byte)piece;
+        next[from] = 0;
+
+        int ep_square = -1;
+        if(type == PackedPosition.PAWN && Math.abs(to - from) == 16){
+            int enemy_pawn = PackedPosition.PAWN | (color ^ PackedPosition.BLACK);
+            int col = to & 7;
+            if((col > 0 && next[to - 1] == enemy_pawn) || (col < 7 && next[to + 1] == enemy_pawn)){
+                ep_square = (from + to) / 2;
+            }
+        }
+        int castling = this.castling & CASTLING_MASK[from] & CASTLING_MASK[to];
+        return new Position(next, this.turn == 'w' ? 'b' : 'w', castling, ep_square,
+            irreversible ? 0 : this.halfmoveClock + 1, this.plies + 1);
+    }
+
+    /**
+     * Writes the legal moves of the piece on one square into out, starting at index n.
+     *
+     * @param from	square of a piece of the side to move
+     * @param out	move array
+     * @param n		number of moves already in out
+     * @return		number of moves in out afterwards
+     */
+    public int generateMovesFrom(int from, int[] out, int n){
+        int code = this.squares[from];
+        if(code == 0){
+            return n;
+        }
+        return Piece.of(code).generateMoves(this, from, out, n);
+    }
+
+    /**
+     * Checks whether the King of the moving piece's color would be safe after moving the piece on
+     * one square to another (and removing a pawn killed En Passant). The board is not modified; the
+     * move is applied on the fly while looking at squares. This is the legality test the per-type
+     * move logic in chess.piece relies on.
+     *
+     * @param from			square of the moving piece
+     * @param to			square the piece moves to
+     * @param capturedSq	square of a pawn killed En Passant, or -1
+     * @return				true if the own King is not attacked after the move, false otherwise
+     */
+    public boolean isSafeAfter(int from, int to, int capturedSq){
+        int moved = this.squares[from];
+        int own = moved & PackedPosition.BLACK;
+        int king = (moved & 7) == PackedPosition.KING ? to : (own == 0 ? this.whiteKing : this.blackKing);
+        return !this.attackedAfter(king, own ^ PackedPosition.BLACK, from, to, capturedSq, moved);
+    }
+
+    /**
+     * Finds the piece giving check to a King.
+     *
+     * @param king		square of the King
+     * @param byColor	color bit of the attacking side
+     * @return			square of the only checking piece, -1 if there is none, DOUBLE_CHECK if there are two
+     */
+    private int checker(int king, int byColor){
+        int rl = -1;
+        int knight = PackedPosition.KNIGHT | byColor;
+        for(int sq : Piece.KNIGHT_TARGETS[king]){
+            if(this.squares[sq] == knight){
+                rl = sq;//two knights can never both give check
+            }
+        }
+        int pawn_row = (king >> 3) + (byColor == 0 ? 1 : -1);
+        if(pawn_row >= 0 && pawn_row <= 7){
+            int pawn = PackedPosition.PAWN | byColor;
+            int col = king & 7;
+            if(col > 0 && this.squares[pawn_row * 8 + col - 1] == pawn){
+                rl = pawn_row * 8 + col - 1;
+            }
+            if(col < 7 && this.squares[pawn_row * 8 + col + 1] == pawn){
+                rl = pawn_row * 8 + col + 1;
+            }
+        }
+        int queen = PackedPosition.QUEEN | byColor;
+        for(int d = 0; d < 8; d++){
+            int slider = (d < 4 ? PackedPosition.ROOK : PackedPosition.BISHOP) | byColor;
+            for(int sq : Piece.RAYS[king][d]){
+                int code = this.squares[sq];
+                if(code != 0){
+                    if(code == slider || code == queen){
+                        if(rl >= 0){
+                            return DOUBLE_CHECK;
+                        }
+                        rl = sq;
+                    }
+                    break;
+                }
+            }
+        }
+        return rl;
+    }
+
+    /**
+     * Checks whether a piece other than the King can legally move to a square: capture the enemy
+     * piece standing there, or step onto it if it is empty. Looks from the square outwards for
+     * pieces that could reach it instead of generating their moves.
+     *
+     * @param target	square to move to
+     * @param own		color bit of the side to move
+     * @return			true if some non-King piece can legally move there, false otherwise
+     */
+    private boolean canInterceptOn(int target, int own){
+        int knight = PackedPosition.KNIGHT | own;
+        for(int sq : Piece.KNIGHT_TARGETS[target]){
+            if(this.squares[sq] == knight && this.isSafeAfter(sq, target, -1)){
+                return true;
+            }
+        }
+        int queen = PackedPosition.QUEEN | own;
+        for(int d = 0; d < 8; d++){
+            int slider = (d < 4 ? PackedPosition.ROOK : PackedPosition.BISHOP) | own;
+            for(int sq : Piece.RAYS[target][d]){
+                int code = this.squares[sq];
+                if(code != 0){
+                    if((code == slider || code == queen) && this.isSafeAfter(sq, target, -1)){
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        int pawn = PackedPosition.PAWN | own;
+        int back = own == 0 ? 8 : -8;//from the target towards where the pawn comes from
+        if(this.squares[target] != 0){
+            int col = target & 7;
+            int pawn_sq = target + back;
+            if(pawn_sq >= 0 && pawn_sq < 64){
+                if(col > 0 && this.squares[pawn_sq - 1] == pawn && this.isSafeAfter(pawn_sq - 1, target, -1)){
+                    return true;
+                }
+                if(col < 7 && this.squares[pawn_sq + 1] == pawn && this.isSafeAfter(pawn_sq + 1, target, -1)){
+                    return true;
+                }
+            }
+            return false;
+        }
+        int one_step = target + back;
+        if(one_step < 0 || one_step >= 64){
+            return false;
+        }
+        if(this.squares[one_step] == pawn){
+            return this.isSafeAfter(one_step, target, -1);
+        }
+        int double_row = own == 0 ? 4 : 3;
+        if(this.squares[one_step] == 0 && (target >> 3) == double_row && this.squares[one_step + back] == pawn){
+            return this.isSafeAfter(one_step + back, target, -1);
+        }
+        return false;
+    }
+
+    /**
+     * Returns the index of a value in an array.
+     *
+     * @param array	array to search
+     * @param value	value to look for
+     * @return		index of value, or -1 if it is not in the array
+     */
+    private static int indexOf(int[] array, int value){
+        for(int i = 0; i < array.length; i++){
+            if(array[i] == value){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Checks whether a square would be attacked by the given side if a piece moved from one square
+     * to another (and an en passant victim was removed). The board itself is never modified; the
+     * move is applied on the fly while looking at squares. Pass -1 for from, to and capturedSq to
+     * look at the position as it is.
+     *
+     * @param target		square to test
+     * @param byColor		color bit of the attacking side
+     * @param from			square the moving piece leaves, or -1
+     * @param to			square the moving piece lands on, or -1
+     * @param capturedSq	square of a pawn captured en passant, or -1
+     * @param moved			piece code of the moving piece
+     * @return				true if the square is attacked, false otherwise
+     */
+    private boolean attackedAfter(int target, int byColor, int from, int to, int capturedSq, int moved){
+        if(target < 0){
+            return false;
+        }
+        int knight = PackedPosition.KNIGHT | byColor;
+        for(int sq : Piece.KNIGHT_TARGETS[target]){
+            if(this.at(sq, from, to, capturedSq, moved) == knight){
+                return true;
+            }
+        }
+        int king = PackedPosition.KING | byColor;
+        for(int sq : Piece.KING_TARGETS[target]){
+            if(this.at(sq, from, to, capturedSq, moved) == king){
+                return true;
+            }
+        }
+        //a white pawn attacks the row above it (smaller row index), a black pawn the row below
+        int pawn_row = (target >> 3) + (byColor == 0 ? 1 : -1);
+        if(pawn_row >= 0 && pawn_row <= 7){
+            int pawn = PackedPosition.PAWN | byColor;
+            int col = target & 7;
+            if(col > 0 && this.at(pawn_row * 8 + col - 1, from, to, capturedSq, moved) == pawn){
+                return true;
+            }
+            if(col < 7 && this.at(pawn_row * 8 + col + 1, from, to, capturedSq, moved) == pawn){
+                return true;
+            }
+        }
+        int queen = PackedPosition.QUEEN | byColor;
+        for(int d = 0; d < 8; d++){
+            int slider = (d < 4 ? PackedPosition.ROOK : PackedPosition.BISHOP) | byColor;
+            for(int sq : Piece.RAYS[target][d]){
+                int code = this.at(sq, from, to, capturedSq, moved);
+                if(code != 0){
+                    if(code == slider || code == queen){
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns what stands on a square after a hypothetical move (see attackedAfter()).
+     *
+     * @param sq			square index
+     * @param from			square the moving piece leaves, or -1
+     * @param to			square the moving piece lands on, or -1
+     * @param capturedSq	square of a pawn captured en passant, or -1
+     * @param moved			piece code of the moving piece
+     * @return				piece code on that square after the move
+     */
+    private int at(int sq, int from, int to, int capturedSq, int moved){
+        if(sq == to){
+            return moved;
+        }
+        if(sq == from || sq == capturedSq){
+            return 0;
+        }
+        return this.squares[sq];
+    }
+
+    /**
+     * Overrides the equals method from Object. Two Positions are equal if they are the same for the
+     * rules of chess; the move counters are ignored.
+     *
+     * @param o	object to compare to
+     * @return	true if o is the same position, false otherwise
+     */
+    public boolean equals(Object o){
+        if(this == o){
+            return true;
+        }
+        if(!(o instanceof Position)){
+            return false;
+        }
+        Position p = (Position)o;
+        return this.hash == p.hash && this.turn == p.turn && this.castling == p.castling
+            && this.enPassantSquare == p.enPassantSquare && Arrays.equals(this.squares, p.squares);
+    }
+
+    /**
+     * Overrides the hashCode method from Object.
+     *
+     * @return  hash code derived from the Zobrist hash
+     */
+    public int hashCode(){
+        return (int)(this.hash ^ (this.hash >>> 32));
+    }
+
+    /**
+     * Overrides the toString method from Object. Draws the board the same way Chess.showBoard() does.
+     *
+     * @return  the board as text
+     */
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        for(int row = 0; row < 8; row++){
+            for(int col = 0; col < 8; col++){
+                int code = this.squares[row * 8 + col];
+                if(code == 0){
+                    sb.append((row + col) % 2 == 0 ? "   " : "## ");
+                }
+                else{
+                    sb.append(Piece.of(code)).append(' ');
+                }
+            }
+            sb.append(8 - row).append('\n');
+        }
+        sb.append(" a  b  c  d  e  f  g  h\n");
+        return sb.toString();
+    }
+
+}
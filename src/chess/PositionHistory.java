@@ -0,0 +1,104 @@
+package chess;
+
+/**
+ * PositionHistory is the list of position hashes of a game (or of a line in a search tree), used for
+ * repetition detection. It is a plain growable long array so pushing, popping and looking up cost
+ * no allocation.
+ * <p>
+ * Only the positions since the last irreversible move (capture or pawn move) can repeat the current
+ * one, and only those with the same side to move, so a lookup walks back at most halfmove clock
+ * entries, two at a time.
+ * 
+ * @author Seok Yim, Mae Khaled
+ */
+public class PositionHistory {
+    /**
+     * Position hashes, oldest first.
+     */
+    public long[] hashes = new long[256];
+    /**
+     * Number of hashes in the history.
+     */
+    public int size = 0;
+
+    /**
+     * Adds the hash of a new position (the one reached by the last move).
+     * 
+     * @param hash	hash of the position
+     */
+    public void push(long hash){
+        if(this.size == this.hashes.length){
+            long[] grown = new long[this.size * 2];
+            System.arraycopy(this.hashes, 0, grown, 0, this.size);
+            this.hashes = grown;
+        }
+        this.hashes[this.size++] = hash;
+    }
+
+    /**
+     * Removes the most recent hash (when a move is taken back).
+     */
+    public void pop(){
+        this.size--;
+    }
+
+    /**
+     * Removes all hashes.
+     */
+    public void clear(){
+        this.size = 0;
+    }
+
+    /**
+     * Returns the most recent hash, which is the hash of the current position.
+     * 
+     * @return  current position hash
+     */
+    public long current(){
+        return this.hashes[this.size - 1];
+    }
+
+    /**
+     * Counts how many times the current position occurred in total, looking back only over the
+     * positions since the last irreversible move.
+     * 
+     * @param halfmoveClock	number of moves since the last capture or pawn move
+     * @return				number of occurrences of the current position, including itself
+     */
+    public int occurrences(int halfmoveClock){
+        if(this.size == 0){
+            return 0;
+        }
+        long hash = this.hashes[this.size - 1];
+        int oldest = Math.max(0, this.size - 1 - halfmoveClock);
+        int count = 1;
+        for(int i = this.size - 3; i >= oldest; i -= 2){
+            if(this.hashes[i] == hash){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether the current position already occurred before since the last irreversible move.
+     * This is the cheap test a search uses to score a repeated position as a draw; it stops at the
+     * first match.
+     * 
+     * @param halfmoveClock	number of moves since the last capture or pawn move
+     * @return				true if the current position is a repetition, false otherwise
+     */
+    public boolean isRepetition(int halfmoveClock){
+        if(this.size == 0){
+            return false;
+        }
+        long hash = this.hashes[this.size - 1];
+        int oldest = Math.max(0, this.size - 1 - halfmoveClock);
+        for(int i = this.size - 3; i >= oldest; i -= 2){
+            if(this.hashes[i] == hash){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,234 @@
+package chess;
+
+/**
+ * San reads and writes moves in Standard Algebraic Notation, the notation of PGN files and EPD
+ * suites: "Nf3", "exd5", "O-O", "e8=Q+", "Rad1". When reading, the coordinate form "g1f3" is
+ * accepted too.
+ * <p>
+ * Both directions make one pass of legal move generation, limited to the pieces that matter, and
+ * work on that list: parse() generates the moves of the pieces of the named type (on the named file
+ * or rank, if given) and keeps the ones that fit the text; format() generates the moves of the
+ * pieces of the moving type to decide how much of the starting square to write. The text is read
+ * character by character, without regular expressions or substrings, since PGN pipelines parse
+ * millions of moves.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class San {
+    /**
+     * Move list of each thread, so that no call allocates one.
+     */
+    private static final ThreadLocal<int[]> MOVES = ThreadLocal.withInitial(() -> new int[Position.MAX_MOVES]);
+    /**
+     * Piece letters by PackedPosition type code.
+     */
+    private static final String LETTERS = " PNBRQK";
+
+    private San(){
+    }
+
+    /**
+     * Finds the legal move a SAN string stands for. Check, mate and annotation marks ("+", "#",
+     * "!", "?") are ignored, as is a missing "=" before the promotion piece; a pawn reaching the last
+     * rank without one promotes to a Queen.
+     *
+     * @param position	position the move is played in
+     * @param text		the move
+     * @return			the packed move, or Move.NONE if it is unreadable, illegal or ambiguous
+     */
+    public static int parse(Position position, String text){
+        int end = text.length();
+        while(end > 0 && "+#!?".indexOf(text.charAt(end - 1)) >= 0){
+            end--;
+        }
+        if(end < 2){
+            return Move.NONE;
+        }
+        int[] moves = MOVES.get();
+        char first = text.charAt(0);
+        if(first == 'O' || first == '0'){//castling: "O-O" has 3 characters, "O-O-O" 5
+            int side = end == 3 ? 2 : end == 5 ? -2 : 0;
+            int n = generate(position, PackedPosition.KING, -1, -1, moves);
+            for(int i = 0; i < n; i++){
+                if(side != 0 && Move.to(moves[i]) - Move.from(moves[i]) == side){
+                    return moves[i];
+                }
+            }
+            return Move.NONE;
+        }
+
+        int piece = PackedPosition.PAWN;
+        int start = 0;
+        int letter = "NBRQK".indexOf(first);
+        if(letter >= 0){
+            piece = PackedPosition.KNIGHT + letter;
+            start = 1;
+        }
+        int promotion = 0;
+        if(piece == PackedPosition.PAWN){
+            int promo = "NBRQ".indexOf(Character.toUpperCase(text.charAt(end - 1)));
+            if(promo >= 0 && end > 2 && (text.charAt(end - 2) == '=' || isRank(text.charAt(end - 2)))){
+                promotion = PackedPosition.KNIGHT + promo;
+                end -= text.charAt(end - 2) == '=' ? 2 : 1;
+            }
+        }
+        if(end - start < 2 || !isFile(text.charAt(end - 2)) || !isRank(text.charAt(end - 1))){
+            return Move.NONE;
+        }
+        int to = square(text.charAt(end - 2), text.charAt(end - 1));
+        //whatever is between the piece and the destination narrows down the starting square
+        int from_file = -1, from_rank = -1;
+        for(int i = start; i < end - 2; i++){
+            char c = text.charAt(i);
+            if(isFile(c)){
+                from_file = c - 'a';
+            }
+            else if(isRank(c)){
+                from_rank = '8' - c;
+            }
+            else if(c != 'x' && c != ':' && c != '-'){
+                return Move.NONE;
+            }
+        }
+        //coordinate form: the starting square is given, so the piece on it moves
+        boolean coordinates = letter < 0 && from_file >= 0 && from_rank >= 0;
+
+        int n = generate(position, coordinates ? 0 : piece, from_file, from_rank, moves);
+        int found = Move.NONE;
+        for(int i = 0; i < n; i++){
+            int move = moves[i];
+            if(Move.to(move) != to){
+                continue;
+            }
+            int move_promotion = Move.promotion(move);
+            if(move_promotion != promotion && !(promotion == 0 && move_promotion == PackedPosition.QUEEN)){
+                continue;
+            }
+            if(found != Move.NONE){
+                return Move.NONE;//ambiguous
+            }
+            found = move;
+        }
+        return found;
+    }
+
+    /**
+     * Writes a legal move in SAN, with the starting file, rank or square only when another piece of
+     * the same type could move to the same square, and with "+" or "#" when it gives check or mate.
+     *
+     * @param position	position the move is played in
+     * @param move		packed legal move
+     * @return			the move in SAN, e.g. "Nbd7", "exd6", "O-O", "e8=Q#"
+     */
+    public static String format(Position position, int move){
+        int from = Move.from(move), to = Move.to(move);
+        int piece = position.pieceAt(from) & 7;
+        StringBuilder sb = new StringBuilder(8);
+        if(piece == PackedPosition.KING && Math.abs(to - from) == 2){
+            sb.append(to > from ? "O-O" : "O-O-O");
+        }
+        else{
+            boolean capture = position.pieceAt(to) != 0 || (piece == PackedPosition.PAWN && (from & 7) != (to & 7));
+            if(piece == PackedPosition.PAWN){
+                if(capture){
+                    sb.append((char)('a' + (from & 7)));
+                }
+            }
+            else{
+                sb.append(LETTERS.charAt(piece));
+                int[] moves = MOVES.get();
+                int n = generate(position, piece, -1, -1, moves);
+                boolean others = false, same_file = false, same_rank = false;
+                for(int i = 0; i < n; i++){
+                    int other = Move.from(moves[i]);
+                    if(Move.to(moves[i]) != to || other == from){
+                        continue;
+                    }
+                    others = true;
+                    same_file |= (other & 7) == (from & 7);
+                    same_rank |= other >> 3 == from >> 3;
+                }
+                if(others && (!same_file || same_rank)){
+                    sb.append((char)('a' + (from & 7)));
+                }
+                if(same_file){
+                    sb.append((char)('8' - (from >> 3)));
+                }
+            }
+            if(capture){
+                sb.append('x');
+            }
+            sb.append(Move.squareName(to));
+            if(Move.promotion(move) != 0){
+                sb.append('=').append(LETTERS.charAt(Move.promotion(move)));
+            }
+        }
+        Position after = position.play(move);
+        if(after.isInCheck()){
+            sb.append(after.hasAnyLegalMove() ? '+' : '#');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes a sequence of legal moves in SAN with move numbers, as in PGN movetext, e.g.
+     * "1. e4 e5 2. Nf3" or "12... Qxd5 13. Nc3".
+     *
+     * @param position	position the first move is played in
+     * @param moves		packed legal moves, each played after the one before
+     * @return			the moves in SAN
+     */
+    public static String format(Position position, int[] moves){
+        StringBuilder sb = new StringBuilder(moves.length * 6);
+        for(int i = 0; i < moves.length; i++){
+            if(position.turn == 'w' || i == 0){
+                if(i > 0){
+                    sb.append(' ');
+                }
+                sb.append(position.plies / 2 + 1).append(position.turn == 'w' ? ". " : "... ");
+            }
+            else{
+                sb.append(' ');
+            }
+            sb.append(format(position, moves[i]));
+            position = position.play(moves[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Generates the legal moves of some of the pieces of the side to move.
+     *
+     * @param position	the position
+     * @param piece		PackedPosition type code of the pieces, 0 for any
+     * @param file		column the pieces have to stand on, -1 for any
+     * @param row		row the pieces have to stand on, -1 for any
+     * @param out		array of length at least Position.MAX_MOVES
+     * @return			number of moves written
+     */
+    private static int generate(Position position, int piece, int file, int row, int[] out){
+        int own = position.turn == 'b' ? PackedPosition.BLACK : 0;
+        int n = 0;
+        for(int sq = 0; sq < 64; sq++){
+            int code = position.pieceAt(sq);
+            if(code == 0 || (code & PackedPosition.BLACK) != own || (piece != 0 && (code & 7) != piece)
+                || (file >= 0 && (sq & 7) != file) || (row >= 0 && sq >> 3 != row)){
+                continue;
+            }
+            n = position.generateMovesFrom(sq, out, n);
+        }
+        return n;
+    }
+
+    private static boolean isFile(char c){
+        return c >= 'a' && c <= 'h';
+    }
+
+    private static boolean isRank(char c){
+        return c >= '1' && c <= '8';
+    }
+
+    private static int square(char file, char rank){
+        return ('8' - rank) * 8 + (file - 'a');
+    }
+}
@@ -0,0 +1,97 @@
+package chess;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist holds the random keys used to hash chess positions into a single long. Two positions
+ * that are the same for the rules of chess (same pieces on the same squares, side to move, castling
+ * rights and en passant possibility) always get the same hash.
+ * 
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Zobrist {
+    /**
+     * Keys per piece code (PackedPosition.PAWN, ..., KING, plus PackedPosition.BLACK) and square.
+     */
+    public static final long[][] PIECE_SQUARE = new long[16][64];
+    /**
+     * Key added when black is to move.
+     */
+    public static final long BLACK_TO_MOVE;
+    /**
+     * Keys per combination of castling right bits.
+     */
+    public static final long[] CASTLING = new long[16];
+    /**
+     * Keys per en passant column.
+     */
+    public static final long[] EN_PASSANT = new long[8];
+
+    static{
+        //fixed seed so hashes can be stored and compared between runs
+        SplittableRandom random = new SplittableRandom(0x2F6B1D3C9A7E5F41L);
+        for(int code = 0; code < 16; code++){
+            for(int sq = 0; sq < 64; sq++){
+                PIECE_SQUARE[code][sq] = random.nextLong();
+            }
+        }
+        BLACK_TO_MOVE = random.nextLong();
+        for(int i = 0; i < CASTLING.length; i++){
+            CASTLING[i] = random.nextLong();
+        }
+        for(int i = 0; i < EN_PASSANT.length; i++){
+            EN_PASSANT[i] = random.nextLong();
+        }
+    }
+
+    private Zobrist(){
+    }
+
+    /**
+     * Computes the hash of the current position of a game from scratch. Equal to the hash the
+     * Position keeps; useful to verify it.
+     * 
+     * @param game	the game
+     * @return		hash of the game's position
+     */
+    public static long hash(Chess game){
+        Position position = game.position;
+        long h = 0;
+        for(int sq = 0; sq < 64; sq++){
+            int code = position.pieceAt(sq);
+            if(code != 0){
+                h ^= PIECE_SQUARE[code][sq];
+            }
+        }
+        if(position.turn == 'b'){
+            h ^= BLACK_TO_MOVE;
+        }
+        h ^= CASTLING[position.castling];
+        if(position.enPassantSquare >= 0){
+            h ^= EN_PASSANT[position.enPassantSquare & 7];
+        }
+        return h;
+    }
+
+    /**
+     * Computes the hash of a packed position. Equal to hash(Chess) of the same position.
+     * 
+     * @param position	the position
+     * @return			hash of the position
+     */
+    public static long hash(PackedPosition position){
+        long h = 0;
+        for(long bits = position.occupancy; bits != 0; bits &= bits - 1){
+            int sq = Long.numberOfTrailingZeros(bits);
+            h ^= PIECE_SQUARE[position.pieceAt(sq)][sq];
+        }
+        if(position.sideToMove() == 'b'){
+            h ^= BLACK_TO_MOVE;
+        }
+        h ^= CASTLING[position.castlingRights()];
+        if(position.enPassantColumn() >= 0){
+            h ^= EN_PASSANT[position.enPassantColumn()];
+        }
+        return h;
+    }
+}
@@ -0,0 +1,290 @@
+package chess.datagen;
+
+import chess.Chess;
+import chess.Position;
+import chess.engine.ClassicalEvaluator;
+import chess.engine.Search;
+import chess.engine.SearchResult;
+import chess.engine.TranspositionTable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DataGenerator produces labeled positions for training evaluation models. It plays games from
+ * Chess.generateBoard() on all cores, starting each with a few random moves so that games differ,
+ * then continues with either random moves or a shallow search. Along the way positions are
+ * sampled; once the game is over every sample of it is written with the game result and, when
+ * the moves come from a search, the search score (see SampleWriter for the formats).
+ * <p>
+ * Positions already written are skipped with a lossy, fixed-size filter of position hashes: memory
+ * stays bounded however many games are played, at the cost of letting a few repeats through once
+ * the filter is crowded. Games are seeded by their index, so a run is reproducible for the same
+ * settings, although with several threads the order of the output is not.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public class DataGenerator {
+    /**
+     * Number of games to play.
+     */
+    public int games = 1000;
+    /**
+     * Number of games played at the same time.
+     */
+    public int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Search depth for choosing moves, 0 to play random moves (and write no scores).
+     */
+    public int depth = 0;
+    /**
+     * Node limit of each search, 0 for none.
+     */
+    public long nodes = 0;
+    /**
+     * Number of random moves at the start of each game; these positions are never sampled.
+     */
+    public int randomPlies = 8;
+    /**
+     * Probability that a position is sampled.
+     */
+    public double sampleRate = 0.25;
+    /**
+     * Number of plies after which a game is adjudicated a draw.
+     */
+    public int maxPlies = 400;
+    /**
+     * SampleWriter.BINARY or SampleWriter.TEXT.
+     */
+    public int format = SampleWriter.BINARY;
+    /**
+     * Seed of the first game; game i uses seed + i.
+     */
+    public long seed = 1;
+
+    /**
+     * Hashes of positions already written, one per slot (hash & mask); a new hash overwrites the slot.
+     */
+    private long[] seen;
+    private int seenMask;
+    private final AtomicInteger nextGame = new AtomicInteger();
+    private final AtomicLong gamesPlayed = new AtomicLong();
+    private final AtomicLong samplesWritten = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+
+    /**
+     * Constructor for DataGenerator.
+     *
+     * @param dedupEntries	number of position hashes the duplicate filter remembers (rounded down to a power of two)
+     */
+    public DataGenerator(int dedupEntries){
+        int size = Integer.highestOneBit(Math.max(1024, dedupEntries));
+        this.seen = new long[size];
+        this.seenMask = size - 1;
+    }
+
+    /**
+     * The main method. Usage:
+     * DataGenerator outputFile [games=N] [threads=N] [depth=0] [nodes=0] [randomplies=8] [sample=0.25]
+     * [maxplies=400] [format=binary|text] [dedup=16777216] [seed=1]
+     *
+     * @param args  the command line arguments
+     * @throws IOException	if the output file cannot be written
+     * @throws InterruptedException	if interrupted while waiting for the games
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        if(args.length < 1){
+            System.err.println("Usage: DataGenerator outputFile [games=N] [threads=N] [depth=0] [nodes=0] [randomplies=8] [sample=0.25] [maxplies=400] [format=binary|text] [dedup=16777216] [seed=1]");
+            System.exit(2);
+        }
+        int dedup = 1 << 24;
+        for(int i = 1; i < args.length; i++){
+            if(args[i].startsWith("dedup=")){
+                dedup = Integer.parseInt(args[i].substring(6));
+            }
+        }
+        DataGenerator generator = new DataGenerator(dedup);
+        for(int i = 1; i < args.length; i++){
+            String[] kv = args[i].split("=", 2);
+            switch(kv[0]){
+                case "games":
+                    generator.games = Integer.parseInt(kv[1]);
+                    break;
+                case "threads":
+                    generator.threads = Integer.parseInt(kv[1]);
+                    break;
+                case "depth":
+                    generator.depth = Integer.parseInt(kv[1]);
+                    break;
+                case "nodes":
+                    generator.nodes = Long.parseLong(kv[1]);
+                    break;
+                case "randomplies":
+                    generator.randomPlies = Integer.parseInt(kv[1]);
+                    break;
+                case "sample":
+                    generator.sampleRate = Double.parseDouble(kv[1]);
+                    break;
+                case "maxplies":
+                    generator.maxPlies = Integer.parseInt(kv[1]);
+                    break;
+                case "format":
+                    generator.format = kv[1].equals("text") ? SampleWriter.TEXT : SampleWriter.BINARY;
+                    break;
+                case "seed":
+                    generator.seed = Long.parseLong(kv[1]);
+                    break;
+                case "dedup":
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        long start = System.nanoTime();
+        try(FileChannel channel = FileChannel.open(Paths.get(args[0]), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+            generator.run(channel);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games, %d samples (%d duplicates skipped) in %.1f s, %.0f samples/s%n",
+            generator.gamesPlayed.get(), generator.samplesWritten.get(), generator.duplicates.get(),
+            seconds, generator.samplesWritten.get() / seconds);
+    }
+
+    /**
+     * Plays all games and writes their samples to the channel.
+     *
+     * @param channel	output channel
+     * @throws IOException	if writing fails
+     * @throws InterruptedException	if interrupted while waiting for the games
+     */
+    public void run(FileChannel channel) throws IOException, InterruptedException{
+        Thread[] workers = new Thread[this.threads];
+        IOException[] failure = new IOException[1];
+        for(int i = 0; i < workers.length; i++){
+            workers[i] = new Thread(() -> {
+                try{
+                    this.playGames(new SampleWriter(channel, this.format));
+                }
+                catch(IOException e){
+                    synchronized(failure){
+                        failure[0] = e;
+                    }
+                    this.nextGame.set(Integer.MAX_VALUE);//stop the other threads too
+                }
+            }, "datagen-" + i);
+            workers[i].start();
+        }
+        Thread reporter = new Thread(this::reportProgress, "datagen-progress");
+        reporter.setDaemon(true);
+        reporter.start();
+        for(Thread worker : workers){
+            worker.join();
+        }
+        reporter.interrupt();
+        synchronized(failure){
+            if(failure[0] != null){
+                throw failure[0];
+            }
+        }
+    }
+
+    /**
+     * Body of one worker thread: plays games until there are none left.
+     *
+     * @param writer	this thread's sample writer
+     * @throws IOException	if writing fails
+     */
+    private void playGames(SampleWriter writer) throws IOException{
+        Chess game = new Chess();
+        Search search = this.depth > 0 ? new Search(new ClassicalEvaluator(), new TranspositionTable(16)) : null;
+        int[] moves = new int[Position.MAX_MOVES];
+        Position[] samples = new Position[this.maxPlies];
+        int[] scores = new int[this.maxPlies];
+        int index;
+        while((index = this.nextGame.getAndIncrement()) < this.games){
+            SplittableRandom random = new SplittableRandom(this.seed + index);
+            game.generateBoard();
+            if(search != null){
+                search.newGame();
+            }
+            int sampled = 0;
+            int result = 1;
+            for(int plies = 0; ; plies++){
+                Position position = game.position;
+                int move;
+                int score = SampleWriter.NO_SCORE;
+                if(search == null || plies < this.randomPlies){
+                    move = moves[random.nextInt(position.generateMoves(moves))];
+                }
+                else{
+                    SearchResult best = search.search(position, game.history, this.depth, this.nodes);
+                    move = best.bestMove;
+                    score = best.score;
+                }
+                if(plies >= this.randomPlies && random.nextDouble() < this.sampleRate && !position.isInCheck()){
+                    if(this.isNew(position.hash)){
+                        samples[sampled] = position;
+                        scores[sampled++] = score;
+                    }
+                    else{
+                        this.duplicates.incrementAndGet();
+                    }
+                }
+                char mover = game.turn;
+                game.playMove(move);
+                int check_status = game.checkCheckStatus();
+                game.changeTurn();
+                if(check_status == 2){
+                    result = mover == 'w' ? 2 : 0;
+                    break;
+                }
+                if(check_status == 3 || game.isThreefoldRepetition() || game.isFiftyMoveRule() || plies + 1 >= this.maxPlies){
+                    break;
+                }
+            }
+            for(int i = 0; i < sampled; i++){
+                writer.add(samples[i], scores[i], result);
+            }
+            this.samplesWritten.addAndGet(sampled);
+            this.gamesPlayed.incrementAndGet();
+        }
+        writer.flush();
+    }
+
+    /**
+     * Checks a position against the duplicate filter and adds it.
+     *
+     * @param hash	Zobrist hash of the position
+     * @return		true if the position was not seen recently, false if it is a duplicate
+     */
+    private boolean isNew(long hash){
+        int slot = (int)hash & this.seenMask;
+        if(this.seen[slot] == hash){
+            return false;
+        }
+        this.seen[slot] = hash;//unsynchronized: a lost race only lets a duplicate through
+        return true;
+    }
+
+    /**
+     * Prints progress every ten seconds until interrupted.
+     */
+    private void reportProgress(){
+        while(true){
+            try{
+                Thread.sleep(10_000);
+            }
+            catch(InterruptedException e){
+                return;
+            }
+            System.out.println("games=" + this.gamesPlayed.get() + " samples=" + this.samplesWritten.get()
+                + " duplicates=" + this.duplicates.get());
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package chess.datagen;
+
+import chess.Position;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * SampleWriter collects the training samples of one generator thread in a buffer and appends the
+ * buffer to the shared output channel whenever it is full. Threads only synchronize on the channel
+ * for the write of a whole block (about a megabyte), so they never interleave inside each other's
+ * blocks and hardly ever wait for each other.
+ * <p>
+ * Two formats are supported:
+ * <ul>
+ * <li>BINARY: fixed 36-byte records: the 32-byte PackedPosition, the score as a big endian short
+ * (from the point of view of the side to move; NO_SCORE if there is none), the game result from
+ * white's point of view (0 loss, 1 draw, 2 win) and the halfmove clock (capped at 255).</li>
+ * <li>TEXT: lines "FEN;score;result" (score empty if there is none, result "1-0", "1/2-1/2" or
+ * "0-1"), gzip-compressed. Every flushed block is a complete gzip member, and a file of
+ * concatenated members is a valid gzip file, so each thread compresses its own blocks.</li>
+ * </ul>
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class SampleWriter {
+    /**
+     * Format of fixed-size binary records.
+     */
+    public static final int BINARY = 0;
+    /**
+     * Format of gzip-compressed text lines.
+     */
+    public static final int TEXT = 1;
+    /**
+     * Size of one BINARY record in bytes.
+     */
+    public static final int RECORD_SIZE = 36;
+    /**
+     * Score written when a sample has none.
+     */
+    public static final short NO_SCORE = Short.MIN_VALUE;
+
+    /**
+     * Bytes collected before a block is written.
+     */
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private final FileChannel channel;
+    private final int format;
+    private final ByteBuffer binary;
+    private final StringBuilder text;
+
+    /**
+     * Constructor for SampleWriter.
+     *
+     * @param channel	output channel, shared by all writers
+     * @param format	BINARY or TEXT
+     */
+    public SampleWriter(FileChannel channel, int format){
+        this.channel = channel;
+        this.format = format;
+        this.binary = format == BINARY ? ByteBuffer.allocateDirect(BLOCK_SIZE - BLOCK_SIZE % RECORD_SIZE) : null;
+        this.text = format == TEXT ? new StringBuilder(BLOCK_SIZE + 256) : null;
+    }
+
+    /**
+     * Adds one sample.
+     *
+     * @param position	sampled position
+     * @param score		search score from the point of view of the side to move, or NO_SCORE
+     * @param result	game result from white's point of view: 0 loss, 1 draw, 2 win
+     * @throws IOException	if a full block cannot be written
+     */
+    public void add(Position position, int score, int result) throws IOException{
+        if(this.format == BINARY){
+            if(this.binary.remaining() < RECORD_SIZE){
+                this.flush();
+            }
+            position.toPacked().writeTo(this.binary);
+            this.binary.putShort((short)score);
+            this.binary.put((byte)result);
+            this.binary.put((byte)Math.min(position.halfmoveClock, 255));
+        }
+        else{
+            this.text.append(position.toFen()).append(';');
+            if(score != NO_SCORE){
+                this.text.append(score);
+            }
+            this.text.append(';').append(result == 2 ? "1-0" : result == 1 ? "1/2-1/2" : "0-1").append('\n');
+            if(this.text.length() >= BLOCK_SIZE){
+                this.flush();
+            }
+        }
+    }
+
+    /**
+     * Writes everything collected so far to the channel.
+     *
+     * @throws IOException	if writing fails
+     */
+    public void flush() throws IOException{
+        ByteBuffer block;
+        if(this.format == BINARY){
+            this.binary.flip();
+            block = this.binary;
+        }
+        else{
+            if(this.text.length() == 0){
+                return;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(this.text.length() / 4);
+            try(GZIPOutputStream gzip = new GZIPOutputStream(bytes, 1 << 16)){
+                gzip.write(this.text.toString().getBytes(StandardCharsets.US_ASCII));
+            }
+            this.text.setLength(0);
+            block = ByteBuffer.wrap(bytes.toByteArray());
+        }
+        synchronized(this.channel){
+            while(block.hasRemaining()){
+                this.channel.write(block);
+            }
+        }
+        block.clear();
+    }
+}
@@ -0,0 +1,64 @@
+package chess.db;
+
+import chess.Move;
+
+/**
+ * ExplorerMove is one row of the opening explorer: a move played in a position and how the games
+ * that played it ended.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class ExplorerMove {
+    /**
+     * The move, packed (see Move).
+     */
+    public final int move;
+    /**
+     * Number of games white won after the move.
+     */
+    public final int whiteWins;
+    /**
+     * Number of drawn games after the move.
+     */
+    public final int draws;
+    /**
+     * Number of games black won after the move.
+     */
+    public final int blackWins;
+
+    /**
+     * Constructor for ExplorerMove.
+     *
+     * @param move		the move
+     * @param whiteWins	games white won
+     * @param draws		games drawn
+     * @param blackWins	games black won
+     */
+    public ExplorerMove(int move, int whiteWins, int draws, int blackWins){
+        this.move = move;
+        this.whiteWins = whiteWins;
+        this.draws = draws;
+        this.blackWins = blackWins;
+    }
+
+    /**
+     * Returns the number of games that played the move.
+     *
+     * @return  number of games
+     */
+    public long games(){
+        return (long)this.whiteWins + this.draws + this.blackWins;
+    }
+
+    /**
+     * Overrides the toString method from Object.
+     *
+     * @return  move, games and result percentages, e.g. "e2e4 1520 games 38% white 33% draw 29% black"
+     */
+    public String toString(){
+        double games = Math.max(1, this.games());
+        return String.format("%s %d games %.0f%% white %.0f%% draw %.0f%% black",
+            Move.toString(this.move).replace(" ", "").toLowerCase(), this.games(),
+            100 * this.whiteWins / games, 100 * this.draws / games, 100 * this.blackWins / games);
+    }
+}
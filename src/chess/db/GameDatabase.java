@@ -0,0 +1,124 @@
+package chess.db;
+
+import chess.Move;
+import chess.Position;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * GameDatabase answers "which games reached this position?" over a GameStore and its
+ * PositionIndex in one directory. Both are memory-mapped, so opening a database of millions of
+ * games takes no time and no heap, and a query reads a few pages of the index instead of replaying
+ * the archive.
+ * <p>
+ * From the command line:
+ * <pre>
+ * GameDatabase import games.txt dir     builds the store from one game per line (see GameStore.importGames())
+ * GameDatabase index dir [threads=N]    builds the position index of the store
+ * GameDatabase find dir FEN             lists the games that reached a position
+ * </pre>
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class GameDatabase {
+    /**
+     * The games.
+     */
+    public final GameStore store;
+    /**
+     * The position index of the games.
+     */
+    public final PositionIndex index;
+
+    /**
+     * Constructor for GameDatabase. Maps a store and its index.
+     *
+     * @param directory	directory of the store
+     * @throws IOException	if the files cannot be opened or mapped
+     */
+    public GameDatabase(Path directory) throws IOException{
+        this.store = new GameStore(directory);
+        this.index = new PositionIndex(directory);
+    }
+
+    /**
+     * Finds the games that reached a position, by its hash.
+     *
+     * @param position	the position
+     * @return			game numbers, in increasing order
+     */
+    public int[] gamesReaching(Position position){
+        return this.index.games(position);
+    }
+
+    /**
+     * Runs a command; see the class comment.
+     *
+     * @param args	command and its arguments
+     * @throws IOException			if a file cannot be read or written
+     * @throws InterruptedException	if interrupted while building the index
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        String usage = "Usage: GameDatabase import gamesFile dir | index dir [threads=N] | find dir FEN";
+        if(args.length < 2){
+            System.err.println(usage);
+            System.exit(2);
+        }
+        switch(args[0]){
+            case "import": {
+                if(args.length != 3){
+                    System.err.println(usage);
+                    System.exit(2);
+                }
+                long start = System.nanoTime();
+                int skipped = GameStore.importGames(Paths.get(args[1]), Paths.get(args[2]));
+                GameStore store = new GameStore(Paths.get(args[2]));
+                System.out.printf("Imported %d games (%d skipped) in %.1f s%n", store.gameCount, skipped,
+                    (System.nanoTime() - start) / 1e9);
+                break;
+            }
+            case "index": {
+                int threads = Runtime.getRuntime().availableProcessors();
+                for(int i = 2; i < args.length; i++){
+                    if(!args[i].startsWith("threads=")){
+                        System.err.println("Unknown option: " + args[i]);
+                        System.exit(2);
+                    }
+                    threads = Integer.parseInt(args[i].substring("threads=".length()));
+                }
+                long start = System.nanoTime();
+                Path directory = Paths.get(args[1]);
+                PositionIndex.build(new GameStore(directory), directory, threads);
+                System.out.printf("Indexed %d positions in %.1f s%n", new PositionIndex(directory).entryCount,
+                    (System.nanoTime() - start) / 1e9);
+                break;
+            }
+            case "find": {
+                if(args.length < 3){
+                    System.err.println(usage);
+                    System.exit(2);
+                }
+                GameDatabase database = new GameDatabase(Paths.get(args[1]));
+                String fen = String.join(" ", Arrays.copyOfRange(args, 2, args.length));
+                long start = System.nanoTime();
+                int[] games = database.gamesReaching(Position.fromFen(fen));
+                long nanos = System.nanoTime() - start;
+                System.out.printf("%d games (%d us)%n", games.length, nanos / 1000);
+                for(int id : games){
+                    StringBuilder sb = new StringBuilder().append(id).append(' ').append(database.store.result(id)).append(':');
+                    for(int move : database.store.moves(id)){
+                        sb.append(' ').append(Move.toString(move).replace(" ", "").toLowerCase());
+                    }
+                    System.out.println(sb);
+                }
+                break;
+            }
+            default:
+                System.err.println(usage);
+                System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package chess.db;
+
+import chess.Move;
+import chess.PackedPosition;
+import chess.Position;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * GameStore is a compact, read-only archive of games, memory-mapped for reading. Each game is stored
+ * as its result and its moves in the packed Move form, two bytes per move, all starting from the
+ * initial position; a game of 80 moves takes 324 bytes. Games are numbered from 0 in the order they
+ * were imported.
+ * <p>
+ * The archive is two files in one directory: GAMES_FILE holds the game records (a two-byte ply
+ * count, a result byte, a padding byte, then the moves), OFFSETS_FILE the offset of every record as
+ * a long, so a game is found with one read. Both files are big-endian.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class GameStore {
+    /**
+     * Name of the file of game records.
+     */
+    public static final String GAMES_FILE = "games.dat";
+    /**
+     * Name of the file of record offsets.
+     */
+    public static final String OFFSETS_FILE = "games.off";
+    /**
+     * Longest game that can be stored, in plies.
+     */
+    public static final int MAX_PLIES = Short.MAX_VALUE;
+
+    private final MappedFile games;
+    private final MappedFile offsets;
+
+    /**
+     * Number of games in the store.
+     */
+    public final int gameCount;
+
+    /**
+     * Constructor for GameStore. Maps the files of a store.
+     *
+     * @param directory	directory the store was imported into
+     * @throws IOException	if the files cannot be opened or mapped
+     */
+    public GameStore(Path directory) throws IOException{
+        this.games = new MappedFile(directory.resolve(GAMES_FILE));
+        this.offsets = new MappedFile(directory.resolve(OFFSETS_FILE));
+        this.gameCount = (int)(this.offsets.size / 8);
+    }
+
+    /**
+     * Returns the moves of a game.
+     *
+     * @param id	game number
+     * @return		its moves in packed Move form, from the initial position
+     */
+    public int[] moves(int id){
+        long offset = this.offsets.getLong((long)id * 8);
+        int[] rl = new int[this.games.getShort(offset) & 0xFFFF];
+        for(int i = 0; i < rl.length; i++){
+            rl[i] = this.games.getShort(offset + 4 + 2L * i) & 0xFFFF;
+        }
+        return rl;
+    }
+
+    /**
+     * Returns the result of a game.
+     *
+     * @param id	game number
+     * @return		'w' or 'b' for the winner, 'd' for a draw, '*' if unknown
+     */
+    public char result(int id){
+        return (char)this.games.get(this.offsets.getLong((long)id * 8) + 2);
+    }
+
+    /**
+     * Imports games into a new store, replacing any store in the directory. The input has one game
+     * per line: moves in coordinate notation from the initial position, optionally followed by the
+     * result, e.g. "e2e4 e7e5 g1f3 b8c6 f1b5 1-0". Promotions name the piece ("e7e8q", queen if
+     * left out). Every move is checked with the rules; a game with an illegal or unreadable move is
+     * skipped.
+     *
+     * @param input		file of games
+     * @param directory	directory to write the store to
+     * @return			number of games skipped
+     * @throws IOException	if the input cannot be read or the store cannot be written
+     */
+    public static int importGames(Path input, Path directory) throws IOException{
+        Files.createDirectories(directory);
+        int skipped = 0;
+        try(BufferedReader in = Files.newBufferedReader(input);
+            DataOutputStream games = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(GAMES_FILE)), 1 << 16));
+            DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(directory.resolve(OFFSETS_FILE)), 1 << 16))){
+            long offset = 0;
+            short[] moves = new short[MAX_PLIES];
+            String line;
+            while((line = in.readLine()) != null){
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")){
+                    continue;
+                }
+                Position position = Position.initial();
+                char result = '*';
+                int plies = 0;
+                boolean valid = true;
+                for(String token : line.split("\\s+")){
+                    if(token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")){
+                        result = token.equals("1-0") ? 'w' : token.equals("0-1") ? 'b' : token.equals("*") ? '*' : 'd';
+                        break;
+                    }
+                    int move = parseCoordinates(position, token);
+                    if(move == Move.NONE || plies == MAX_PLIES){
+                        valid = false;
+                        break;
+                    }
+                    moves[plies++] = (short)move;
+                    position = position.play(move);
+                }
+                if(!valid){
+                    skipped++;
+                    continue;
+                }
+                offsets.writeLong(offset);
+                games.writeShort(plies);
+                games.writeByte(result);
+                games.writeByte(0);
+                for(int i = 0; i < plies; i++){
+                    games.writeShort(moves[i]);
+                }
+                offset += 4 + 2L * plies;
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Reads a move in coordinate notation and checks it.
+     *
+     * @param position	position the move is played in
+     * @param text		the move, e.g. "g1f3" or "e7e8q"
+     * @return			the packed move, or Move.NONE if it is unreadable or illegal
+     */
+    private static int parseCoordinates(Position position, String text){
+        if(!text.matches("[a-h][1-8][a-h][1-8][qrbnQRBN]?")){
+            return Move.NONE;
+        }
+        int from = ('8' - text.charAt(1)) * 8 + (text.charAt(0) - 'a');
+        int to = ('8' - text.charAt(3)) * 8 + (text.charAt(2) - 'a');
+        int promotion = 0;
+        if(text.length() == 5){
+            promotion = "PNBRQK".indexOf(Character.toUpperCase(text.charAt(4))) + PackedPosition.PAWN;
+        }
+        else if((position.pieceAt(from) & 7) == PackedPosition.PAWN && (to < 8 || to >= 56)){
+            promotion = PackedPosition.QUEEN;
+        }
+        int move = Move.of(from, to, promotion);
+        return position.isLegal(move) ? move : Move.NONE;
+    }
+}
@@ -0,0 +1,86 @@
+package chess.db;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * MappedFile maps a whole file read-only, however large, as consecutive segments of SEGMENT_SIZE
+ * bytes (a single MappedByteBuffer cannot be larger than 2 GB). Reads are by absolute offset. A
+ * value never straddles two segments as long as it is stored at an offset that is a multiple of
+ * its size, which all the files of this package take care of.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+final class MappedFile {
+    /**
+     * Size of one mapped segment in bytes.
+     */
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    private final MappedByteBuffer[] segments;
+    /**
+     * Size of the file in bytes.
+     */
+    final long size;
+
+    /**
+     * Constructor for MappedFile.
+     *
+     * @param path	file to map
+     * @throws IOException	if the file cannot be opened or mapped
+     */
+    MappedFile(Path path) throws IOException{
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            this.size = channel.size();
+            int count = (int)((this.size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            this.segments = new MappedByteBuffer[count];
+            for(int i = 0; i < count; i++){
+                long offset = (long)i * SEGMENT_SIZE;
+                this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, this.size - offset));
+            }
+        }
+    }
+
+    /**
+     * Reads a long.
+     *
+     * @param offset	offset in the file, a multiple of the value's size
+     * @return			the value
+     */
+    long getLong(long offset){
+        return this.segments[(int)(offset >>> 30)].getLong((int)(offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Reads an int.
+     *
+     * @param offset	offset in the file, a multiple of the value's size
+     * @return			the value
+     */
+    int getInt(long offset){
+        return this.segments[(int)(offset >>> 30)].getInt((int)(offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Reads a short.
+     *
+     * @param offset	offset in the file, a multiple of the value's size
+     * @return			the value
+     */
+    short getShort(long offset){
+        return this.segments[(int)(offset >>> 30)].getShort((int)(offset & (SEGMENT_SIZE - 1)));
+    }
+
+    /**
+     * Reads a byte.
+     *
+     * @param offset	offset in the file, a multiple of the value's size
+     * @return			the value
+     */
+    byte get(long offset){
+        return this.segments[(int)(offset >>> 30)].get((int)(offset & (SEGMENT_SIZE - 1)));
+    }
+}
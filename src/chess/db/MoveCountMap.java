@@ -0,0 +1,132 @@
+package chess.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MoveCountMap counts game results per (position hash, move) pair, outside the Java heap. It is an
+ * open-addressing hash table with linear probing in one direct ByteBuffer: every slot is SLOT_BYTES
+ * bytes holding the hash, the move and the white win, draw and black win counts, so millions of
+ * pairs cost no objects and no garbage collection work. An empty slot has move 0, which is never a
+ * legal move. The table doubles when it is 70% full.
+ * <p>
+ * A MoveCountMap is not thread-safe.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+final class MoveCountMap {
+    /**
+     * Bytes of one slot: hash, move, white wins, draws, black wins.
+     */
+    static final int SLOT_BYTES = 24;
+    /**
+     * Most slots a table can have (a direct buffer is at most 2 GB).
+     */
+    static final int MAX_SLOTS = 1 << 26;
+
+    private ByteBuffer slots;
+    private int mask;
+    /**
+     * Number of pairs counted.
+     */
+    int size = 0;
+
+    /**
+     * Constructor for MoveCountMap.
+     *
+     * @param capacity	number of slots to start with; rounded up to a power of two
+     */
+    MoveCountMap(int capacity){
+        this.allocate(Math.max(16, Integer.highestOneBit(Math.max(1, capacity - 1)) << 1));
+    }
+
+    /**
+     * Counts a game result for a pair.
+     *
+     * @param hash		Zobrist hash of the position
+     * @param move		move played in it, packed
+     * @param result	'w' or 'b' for the winner, 'd' for a draw
+     */
+    void add(long hash, int move, char result){
+        int offset = this.find(hash, move);
+        if(this.slots.getInt(offset + 8) == 0){
+            this.slots.putLong(offset, hash);
+            this.slots.putInt(offset + 8, move);
+            if(++this.size > this.capacity() * 7L / 10){
+                this.grow();
+                offset = this.find(hash, move);
+            }
+        }
+        int counter = offset + (result == 'w' ? 12 : result == 'd' ? 16 : 20);
+        this.slots.putInt(counter, this.slots.getInt(counter) + 1);
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return  number of slots
+     */
+    int capacity(){
+        return this.mask + 1;
+    }
+
+    /**
+     * Returns the slots; slot i starts at byte i * SLOT_BYTES and is empty if the move (at byte 8
+     * of the slot) is 0.
+     *
+     * @return  the buffer of the slots
+     */
+    ByteBuffer slots(){
+        return this.slots;
+    }
+
+    /**
+     * Finds the slot of a pair, or the empty slot where it belongs.
+     *
+     * @param hash	Zobrist hash of the position
+     * @param move	move played in it
+     * @return		byte offset of the slot
+     */
+    private int find(long hash, int move){
+        long h = (hash ^ move * 0x9E3779B97F4A7C15L) * 0xC2B2AE3D27D4EB4FL;
+        for(int index = (int)(h >>> 32) & this.mask; ; index = (index + 1) & this.mask){
+            int offset = index * SLOT_BYTES;
+            int slot_move = this.slots.getInt(offset + 8);
+            if(slot_move == 0 || (slot_move == move && this.slots.getLong(offset) == hash)){
+                return offset;
+            }
+        }
+    }
+
+    /**
+     * Doubles the number of slots and moves every pair to its new slot.
+     */
+    private void grow(){
+        if(this.capacity() >= MAX_SLOTS){
+            throw new IllegalStateException("More than " + MAX_SLOTS * 7L / 10 + " position-move pairs");
+        }
+        ByteBuffer old = this.slots;
+        int old_capacity = this.capacity();
+        this.allocate(old_capacity * 2);
+        for(int i = 0; i < old_capacity; i++){
+            int from = i * SLOT_BYTES;
+            int move = old.getInt(from + 8);
+            if(move == 0){
+                continue;
+            }
+            int to = this.find(old.getLong(from), move);
+            for(int b = 0; b < SLOT_BYTES; b += 4){
+                this.slots.putInt(to + b, old.getInt(from + b));
+            }
+        }
+    }
+
+    /**
+     * Allocates an empty table.
+     *
+     * @param capacity	number of slots, a power of two
+     */
+    private void allocate(int capacity){
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);//zeroed, so every slot is empty
+        this.mask = capacity - 1;
+    }
+}
@@ -0,0 +1,339 @@
+package chess.db;
+
+import chess.Chess;
+import chess.Move;
+import chess.Position;
+import chess.San;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * OpeningExplorer answers "what was played here, and how did it go?" for the opening positions of
+ * a PGN corpus: for every move played in a position, how many games white won, drew and lost
+ * after it.
+ * <p>
+ * build() replays every game through Chess.movePiece() up to a number of plies, counts each
+ * (position, move) pair in an off-heap MoveCountMap, and writes the counts sorted by position hash
+ * to an explorer file: a header, a directory with one slot per few positions (as in PositionIndex),
+ * then one ENTRY_BYTES entry per pair. The file is memory-mapped for queries, so a query reads one
+ * directory slot and the few entries after it, and takes microseconds however large the corpus was.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class OpeningExplorer {
+    /**
+     * Default number of plies of every game that are counted.
+     */
+    public static final int DEFAULT_PLIES = 30;
+    /**
+     * Bytes of one entry: hash, move, white wins, draws, black wins.
+     */
+    static final int ENTRY_BYTES = MoveCountMap.SLOT_BYTES;
+    /**
+     * Average number of entries of a directory slot the directory is sized for.
+     */
+    private static final int ENTRIES_PER_SLOT = 8;
+    /**
+     * Bytes before the directory: entry count and directory bits.
+     */
+    private static final int HEADER_BYTES = 16;
+
+    private final MappedFile file;
+    /**
+     * Number of (position, move) entries.
+     */
+    public final long entryCount;
+    private final int directoryBits;
+    private final long entryBase;
+
+    /**
+     * Constructor for OpeningExplorer. Maps an explorer file.
+     *
+     * @param path	file written by build()
+     * @throws IOException	if the file cannot be opened or mapped
+     */
+    public OpeningExplorer(Path path) throws IOException{
+        this.file = new MappedFile(path);
+        this.entryCount = this.file.getLong(0);
+        this.directoryBits = (int)this.file.getLong(8);
+        this.entryBase = HEADER_BYTES + (((1L << this.directoryBits) + 1) << 3);
+    }
+
+    /**
+     * Returns the moves played in a position.
+     *
+     * @param position	the position
+     * @return			its moves, most often played first; empty if the position is not in the corpus
+     */
+    public ExplorerMove[] moves(Position position){
+        long hash = position.hash;
+        long slot = hash >>> (64 - this.directoryBits);
+        long lo = this.file.getLong(HEADER_BYTES + (slot << 3));
+        long hi = this.file.getLong(HEADER_BYTES + ((slot + 1) << 3));
+        ExplorerMove[] rl = new ExplorerMove[0];
+        int n = 0;
+        for(long i = lo; i < hi; i++){
+            long offset = this.entryBase + i * ENTRY_BYTES;
+            if(this.file.getLong(offset) != hash){
+                continue;
+            }
+            if(n == rl.length){
+                rl = Arrays.copyOf(rl, Math.max(8, n * 2));
+            }
+            rl[n++] = new ExplorerMove(this.file.getInt(offset + 8), this.file.getInt(offset + 12),
+                this.file.getInt(offset + 16), this.file.getInt(offset + 20));
+        }
+        rl = Arrays.copyOf(rl, n);
+        Arrays.sort(rl, (a, b) -> Long.compare(b.games(), a.games()));
+        return rl;
+    }
+
+    /**
+     * Builds an explorer file from a PGN file. Games without a result (or with "*") are not
+     * counted, nor are the moves of a game after one that cannot be read. Variations, comments and
+     * annotation glyphs are skipped; games that start from a [FEN] tag start there.
+     *
+     * @param pgn		PGN file
+     * @param output	explorer file to write
+     * @param maxPlies	number of plies of every game to count
+     * @return			number of games counted
+     * @throws IOException	if the PGN cannot be read or the explorer file cannot be written
+     */
+    public static int build(Path pgn, Path output, int maxPlies) throws IOException{
+        MoveCountMap counts = new MoveCountMap(1 << 16);
+        Chess game = new Chess();
+        game.setPosition(Position.initial());
+        long[] hashes = new long[maxPlies];
+        int[] moves = new int[maxPlies];
+        int plies = 0, games = 0, variation_depth = 0;
+        boolean replaying = true, in_game = false, in_comment = false;
+        char tag_result = '*';
+        try(BufferedReader in = Files.newBufferedReader(pgn)){
+            String line;
+            while((line = in.readLine()) != null){
+                if(!in_comment && line.startsWith("[")){
+                    if(in_game){//a game without a result token ends at the next tags
+                        games += count(counts, hashes, moves, plies, tag_result);
+                        in_game = false;
+                        plies = 0;
+                        replaying = true;
+                        tag_result = '*';
+                        game.setPosition(Position.initial());
+                    }
+                    if(line.startsWith("[Result ")){
+                        tag_result = result(line.substring(8).replace("\"", "").replace("]", "").trim());
+                    }
+                    else if(line.startsWith("[FEN ")){
+                        game.setPosition(Position.fromFen(line.substring(5).replace("\"", "").replace("]", "").trim()));
+                    }
+                    continue;
+                }
+                for(int i = 0; i < line.length(); ){
+                    char c = line.charAt(i);
+                    if(in_comment){
+                        in_comment = c != '}';
+                        i++;
+                        continue;
+                    }
+                    if(c == ';'){
+                        break;//comment to the end of the line
+                    }
+                    if(c == '{' || c == '(' || c == ')' || Character.isWhitespace(c)){
+                        in_comment = c == '{';
+                        variation_depth += c == '(' ? 1 : c == ')' ? -1 : 0;
+                        i++;
+                        continue;
+                    }
+                    int end = i;
+                    while(end < line.length() && "{}();".indexOf(line.charAt(end)) < 0 && !Character.isWhitespace(line.charAt(end))){
+                        end++;
+                    }
+                    String token = line.substring(i, end);
+                    i = end;
+                    if(variation_depth > 0 || token.startsWith("$")){
+                        continue;
+                    }
+                    char token_result = result(token);
+                    if(token_result != 0){
+                        games += count(counts, hashes, moves, plies, token_result != '*' ? token_result : tag_result);
+                        in_game = false;
+                        plies = 0;
+                        replaying = true;
+                        tag_result = '*';
+                        game.setPosition(Position.initial());
+                        continue;
+                    }
+                    int digits = 0;
+                    while(digits < token.length() && Character.isDigit(token.charAt(digits))){
+                        digits++;
+                    }
+                    if(digits > 0 && digits < token.length() && token.charAt(digits) == '.'){
+                        while(digits < token.length() && token.charAt(digits) == '.'){
+                            digits++;
+                        }
+                        token = token.substring(digits);//move number, e.g. "12." or "12...", maybe glued to the move
+                    }
+                    if(token.isEmpty()){
+                        continue;
+                    }
+                    in_game = true;
+                    if(!replaying || plies == maxPlies){
+                        continue;
+                    }
+                    int move = San.parse(game.position, token);
+                    if(move == Move.NONE){
+                        replaying = false;
+                        continue;
+                    }
+                    hashes[plies] = game.position.hash;
+                    moves[plies++] = move;
+                    int from = Move.from(move), to = Move.to(move);
+                    if(Move.promotion(move) != 0){
+                        game.movePieceWithPromotion(from >> 3, from & 7, to >> 3, to & 7,
+                            String.valueOf(" PNBRQK".charAt(Move.promotion(move))));
+                    }
+                    else{
+                        game.movePiece(from >> 3, from & 7, to >> 3, to & 7);
+                    }
+                    game.changeTurn();
+                }
+            }
+        }
+        if(in_game){
+            games += count(counts, hashes, moves, plies, tag_result);
+        }
+        write(counts, output);
+        return games;
+    }
+
+    /**
+     * Reads a game result.
+     *
+     * @param text	"1-0", "0-1", "1/2-1/2" or "*"
+     * @return		'w', 'b', 'd' or '*', or 0 if the text is not a result
+     */
+    private static char result(String text){
+        switch(text){
+            case "1-0":
+                return 'w';
+            case "0-1":
+                return 'b';
+            case "1/2-1/2":
+                return 'd';
+            case "*":
+                return '*';
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Counts the moves of one game.
+     *
+     * @param counts	the counts
+     * @param hashes	hashes of the positions the moves were played in
+     * @param moves		the moves
+     * @param plies		number of moves
+     * @param result	result of the game
+     * @return			1 if the game was counted, 0 if it has no result
+     */
+    private static int count(MoveCountMap counts, long[] hashes, int[] moves, int plies, char result){
+        if(result != 'w' && result != 'b' && result != 'd'){
+            return 0;
+        }
+        for(int i = 0; i < plies; i++){
+            counts.add(hashes[i], moves[i], result);
+        }
+        return 1;
+    }
+
+    /**
+     * Writes the counts to an explorer file, sorted by position hash.
+     *
+     * @param counts	the counts
+     * @param output	explorer file
+     * @throws IOException	if the file cannot be written
+     */
+    private static void write(MoveCountMap counts, Path output) throws IOException{
+        ByteBuffer slots = counts.slots();
+        long[] hashes = new long[counts.size];
+        int[] offsets = new int[counts.size];
+        int n = 0;
+        for(int i = 0; i < counts.capacity(); i++){
+            int offset = i * MoveCountMap.SLOT_BYTES;
+            if(slots.getInt(offset + 8) != 0){
+                hashes[n] = slots.getLong(offset);
+                offsets[n++] = offset;
+            }
+        }
+        PositionIndex.radixSort(hashes, offsets, 8);
+        int bits = 8;
+        while(bits < 24 && (n >> bits) > ENTRIES_PER_SLOT){
+            bits++;
+        }
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output), 1 << 16))){
+            out.writeLong(n);
+            out.writeLong(bits);
+            int i = 0;
+            for(int slot = 0; slot < 1 << bits; slot++){
+                out.writeLong(i);
+                while(i < n && (int)(hashes[i] >>> (64 - bits)) == slot){
+                    i++;
+                }
+            }
+            out.writeLong(n);
+            for(i = 0; i < n; i++){
+                for(int b = 0; b < ENTRY_BYTES; b += 4){
+                    out.writeInt(slots.getInt(offsets[i] + b));
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds or queries an explorer file from the command line.
+     *
+     * @param args	"build games.pgn explorer.bin [plies=N]" or "query explorer.bin FEN"
+     * @throws IOException	if a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException{
+        String usage = "Usage: OpeningExplorer build pgnFile explorerFile [plies=N] | query explorerFile FEN";
+        if(args.length >= 3 && args[0].equals("build")){
+            int plies = DEFAULT_PLIES;
+            for(int i = 3; i < args.length; i++){
+                if(!args[i].startsWith("plies=")){
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+                plies = Integer.parseInt(args[i].substring("plies=".length()));
+            }
+            long start = System.nanoTime();
+            int games = build(Paths.get(args[1]), Paths.get(args[2]), plies);
+            System.out.printf("Counted %d games, %d position-move pairs in %.1f s%n", games,
+                new OpeningExplorer(Paths.get(args[2])).entryCount, (System.nanoTime() - start) / 1e9);
+        }
+        else if(args.length >= 3 && args[0].equals("query")){
+            OpeningExplorer explorer = new OpeningExplorer(Paths.get(args[1]));
+            Position position = Position.fromFen(String.join(" ", Arrays.copyOfRange(args, 2, args.length)));
+            long start = System.nanoTime();
+            ExplorerMove[] moves = explorer.moves(position);
+            long nanos = System.nanoTime() - start;
+            System.out.printf("%d moves (%d us)%n", moves.length, nanos / 1000);
+            for(ExplorerMove move : moves){
+                System.out.println(move);
+            }
+        }
+        else{
+            System.err.println(usage);
+            System.exit(2);
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package chess.db;
+
+import chess.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * PositionIndex maps position hashes to the games of a GameStore that reached them. It is one
+ * memory-mapped file: a header, a directory, then all (hash, game) entries sorted by hash, the hashes
+ * and the game numbers in two separate arrays. The directory holds, for every value of the top bits
+ * of a hash, where its entries start; it has one slot per about ENTRIES_PER_SLOT entries, so the
+ * entries of a slot fit in a page or two and a lookup touches the directory, a page of hashes and a
+ * page of game numbers.
+ * <p>
+ * The index is built in two passes that both run on several threads. The first replays the games
+ * and writes each game's distinct position hashes to PARTITIONS temporary files by the top byte of
+ * the hash; the second radix-sorts every partition in memory and writes it to its place in the
+ * index. Only one partition per thread has to fit in memory, so the archive can be far larger than
+ * the heap.
+ * <p>
+ * Hashes are 64-bit Zobrist keys, so a lookup may in theory return a game that reached another
+ * position with the same hash; replaying the game settles it.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class PositionIndex {
+    /**
+     * Name of the index file in the store directory.
+     */
+    public static final String INDEX_FILE = "positions.idx";
+    /**
+     * Number of partitions of the first pass (the top byte of the hash).
+     */
+    public static final int PARTITIONS = 256;
+    /**
+     * Average number of entries of a directory slot the directory is sized for.
+     */
+    public static final int ENTRIES_PER_SLOT = 256;
+    /**
+     * Bytes before the directory: entry count and directory bits.
+     */
+    private static final int HEADER_BYTES = 16;
+
+    private final MappedFile file;
+    /**
+     * Number of (hash, game) entries.
+     */
+    public final long entryCount;
+    /**
+     * Number of top hash bits that select a directory slot.
+     */
+    private final int directoryBits;
+    private final long hashBase;
+    private final long gameBase;
+
+    /**
+     * Constructor for PositionIndex. Maps the index of a store.
+     *
+     * @param directory	directory of the store
+     * @throws IOException	if the index cannot be opened or mapped
+     */
+    public PositionIndex(Path directory) throws IOException{
+        this.file = new MappedFile(directory.resolve(INDEX_FILE));
+        this.entryCount = this.file.getLong(0);
+        this.directoryBits = (int)this.file.getLong(8);
+        this.hashBase = HEADER_BYTES + (((1L << this.directoryBits) + 1) << 3);
+        this.gameBase = this.hashBase + (this.entryCount << 3);
+    }
+
+    /**
+     * Finds the games that reached a position.
+     *
+     * @param position	the position
+     * @return			game numbers, in increasing order
+     */
+    public int[] games(Position position){
+        return this.games(position.hash);
+    }
+
+    /**
+     * Finds the games that reached a position.
+     *
+     * @param hash	Zobrist hash of the position
+     * @return		game numbers, in increasing order
+     */
+    public int[] games(long hash){
+        long slot = hash >>> (64 - this.directoryBits);
+        long lo = this.file.getLong(HEADER_BYTES + (slot << 3));
+        long hi = this.file.getLong(HEADER_BYTES + ((slot + 1) << 3));
+        while(lo < hi){//first entry not below hash
+            long mid = (lo + hi) >>> 1;
+            if(Long.compareUnsigned(this.file.getLong(this.hashBase + (mid << 3)), hash) < 0){
+                lo = mid + 1;
+            }
+            else{
+                hi = mid;
+            }
+        }
+        long end = lo;
+        while(end < this.entryCount && this.file.getLong(this.hashBase + (end << 3)) == hash){
+            end++;
+        }
+        int[] rl = new int[(int)(end - lo)];
+        for(int i = 0; i < rl.length; i++){
+            rl[i] = this.file.getInt(this.gameBase + ((lo + i) << 2));
+        }
+        Arrays.sort(rl);
+        return rl;
+    }
+
+    /**
+     * Builds the index of a store, replacing any index it has.
+     *
+     * @param store		the store
+     * @param directory	directory of the store
+     * @param threads	number of threads
+     * @throws IOException			if the index or a temporary file cannot be written
+     * @throws InterruptedException	if interrupted while waiting for the threads
+     */
+    public static void build(GameStore store, Path directory, int threads) throws IOException, InterruptedException{
+        Path[] part_paths = new Path[PARTITIONS];
+        FileChannel[] parts = new FileChannel[PARTITIONS];
+        try{
+            for(int p = 0; p < PARTITIONS; p++){
+                part_paths[p] = directory.resolve(INDEX_FILE + "." + p);
+                parts[p] = FileChannel.open(part_paths[p], StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            AtomicInteger next_game = new AtomicInteger();
+            runThreads(threads, () -> partitionGames(store, next_game, parts));
+
+            long[] starts = new long[PARTITIONS + 1];
+            for(int p = 0; p < PARTITIONS; p++){
+                starts[p + 1] = starts[p] + parts[p].size() / 12;
+            }
+            long count = starts[PARTITIONS];
+            int bits = 8;
+            while(bits < 24 && (count >> bits) > ENTRIES_PER_SLOT){
+                bits++;
+            }
+            int directory_bits = bits;
+            long[] slots = new long[(1 << directory_bits) + 1];
+            slots[1 << directory_bits] = count;
+            long hash_base = HEADER_BYTES + ((long)slots.length << 3);
+            long game_base = hash_base + (count << 3);
+            try(FileChannel index = FileChannel.open(directory.resolve(INDEX_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                AtomicInteger next_part = new AtomicInteger();
+                runThreads(threads, () -> {
+                    for(int p; (p = next_part.getAndIncrement()) < PARTITIONS; ){
+                        sortPartition(parts[p], index, starts[p], hash_base, game_base, slots, p, directory_bits);
+                        parts[p].truncate(0);
+                    }
+                });
+                ByteBuffer header = ByteBuffer.allocate((int)hash_base);
+                header.putLong(count).putLong(directory_bits);
+                for(long start : slots){
+                    header.putLong(start);
+                }
+                header.flip();
+                writeFully(index, header, 0);
+            }
+        }
+        finally{
+            for(int p = 0; p < PARTITIONS; p++){
+                if(parts[p] != null){
+                    parts[p].close();
+                    Files.deleteIfExists(part_paths[p]);
+                }
+            }
+        }
+    }
+
+    /**
+     * First pass, body of one thread: replays games until there are none left and appends the
+     * distinct position hashes of each to the partition files as (hash, game) entries of 12 bytes.
+     *
+     * @param store		the store
+     * @param nextGame	next game to replay
+     * @param parts		partition files
+     * @throws IOException	if a partition cannot be written
+     */
+    private static void partitionGames(GameStore store, AtomicInteger nextGame, FileChannel[] parts) throws IOException{
+        ByteBuffer[] buffers = new ByteBuffer[PARTITIONS];
+        for(int p = 0; p < PARTITIONS; p++){
+            buffers[p] = ByteBuffer.allocate(12 * 1024);
+        }
+        long[] hashes = new long[GameStore.MAX_PLIES + 1];
+        for(int id; (id = nextGame.getAndIncrement()) < store.gameCount; ){
+            int[] moves = store.moves(id);
+            Position position = Position.initial();
+            hashes[0] = position.hash;
+            for(int i = 0; i < moves.length; i++){
+                position = position.play(moves[i]);
+                hashes[i + 1] = position.hash;
+            }
+            Arrays.sort(hashes, 0, moves.length + 1);
+            for(int i = 0; i <= moves.length; i++){
+                if(i > 0 && hashes[i] == hashes[i - 1]){
+                    continue;//a position repeated within the game is indexed once
+                }
+                int p = (int)(hashes[i] >>> 56);
+                buffers[p].putLong(hashes[i]).putInt(id);
+                if(!buffers[p].hasRemaining()){
+                    flush(parts[p], buffers[p]);
+                }
+            }
+        }
+        for(int p = 0; p < PARTITIONS; p++){
+            flush(parts[p], buffers[p]);
+        }
+    }
+
+    /**
+     * Appends a buffer to a partition file and clears it.
+     *
+     * @param part		partition file, shared by all threads
+     * @param buffer	entries to append
+     * @throws IOException	if the file cannot be written
+     */
+    private static void flush(FileChannel part, ByteBuffer buffer) throws IOException{
+        buffer.flip();
+        synchronized(part){
+            writeFully(part, buffer, part.size());
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Second pass for one partition: sorts its entries by hash and writes them to the index, and
+     * fills its part of the directory.
+     *
+     * @param part				partition file
+     * @param index				index file
+     * @param start				index of the partition's first entry
+     * @param hashBase			offset of the hash array in the index
+     * @param gameBase			offset of the game array in the index
+     * @param slots				directory to fill
+     * @param partition			number of the partition
+     * @param directoryBits		number of top hash bits that select a directory slot
+     * @throws IOException	if a file cannot be read or written
+     */
+    private static void sortPartition(FileChannel part, FileChannel index, long start, long hashBase, long gameBase,
+        long[] slots, int partition, int directoryBits) throws IOException{
+        if(part.size() > Integer.MAX_VALUE){
+            throw new IOException("Partition " + partition + " is too large to sort in memory");
+        }
+        int n = (int)(part.size() / 12);
+        ByteBuffer in = ByteBuffer.allocate(n * 12);
+        while(in.hasRemaining()){
+            part.read(in, in.position());
+        }
+        in.flip();
+        long[] hashes = new long[n];
+        int[] games = new int[n];
+        for(int i = 0; i < n; i++){
+            hashes[i] = in.getLong();
+            games[i] = in.getInt();
+        }
+        in = null;//only the arrays are needed while sorting
+        radixSort(hashes, games, 7);
+
+        int first_slot = partition << (directoryBits - 8);
+        int slot_count = 1 << (directoryBits - 8);
+        int i = 0;
+        for(int s = 0; s < slot_count; s++){
+            slots[first_slot + s] = start + i;
+            while(i < n && (int)(hashes[i] >>> (64 - directoryBits)) == first_slot + s){
+                i++;
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(n * 8);
+        out.asLongBuffer().put(hashes);
+        writeFully(index, out, hashBase + (start << 3));
+        out = ByteBuffer.allocate(n * 4);
+        out.asIntBuffer().put(games);
+        writeFully(index, out, gameBase + (start << 2));
+    }
+
+    /**
+     * Sorts entries by key, unsigned, with a least-significant-byte-first radix sort, one pass per
+     * byte. Keys that share their top bytes need fewer passes: the entries of a partition share their
+     * top byte, so seven are enough there.
+     *
+     * @param hashes	keys of the entries
+     * @param games		values of the entries, moved along with the keys
+     * @param bytes		number of low key bytes to sort by
+     */
+    static void radixSort(long[] hashes, int[] games, int bytes){
+        int n = hashes.length;
+        long[] hash_buffer = new long[n];
+        int[] game_buffer = new int[n];
+        int[] counts = new int[257];
+        for(int shift = 0; shift < 8 * bytes; shift += 8){
+            Arrays.fill(counts, 0);
+            for(long h : hashes){
+                counts[(int)(h >>> shift & 0xFF) + 1]++;
+            }
+            for(int b = 0; b < 256; b++){
+                counts[b + 1] += counts[b];
+            }
+            for(int i = 0; i < n; i++){
+                int at = counts[(int)(hashes[i] >>> shift & 0xFF)]++;
+                hash_buffer[at] = hashes[i];
+                game_buffer[at] = games[i];
+            }
+            System.arraycopy(hash_buffer, 0, hashes, 0, n);
+            System.arraycopy(game_buffer, 0, games, 0, n);
+        }
+    }
+
+    /**
+     * Writes a whole buffer at a file offset.
+     *
+     * @param channel	the file
+     * @param buffer	bytes to write
+     * @param offset	where to write them
+     * @throws IOException	if the file cannot be written
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException{
+        while(buffer.hasRemaining()){
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    /**
+     * Runs a task on a number of threads and waits for all of them. If a thread fails, the first
+     * failure is thrown here once every thread has finished, so that build() never writes the
+     * header of an index with missing entries.
+     *
+     * @param threads	number of threads
+     * @param task		the task; every thread runs it once
+     * @throws IOException			if the task threw one on some thread
+     * @throws InterruptedException	if interrupted while waiting
+     */
+    private static void runThreads(int threads, Task task) throws IOException, InterruptedException{
+        Thread[] workers = new Thread[Math.max(1, threads)];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for(int i = 0; i < workers.length; i++){
+            workers[i] = new Thread(() -> {
+                try{
+                    task.run();
+                }
+                catch(Throwable e){//also RuntimeExceptions and Errors, e.g. OutOfMemoryError in sortPartition
+                    failure.compareAndSet(null, e);
+                }
+            }, "position-index-" + i);
+            workers[i].start();
+        }
+        for(Thread worker : workers){
+            worker.join();
+        }
+        Throwable e = failure.get();
+        if(e instanceof IOException){
+            throw (IOException)e;
+        }
+        if(e instanceof RuntimeException){
+            throw (RuntimeException)e;
+        }
+        if(e instanceof Error){
+            throw (Error)e;
+        }
+    }
+
+    /**
+     * Task is the body of a thread of runThreads().
+     */
+    private interface Task {
+        void run() throws IOException;
+    }
+}
@@ -0,0 +1,179 @@
+package chess.engine;
+
+import chess.PackedPosition;
+import chess.Position;
+
+/**
+ * ClassicalEvaluator scores a position by material and piece-square tables (where each piece type
+ * likes to stand), blending a middlegame and an endgame table for the King by how much material
+ * is left. The tables are the well-known "simplified evaluation function" ones. Piece values and
+ * the weight of the tables can be changed, which is what tournaments between configurations tune.
+ * <p>
+ * Pawn structure (doubled, isolated and passed pawns) is scored too, also blended by phase. Those
+ * terms only depend on the pawns, so they come from a PawnHashTable; each thread has its own table,
+ * so one evaluator can serve several search threads.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public class ClassicalEvaluator implements Evaluator {
+    /**
+     * Piece-square tables by PackedPosition type code, for white pieces, indexed by square (row 0
+     * is the 8th rank). Black pieces use the square mirrored vertically (sq ^ 56).
+     */
+    private static final int[][] TABLES = new int[7][];
+    /**
+     * King table for the endgame.
+     */
+    private static final int[] KING_ENDGAME = {
+        -50,-40,-30,-20,-20,-30,-40,-50,
+        -30,-20,-10,  0,  0,-10,-20,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 30, 40, 40, 30,-10,-30,
+        -30,-10, 20, 30, 30, 20,-10,-30,
+        -30,-30,  0,  0,  0,  0,-30,-30,
+        -50,-30,-30,-30,-30,-30,-30,-50,
+    };
+    /**
+     * Contribution of each piece type to the game phase; 24 with all pieces on the board.
+     */
+    private static final int[] PHASE = {0, 0, 1, 1, 2, 4, 0};
+
+    static{
+        TABLES[PackedPosition.PAWN] = new int[]{
+              0,  0,  0,  0,  0,  0,  0,  0,
+             50, 50, 50, 50, 50, 50, 50, 50,
+             10, 10, 20, 30, 30, 20, 10, 10,
+              5,  5, 10, 25, 25, 10,  5,  5,
+              0,  0,  0, 20, 20,  0,  0,  0,
+              5, -5,-10,  0,  0,-10, -5,  5,
+              5, 10, 10,-20,-20, 10, 10,  5,
+              0,  0,  0,  0,  0,  0,  0,  0,
+        };
+        TABLES[PackedPosition.KNIGHT] = new int[]{
+            -50,-40,-30,-30,-30,-30,-40,-50,
+            -40,-20,  0,  0,  0,  0,-20,-40,
+            -30,  0, 10, 15, 15, 10,  0,-30,
+            -30,  5, 15, 20, 20, 15,  5,-30,
+            -30,  0, 15, 20, 20, 15,  0,-30,
+            -30,  5, 10, 15, 15, 10,  5,-30,
+            -40,-20,  0,  5,  5,  0,-20,-40,
+            -50,-40,-30,-30,-30,-30,-40,-50,
+        };
+        TABLES[PackedPosition.BISHOP] = new int[]{
+            -20,-10,-10,-10,-10,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5, 10, 10,  5,  0,-10,
+            -10,  5,  5, 10, 10,  5,  5,-10,
+            -10,  0, 10, 10, 10, 10,  0,-10,
+            -10, 10, 10, 10, 10, 10, 10,-10,
+            -10,  5,  0,  0,  0,  0,  5,-10,
+            -20,-10,-10,-10,-10,-10,-10,-20,
+        };
+        TABLES[PackedPosition.ROOK] = new int[]{
+              0,  0,  0,  0,  0,  0,  0,  0,
+              5, 10, 10, 10, 10, 10, 10,  5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+             -5,  0,  0,  0,  0,  0,  0, -5,
+              0,  0,  0,  5,  5,  0,  0,  0,
+        };
+        TABLES[PackedPosition.QUEEN] = new int[]{
+            -20,-10,-10, -5, -5,-10,-10,-20,
+            -10,  0,  0,  0,  0,  0,  0,-10,
+            -10,  0,  5,  5,  5,  5,  0,-10,
+             -5,  0,  5,  5,  5,  5,  0, -5,
+              0,  0,  5,  5,  5,  5,  0, -5,
+            -10,  5,  5,  5,  5,  5,  0,-10,
+            -10,  0,  5,  0,  0,  0,  0,-10,
+            -20,-10,-10, -5, -5,-10,-10,-20,
+        };
+        TABLES[PackedPosition.KING] = new int[]{
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -30,-40,-40,-50,-50,-40,-40,-30,
+            -20,-30,-30,-40,-40,-30,-30,-20,
+            -10,-20,-20,-20,-20,-20,-20,-10,
+             20, 20,  0,  0,  0,  0, 20, 20,
+             20, 30, 10,  0,  0, 10, 30, 20,
+        };
+    }
+
+    /**
+     * Value of each piece type in centipawns, by PackedPosition type code (the King's is unused).
+     */
+    public final int[] values;
+    /**
+     * Weight of the piece-square tables in percent (100 uses them as they are, 0 ignores them).
+     */
+    public final int tablePercent;
+    /**
+     * Pawn-structure cache of each thread using this evaluator.
+     */
+    private final ThreadLocal<PawnHashTable> pawnTables = ThreadLocal.withInitial(PawnHashTable::new);
+
+    /**
+     * Constructor for ClassicalEvaluator with the usual piece values and full table weight.
+     */
+    public ClassicalEvaluator(){
+        this(new int[]{0, 100, 320, 330, 500, 900, 0}, 100);
+    }
+
+    /**
+     * Constructor for ClassicalEvaluator.
+     *
+     * @param values		value of each piece type in centipawns, indexed by PackedPosition type code
+     * @param tablePercent	weight of the piece-square tables in percent
+     */
+    public ClassicalEvaluator(int[] values, int tablePercent){
+        this.values = values.clone();
+        this.tablePercent = tablePercent;
+    }
+
+    public int evaluate(Position position){
+        int material = 0;
+        int tables = 0;
+        int phase = 0;
+        int king_middle = 0;
+        int king_end = 0;
+        long white_pawns = 0;
+        long black_pawns = 0;
+        for(int sq = 0; sq < 64; sq++){
+            int code = position.pieceAt(sq);
+            if(code == 0){
+                continue;
+            }
+            int type = code & 7;
+            boolean white = (code & PackedPosition.BLACK) == 0;
+            int table_sq = white ? sq : sq ^ 56;
+            int sign = white ? 1 : -1;
+            phase += PHASE[type];
+            if(type == PackedPosition.PAWN){
+                if(white){
+                    white_pawns |= 1L << sq;
+                }
+                else{
+                    black_pawns |= 1L << sq;
+                }
+            }
+            if(type == PackedPosition.KING){
+                king_middle += sign * TABLES[type][table_sq];
+                king_end += sign * KING_ENDGAME[table_sq];
+            }
+            else{
+                material += sign * this.values[type];
+                tables += sign * TABLES[type][table_sq];
+            }
+        }
+        phase = Math.min(phase, 24);
+        tables += (king_middle * phase + king_end * (24 - phase)) / 24;
+        PawnHashTable pawn_table = this.pawnTables.get();
+        int entry = pawn_table.probe(white_pawns, black_pawns);
+        int pawns = (pawn_table.middlegame(entry) * phase + pawn_table.endgame(entry) * (24 - phase)) / 24;
+        int score = material + tables * this.tablePercent / 100 + pawns;
+        return position.turn == 'w' ? score : -score;
+    }
+}
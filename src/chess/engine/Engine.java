@@ -0,0 +1,45 @@
+package chess.engine;
+
+import chess.Position;
+import chess.PositionHistory;
+
+/**
+ * Engine is anything that picks moves: the alpha-beta Search or the MonteCarloSearch. Games and
+ * tournaments only talk to this interface, so the kind of engine is just a setting (see EngineConfig).
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public interface Engine {
+    /**
+     * Forgets everything learned in earlier searches, so that a new game does not depend on the
+     * previous ones.
+     */
+    void newGame();
+
+    /**
+     * Asks a running search to stop as soon as possible; it then returns the best move found so
+     * far. Can be called from any thread.
+     */
+    void stop();
+
+    /**
+     * Searches a position.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param maxDepth		depth limit, as the engine understands it
+     * @param maxNodes		node limit, as the engine understands it, 0 for the engine's default
+     * @return				what the search found
+     */
+    SearchResult search(Position root, PositionHistory gameHistory, int maxDepth, long maxNodes);
+
+    /**
+     * Searches a position for as long as a time manager allows.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param time			time manager of this move; its node mode counts nodes as SearchResult.nodes does
+     * @return				what the search found
+     */
+    SearchResult search(Position root, PositionHistory gameHistory, TimeManager time);
+}
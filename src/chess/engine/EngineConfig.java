@@ -0,0 +1,198 @@
+package chess.engine;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * EngineConfig describes one engine setup: search limits, transposition table size and evaluation
+ * weights. It is written as a name followed by comma-separated settings, e.g.
+ * "base:depth=6,hash=32" or "heavyKnights:depth=6,knight=350,pst=80". Settings not given keep
+ * their defaults (depth 5, no node limit, 16 MB table, usual piece values, full table weight).
+ * <p>
+ * "mcts=1" selects the MonteCarloSearch instead of the alpha-beta Search; then nodes is the number
+ * of playouts, hash the memory for the tree, and "threads" and "rollout" (random playout length)
+ * apply, e.g. "mc:mcts=1,nodes=50000,hash=256,threads=4".
+ * <p>
+ * "nnue=1" evaluates with the NnueNetwork named by -Dchess.nnue (default nnue.bin) instead of the
+ * ClassicalEvaluator; the piece values and pst are then unused.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class EngineConfig {
+    /**
+     * Setting names of the piece values, indexed by PackedPosition type code.
+     */
+    private static final String[] VALUE_NAMES = {null, "pawn", "knight", "bishop", "rook", "queen", null};
+
+    /**
+     * Name of the configuration, used in reports.
+     */
+    public final String name;
+    /**
+     * Deepest iteration searched per move.
+     */
+    public final int depth;
+    /**
+     * Node limit per move, 0 for none.
+     */
+    public final long nodes;
+    /**
+     * Transposition table size in megabytes.
+     */
+    public final int hashMegabytes;
+    /**
+     * Piece values in centipawns, by PackedPosition type code.
+     */
+    private final int[] values;
+    /**
+     * Weight of the piece-square tables in percent.
+     */
+    public final int tablePercent;
+    /**
+     * Whether this is a MonteCarloSearch.
+     */
+    public final boolean mcts;
+    /**
+     * Number of threads of a MonteCarloSearch.
+     */
+    public final int threads;
+    /**
+     * Random playout length of a MonteCarloSearch, 0 to evaluate the leaves directly.
+     */
+    public final int rolloutPlies;
+    /**
+     * Network to evaluate with, or null for the ClassicalEvaluator.
+     */
+    public final NnueNetwork network;
+    /**
+     * The configuration as it was written.
+     */
+    private final String spec;
+
+    /**
+     * Constructor for EngineConfig.
+     *
+     * @param spec	configuration in the form described in the class comment
+     * @throws IllegalArgumentException	if a setting is unknown or not a number, or nnue is set and
+     *									the network cannot be loaded
+     */
+    public EngineConfig(String spec){
+        this.spec = spec;
+        int colon = spec.indexOf(':');
+        this.name = colon < 0 ? spec : spec.substring(0, colon);
+        ClassicalEvaluator defaults = new ClassicalEvaluator();
+        int depth = 5;
+        long nodes = 0;
+        int hash = 16;
+        int[] values = defaults.values.clone();
+        int table_percent = defaults.tablePercent;
+        boolean mcts = false;
+        int threads = 1;
+        int rollout_plies = 0;
+        boolean nnue = false;
+        if(colon >= 0){
+            for(String setting : spec.substring(colon + 1).split(",")){
+                String[] kv = setting.trim().split("=");
+                if(kv.length != 2){
+                    throw new IllegalArgumentException("Bad engine setting: " + setting);
+                }
+                String key = kv[0].trim();
+                long value;
+                try{
+                    value = Long.parseLong(kv[1].trim());
+                }
+                catch(NumberFormatException e){
+                    throw new IllegalArgumentException("Bad engine setting: " + setting);
+                }
+                switch(key){
+                    case "depth":
+                        depth = (int)value;
+                        break;
+                    case "nodes":
+                        nodes = value;
+                        break;
+                    case "hash":
+                        hash = (int)value;
+                        break;
+                    case "pst":
+                        table_percent = (int)value;
+                        break;
+                    case "mcts":
+                        mcts = value != 0;
+                        break;
+                    case "threads":
+                        threads = (int)value;
+                        break;
+                    case "rollout":
+                        rollout_plies = (int)value;
+                        break;
+                    case "nnue":
+                        nnue = value != 0;
+                        break;
+                    default:
+                        int type = Arrays.asList(VALUE_NAMES).indexOf(key);
+                        if(type < 0){
+                            throw new IllegalArgumentException("Unknown engine setting: " + key);
+                        }
+                        values[type] = (int)value;
+                }
+            }
+        }
+        this.depth = depth;
+        this.nodes = nodes;
+        this.hashMegabytes = hash;
+        this.values = values;
+        this.tablePercent = table_percent;
+        this.mcts = mcts;
+        this.threads = threads;
+        this.rolloutPlies = rollout_plies;
+        try{
+            this.network = nnue ? NnueNetwork.shared() : null;
+        }
+        catch(IOException e){
+            throw new IllegalArgumentException("Cannot load the NNUE network: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the evaluation of this configuration.
+     *
+     * @return  new Evaluator
+     */
+    public Evaluator newEvaluator(){
+        if(this.network != null){
+            return new NnueEvaluator(this.network);
+        }
+        return new ClassicalEvaluator(this.values, this.tablePercent);
+    }
+
+    /**
+     * Creates a search of this configuration, with its own transposition table.
+     *
+     * @return  new Search
+     */
+    public Search newSearch(){
+        return new Search(this.newEvaluator(), new TranspositionTable(this.hashMegabytes));
+    }
+
+    /**
+     * Creates the engine of this configuration: a MonteCarloSearch if mcts is set, otherwise a Search.
+     *
+     * @return  new Engine
+     */
+    public Engine newEngine(){
+        if(this.mcts){
+            return new MonteCarloSearch(this.newEvaluator(), this.hashMegabytes, this.threads, this.rolloutPlies);
+        }
+        return this.newSearch();
+    }
+
+    /**
+     * Overrides the toString method from Object.
+     *
+     * @return  the configuration as it was written
+     */
+    public String toString(){
+        return this.spec;
+    }
+}
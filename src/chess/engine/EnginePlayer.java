@@ -0,0 +1,167 @@
+package chess.engine;
+
+import chess.Position;
+import chess.PositionHistory;
+
+/**
+ * EnginePlayer plays one side of a console game with an Engine, and thinks on the opponent's time.
+ * While the human is typing, it searches the position after the reply it expects (the second move
+ * of its own last principal variation) on a background thread. When the human plays that reply
+ * (a ponder hit), the background search is simply finished and its result is played, so the work
+ * is not lost. When the human plays anything else, the background search is stopped
+ * cooperatively (Engine.stop()) and the real position is searched; the transposition table or
+ * tree the stopped search filled is still used.
+ * <p>
+ * The console thread never waits for pondering to start or stop while the human is to move: the
+ * background search is only joined when it is the engine's turn anyway. An EnginePlayer is used by
+ * one console thread; the engine itself is only ever used by one thread at a time.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class EnginePlayer {
+    /**
+     * Color the engine plays, 'w' or 'b'.
+     */
+    public final char color;
+    /**
+     * Settings of the engine, including its depth and node limits.
+     */
+    public final EngineConfig config;
+    /**
+     * The engine.
+     */
+    public final Engine engine;
+    /**
+     * Number of moves the opponent played as predicted.
+     */
+    public int ponderHits = 0;
+    /**
+     * Number of moves the opponent played differently.
+     */
+    public int ponderMisses = 0;
+
+    /**
+     * Result of the engine's last search, whose principal variation predicts the reply.
+     */
+    private SearchResult lastResult;
+    /**
+     * Thread pondering, or null if the engine is not pondering.
+     */
+    private Thread ponderThread;
+    /**
+     * Position being pondered: the position after the predicted reply.
+     */
+    private Position ponderPosition;
+    /**
+     * Result of the background search, written by the ponder thread before it ends.
+     */
+    private SearchResult ponderResult;
+
+    /**
+     * Constructor for EnginePlayer.
+     *
+     * @param config	settings of the engine
+     * @param color		color the engine plays, 'w' or 'b'
+     */
+    public EnginePlayer(EngineConfig config, char color){
+        this.config = config;
+        this.color = color;
+        this.engine = config.newEngine();
+    }
+
+    /**
+     * Chooses the engine's move, using the background search if the opponent played the predicted
+     * reply. Blocks until the move is found.
+     *
+     * @param position	current position, with the engine to move
+     * @param history	hashes of the game so far, ending with position
+     * @return			the move, or Move.NONE if there is no legal move
+     */
+    public int chooseMove(Position position, PositionHistory history){
+        SearchResult result = null;
+        if(this.ponderThread != null){
+            boolean hit = this.ponderPosition.equals(position);
+            this.finishPondering(!hit);
+            if(hit && this.ponderResult != null){
+                result = this.ponderResult;
+                this.ponderHits++;
+            }
+            else{
+                this.ponderMisses++;
+            }
+        }
+        if(result == null){
+            result = this.engine.search(position, history, this.config.depth, this.config.nodes);
+        }
+        this.lastResult = result;
+        return result.bestMove;
+    }
+
+    /**
+     * Starts pondering on the opponent's time, if the engine's last search predicted a reply that
+     * is legal in the position. Does nothing if the engine is already pondering, so it can be
+     * called again when the opponent's input was rejected.
+     *
+     * @param position	current position, with the opponent to move
+     * @param history	hashes of the game so far, ending with position; copied, since the game goes on changing it
+     */
+    public void ponder(Position position, PositionHistory history){
+        if(this.ponderThread != null || this.lastResult == null || this.lastResult.pv.length < 2){
+            return;
+        }
+        int predicted = this.lastResult.pv[1];
+        if(!position.isLegal(predicted)){
+            return;
+        }
+        Position target = position.play(predicted);
+        if(!target.hasAnyLegalMove()){
+            return;//the predicted reply ends the game; nothing to think about
+        }
+        PositionHistory target_history = new PositionHistory();
+        for(int i = 0; i < history.size; i++){
+            target_history.push(history.hashes[i]);
+        }
+        target_history.push(target.hash);
+        this.ponderPosition = target;
+        this.ponderResult = null;
+        this.ponderThread = new Thread(() -> {
+            this.ponderResult = this.engine.search(target, target_history, this.config.depth, this.config.nodes);
+        }, "ponder");
+        this.ponderThread.setDaemon(true);
+        this.ponderThread.start();
+    }
+
+    /**
+     * Stops pondering and waits for the background search to end, e.g. when the game is over.
+     */
+    public void stopPondering(){
+        if(this.ponderThread != null){
+            this.finishPondering(true);
+        }
+    }
+
+    /**
+     * Waits for the ponder thread to end. Its result (ponderResult) is visible afterwards.
+     *
+     * @param cancel	true to stop the background search, false to let it finish
+     */
+    private void finishPondering(boolean cancel){
+        boolean interrupted = false;
+        while(this.ponderThread.isAlive()){
+            if(cancel){
+                this.engine.stop();//repeated, in case the search had not started yet and reset the flag
+            }
+            try{
+                this.ponderThread.join(cancel ? 1 : 0);
+            }
+            catch(InterruptedException e){
+                interrupted = true;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        this.ponderThread = null;
+        this.ponderPosition = null;
+    }
+}
@@ -0,0 +1,46 @@
+package chess.engine;
+
+import chess.Position;
+
+/**
+ * Evaluator gives a static score to a position, for the search to use at its leaves.
+ * <p>
+ * Evaluators that update their state move by move (NnueEvaluator) also listen to the moves the
+ * Search makes, through played(), and get the ply of the position they score. Positions are
+ * immutable, so a move is never unmade: the state of a ply is just replaced by the next move made
+ * at that ply. The defaults ignore the moves, which is all other evaluators need.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public interface Evaluator {
+    /**
+     * Scores a position.
+     *
+     * @param position	position to score
+     * @return			score in centipawns from the point of view of the side to move (positive is good for it)
+     */
+    int evaluate(Position position);
+
+    /**
+     * Scores a position the Search reached at a known ply, after telling played() how it got there.
+     *
+     * @param position	position to score
+     * @param ply		distance from the root of the search
+     * @return			score in centipawns from the point of view of the side to move (positive is good for it)
+     */
+    default int evaluate(Position position, int ply){
+        return this.evaluate(position);
+    }
+
+    /**
+     * Tells the evaluator that the Search made a move. Called on the searching thread, before the
+     * child is searched.
+     *
+     * @param parent	position the move was made in
+     * @param move		the move
+     * @param child		parent.play(move)
+     * @param ply		distance of the child from the root of the search
+     */
+    default void played(Position parent, int move, Position child, int ply){
+    }
+}
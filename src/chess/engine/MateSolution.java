@@ -0,0 +1,81 @@
+package chess.engine;
+
+import chess.Move;
+
+/**
+ * MateSolution is what a MateSolver found out about a position: whether the side to move can
+ * force mate within the asked number of moves, and if so the shortest such mate and its line.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class MateSolution {
+    /**
+     * Status of a position with a forced mate.
+     */
+    public static final int PROVEN = 1;
+    /**
+     * Status of a position without a forced mate within the asked number of moves.
+     */
+    public static final int DISPROVEN = 2;
+    /**
+     * Status of a search that ran out of nodes (or was stopped) before it knew.
+     */
+    public static final int UNKNOWN = 3;
+
+    /**
+     * PROVEN, DISPROVEN or UNKNOWN.
+     */
+    public final int status;
+    /**
+     * Number of moves of the side to move until mate if PROVEN, 0 otherwise.
+     */
+    public final int mateIn;
+    /**
+     * Solution line: the mating moves and the longest defense against them, ending in mate. Empty if
+     * not PROVEN.
+     */
+    public final int[] line;
+    /**
+     * Number of positions visited.
+     */
+    public final long nodes;
+    /**
+     * Time taken in nanoseconds.
+     */
+    public final long nanos;
+
+    /**
+     * Constructor for MateSolution.
+     *
+     * @param status	PROVEN, DISPROVEN or UNKNOWN
+     * @param mateIn	moves until mate, 0 if not proven
+     * @param line		solution line
+     * @param nodes		number of positions visited
+     * @param nanos		time taken in nanoseconds
+     */
+    public MateSolution(int status, int mateIn, int[] line, long nodes, long nanos){
+        this.status = status;
+        this.mateIn = mateIn;
+        this.line = line;
+        this.nodes = nodes;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Overrides the toString method from Object.
+     *
+     * @return  status, nodes and line, e.g. "mate 2 nodes 5310 pv d1h5 g7g6 h5e5"
+     */
+    public String toString(){
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.status == PROVEN ? "mate " + this.mateIn : this.status == DISPROVEN ? "no mate" : "unknown");
+        sb.append(" nodes ").append(this.nodes);
+        if(this.line.length > 0){
+            sb.append(" pv");
+            for(int move : this.line){
+                sb.append(' ').append(Move.toString(move).replace(" ", "").toLowerCase());
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,387 @@
+package chess.engine;
+
+import chess.Position;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+/**
+ * MateSolver proves or disproves forced mates with depth-first proof-number search (df-pn). Unlike
+ * the alpha-beta Search it does not score positions: every position gets a proof number (how many
+ * leaves still have to be shown to be mates to prove it) and a disproof number (how many to refute
+ * it), and the solver always works on the position that is cheapest to settle. That finds narrow
+ * forcing lines, like the sacrifices of mate puzzles, much sooner than a full-width search does.
+ * <p>
+ * The side to move at the root is the attacker. "Mate in n" is solved for n = 1, 2, ... up to the
+ * asked number of moves, so the first mate proven is the shortest one. Proof and disproof numbers
+ * are kept in a fixed-size table, two entries per slot, keyed on the position hash and the plies
+ * left; when a slot is full the entry that took less work to compute is replaced, so memory stays
+ * bounded however hard the position is. Repetitions and the 50-move rule are ignored: a mate within
+ * the move limit never needs them.
+ * <p>
+ * A MateSolver is used by one thread at a time; stop() may be called from any thread.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class MateSolver {
+    /**
+     * Proof or disproof number meaning infinity: the position is settled the other way.
+     */
+    static final int INFINITY = 100_000_000;
+    /**
+     * Bytes one table entry takes.
+     */
+    public static final int ENTRY_BYTES = 21;
+
+    private final long[] keys;
+    /**
+     * Proof number in the upper and disproof number in the lower 32 bits.
+     */
+    private final long[] numbers;
+    /**
+     * Nodes spent on the entry, the replacement priority.
+     */
+    private final int[] work;
+    /**
+     * Plies to mate of a proven entry.
+     */
+    private final byte[] distance;
+    private final int mask;
+
+    private long maxNodes;
+    private long nodes;
+    private boolean aborted;
+    private volatile boolean stopRequested;
+
+    /**
+     * Constructor for MateSolver.
+     *
+     * @param megabytes	size of the table; rounded down to a power of two number of entries
+     */
+    public MateSolver(int megabytes){
+        long entries = Math.max(1024, ((long)megabytes << 20) / ENTRY_BYTES);
+        int size = Integer.highestOneBit((int)Math.min(entries, 1 << 28));
+        this.keys = new long[size];
+        this.numbers = new long[size];
+        this.work = new int[size];
+        this.distance = new byte[size];
+        this.mask = size - 2;//slots of two entries
+    }
+
+    /**
+     * Forgets all entries.
+     */
+    public void clear(){
+        Arrays.fill(this.keys, 0);
+        Arrays.fill(this.numbers, 0);
+        Arrays.fill(this.work, 0);
+        Arrays.fill(this.distance, (byte)0);
+    }
+
+    /**
+     * Asks a running solve() to stop as soon as possible; it then reports UNKNOWN unless it has
+     * already found the mate.
+     */
+    public void stop(){
+        this.stopRequested = true;
+    }
+
+    /**
+     * Looks for a forced mate of the side to move.
+     *
+     * @param root		position to solve
+     * @param maxMoves	largest number of moves of the side to move the mate may take
+     * @param maxNodes	number of nodes after which to give up, 0 for no limit
+     * @return			the shortest mate within maxMoves, or why there is none
+     */
+    public MateSolution solve(Position root, int maxMoves, long maxNodes){
+        long start = System.nanoTime();
+        this.maxNodes = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        this.nodes = 0;
+        this.aborted = false;
+        this.stopRequested = false;
+        int limit = Math.min(maxMoves, (Byte.MAX_VALUE + 1) / 2);
+        for(int moves = 1; moves <= limit; moves++){
+            int plies = 2 * moves - 1;
+            this.prove(root, plies, true);
+            if(this.aborted){
+                break;
+            }
+            long entry = this.probe(key(root, plies));
+            if(proofNumber(entry) == 0){
+                int[] line = this.line(root, plies);
+                return new MateSolution(MateSolution.PROVEN, moves, line, this.nodes, System.nanoTime() - start);
+            }
+        }
+        int status = this.aborted ? MateSolution.UNKNOWN : MateSolution.DISPROVEN;
+        return new MateSolution(status, 0, new int[0], this.nodes, System.nanoTime() - start);
+    }
+
+    /**
+     * Searches a position until it is proven or disproven, or the search is aborted.
+     *
+     * @param position	the position
+     * @param plies		plies left until the mate has to be delivered
+     * @param attacker	whether the attacker is to move
+     */
+    private void prove(Position position, int plies, boolean attacker){
+        this.mid(position, plies, attacker, INFINITY, INFINITY);
+    }
+
+    /**
+     * Multiple iterative deepening: searches a position until its proof number reaches thresholdProof
+     * or its disproof number reaches thresholdDisproof, always descending into the child that is
+     * cheapest to settle. Stores the numbers of the position in the table before returning.
+     *
+     * @param position			the position
+     * @param plies				plies left until the mate has to be delivered
+     * @param attacker			whether the attacker is to move (an OR node) or the defender (an AND node)
+     * @param thresholdProof	proof number at which to return
+     * @param thresholdDisproof	disproof number at which to return
+     */
+    private void mid(Position position, int plies, boolean attacker, int thresholdProof, int thresholdDisproof){
+        long key = key(position, plies);
+        long start_nodes = this.nodes;
+        if(++this.nodes >= this.maxNodes || ((this.nodes & 1023) == 0 && this.stopRequested)){
+            this.aborted = true;
+            return;
+        }
+        int[] moves = new int[Position.MAX_MOVES];
+        int n = position.generateMoves(moves);
+        if(n == 0){
+            boolean mated = position.isInCheck();
+            //a mated defender is a proof, a mated attacker or a stalemate a disproof
+            this.store(key, mated && !attacker ? 0 : INFINITY, mated && !attacker ? INFINITY : 0, 0, 1);
+            return;
+        }
+        if(plies == 0){
+            this.store(key, INFINITY, 0, 0, 1);
+            return;
+        }
+        Position[] children = new Position[n];
+        long[] child_keys = new long[n];
+        for(int i = 0; i < n; i++){
+            children[i] = position.play(moves[i]);
+            child_keys[i] = key(children[i], plies - 1);
+        }
+        while(true){
+            //the numbers of this node from those of the children, remembering the best two
+            int proof = attacker ? INFINITY : 0, disproof = attacker ? 0 : INFINITY;
+            int best = -1, best_number = INFINITY, second_number = INFINITY, best_distance = attacker ? Integer.MAX_VALUE : 0;
+            for(int i = 0; i < n; i++){
+                long entry = this.probe(child_keys[i]);
+                int child_proof = proofNumber(entry), child_disproof = disproofNumber(entry);
+                int number = attacker ? child_proof : child_disproof;
+                if(attacker){
+                    proof = Math.min(proof, child_proof);
+                    disproof = Math.min(INFINITY, disproof + child_disproof);
+                }
+                else{
+                    proof = Math.min(INFINITY, proof + child_proof);
+                    disproof = Math.min(disproof, child_disproof);
+                }
+                if(child_proof == 0){
+                    int d = this.distance(child_keys[i]);
+                    best_distance = attacker ? Math.min(best_distance, d) : Math.max(best_distance, d);
+                }
+                if(number < best_number){
+                    second_number = best_number;
+                    best_number = number;
+                    best = i;
+                }
+                else if(number < second_number){
+                    second_number = number;
+                }
+            }
+            int spent = (int)Math.min(Integer.MAX_VALUE, this.nodes - start_nodes);
+            this.store(key, proof, disproof, proof == 0 ? best_distance + 1 : 0, spent);
+            if(proof >= thresholdProof || disproof >= thresholdDisproof || this.aborted){
+                return;
+            }
+            long entry = this.probe(child_keys[best]);
+            int child_proof = proofNumber(entry), child_disproof = disproofNumber(entry);
+            //the 1 + epsilon trick: a little more than the second best number, so that the search
+            //does not keep switching between two nearly equal children
+            int next = (int)Math.min(INFINITY, second_number + 1L + second_number / 4);
+            if(attacker){
+                this.mid(children[best], plies - 1, false, Math.min(thresholdProof, next),
+                    (int)Math.min(INFINITY, (long)thresholdDisproof - disproof + child_disproof));
+            }
+            else{
+                this.mid(children[best], plies - 1, true, (int)Math.min(INFINITY, (long)thresholdProof - proof + child_proof),
+                    Math.min(thresholdDisproof, next));
+            }
+        }
+    }
+
+    /**
+     * Builds the solution line of a proven position: the quickest mating move of the attacker and
+     * the longest defense, until mate. Children whose entries were replaced are proven again.
+     *
+     * @param root	proven position, attacker to move
+     * @param plies	plies left until the mate has to be delivered
+     * @return		the moves of the line; cut short if the solver is aborted meanwhile
+     */
+    private int[] line(Position root, int plies){
+        int[] rl = new int[plies];
+        int length = 0;
+        int[] moves = new int[Position.MAX_MOVES];
+        Position position = root;
+        boolean attacker = true;
+        for(; plies > 0; plies--){
+            int n = position.generateMoves(moves);
+            int best = -1, best_distance = 0;
+            //the attacker needs one proven move, so children are proven again only if none is left;
+            //every defense has to be known to pick the longest
+            for(int pass = 0; pass < 2 && best < 0; pass++){
+                for(int i = 0; i < n; i++){
+                    Position child = position.play(moves[i]);
+                    long key = key(child, plies - 1);
+                    long entry = this.probe(key);
+                    if((pass == 1 || !attacker) && proofNumber(entry) != 0 && disproofNumber(entry) != 0){
+                        this.prove(child, plies - 1, !attacker);
+                        if(this.aborted){
+                            return Arrays.copyOf(rl, length);
+                        }
+                        entry = this.probe(key);
+                    }
+                    if(proofNumber(entry) != 0){
+                        continue;
+                    }
+                    int d = this.distance(key);
+                    if(best < 0 || (attacker ? d < best_distance : d > best_distance)){
+                        best = i;
+                        best_distance = d;
+                    }
+                }
+                if(!attacker){
+                    break;
+                }
+            }
+            if(best < 0){
+                break;//mate
+            }
+            rl[length++] = moves[best];
+            position = position.play(moves[best]);
+            attacker = !attacker;
+        }
+        return Arrays.copyOf(rl, length);
+    }
+
+    /**
+     * Returns the table key of a position searched with a number of plies left. The same position
+     * with other plies left is another entry, since it may be a mate with more plies and not with fewer.
+     *
+     * @param position	the position
+     * @param plies		plies left
+     * @return			the key
+     */
+    private static long key(Position position, int plies){
+        return position.hash + (plies + 1) * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * Looks up an entry.
+     *
+     * @param key	key of the entry
+     * @return		its proof and disproof numbers, or 1 and 1 for a position that was never searched
+     */
+    private long probe(long key){
+        int index = (int)key & this.mask;
+        if(this.keys[index] == key){
+            return this.numbers[index];
+        }
+        if(this.keys[index + 1] == key){
+            return this.numbers[index + 1];
+        }
+        return 1L << 32 | 1;
+    }
+
+    /**
+     * Returns the plies to mate of a proven entry.
+     *
+     * @param key	key of the entry
+     * @return		plies to mate, or 0 if the entry is gone
+     */
+    private int distance(long key){
+        int index = (int)key & this.mask;
+        if(this.keys[index] == key){
+            return this.distance[index];
+        }
+        if(this.keys[index + 1] == key){
+            return this.distance[index + 1];
+        }
+        return 0;
+    }
+
+    /**
+     * Stores the numbers of a position. An entry of the same position is updated; otherwise the
+     * entry of the slot that took less work is replaced.
+     *
+     * @param key		key of the entry
+     * @param proof		proof number
+     * @param disproof	disproof number
+     * @param distance	plies to mate if proven
+     * @param work		nodes spent on the position
+     */
+    private void store(long key, int proof, int disproof, int distance, int work){
+        int index = (int)key & this.mask;
+        if(this.keys[index + 1] == key || (this.keys[index] != key && this.work[index + 1] < this.work[index])){
+            index++;
+        }
+        this.keys[index] = key;
+        this.numbers[index] = (long)proof << 32 | disproof;
+        this.work[index] = work;
+        this.distance[index] = (byte)distance;
+    }
+
+    private static int proofNumber(long entry){
+        return (int)(entry >>> 32);
+    }
+
+    private static int disproofNumber(long entry){
+        return (int)entry;
+    }
+
+    /**
+     * Solves the positions read from standard input, one FEN per line, and prints one result line
+     * for each.
+     *
+     * @param args	options: moves=N (default 5), nodes=N (default 10000000, 0 for no limit) and hash=MB (default 64)
+     * @throws IOException	if standard input cannot be read
+     */
+    public static void main(String[] args) throws IOException{
+        int moves = 5, megabytes = 64;
+        long nodes = 10_000_000;
+        for(String arg : args){
+            String[] kv = arg.split("=", 2);
+            switch(kv[0]){
+                case "moves":
+                    moves = Integer.parseInt(kv[1]);
+                    break;
+                case "nodes":
+                    nodes = Long.parseLong(kv[1]);
+                    break;
+                case "hash":
+                    megabytes = Integer.parseInt(kv[1]);
+                    break;
+                default:
+                    System.err.println("Usage: MateSolver [moves=N] [nodes=N] [hash=MB] < positions.fen");
+                    System.exit(2);
+            }
+        }
+        MateSolver solver = new MateSolver(megabytes);
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while((line = in.readLine()) != null){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            MateSolution solution = solver.solve(Position.fromFen(line), moves, nodes);
+            System.out.println(line + " ; " + solution + " time " + solution.nanos / 1_000_000 + " ms");
+        }
+    }
+}
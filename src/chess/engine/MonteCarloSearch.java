@@ -0,0 +1,661 @@
+package chess.engine;
+
+import chess.Move;
+import chess.PackedPosition;
+import chess.Position;
+import chess.PositionHistory;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * MonteCarloSearch finds the best move with Monte Carlo tree search: every playout walks down the
+ * tree choosing children by PUCT (average value plus an exploration bonus weighted by the move's
+ * prior), adds the children of the position it stops at, scores that position and adds the score
+ * to every node on the way back up. The move played most often from the root is the answer.
+ * Positions are scored with the Evaluator, or with a short random playout followed by the
+ * Evaluator when rolloutPlies is set. Priors come from a simple hand-made policy that favors
+ * captures of valuable pieces and queen promotions.
+ * <p>
+ * Nodes are not objects: the tree is a pool of parallel primitive arrays indexed by node number,
+ * and the children of a node are a contiguous range of the pool. A node holds its move, not its
+ * position; positions are made again on the way down (copy-on-make), so millions of nodes fit in
+ * little memory and the garbage collector never sees them. There are two pools of the same size:
+ * when the next search starts from a position one or two plies below the current root (our move
+ * and the reply), the subtree under it is copied into the other pool and its statistics are kept.
+ * <p>
+ * Several threads can walk the same tree. Counters are updated atomically through VarHandles, a
+ * node is expanded by the one thread that claims it, and every node a thread walks through gets a
+ * virtual loss until its playout is backed up, so that the other threads spread over other lines.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class MonteCarloSearch implements Engine {
+    /**
+     * Number of playouts per search when no node limit is given.
+     */
+    public static final long DEFAULT_PLAYOUTS = 20_000;
+    /**
+     * Memory used per node, over both pools, in bytes.
+     */
+    public static final int NODE_BYTES = 64;
+
+    /**
+     * Node states. MATED and DRAWN are final positions (the side to move is mated, or stalemated).
+     */
+    private static final int UNEXPANDED = 0, EXPANDING = 1, EXPANDED = 2, MATED = 3, DRAWN = 4;
+    /**
+     * Weight of the exploration term of PUCT.
+     */
+    private static final double EXPLORATION = 1.5;
+    /**
+     * Value subtracted from the parent's value for children that were never visited.
+     */
+    private static final double FIRST_PLAY_REDUCTION = 0.2;
+    /**
+     * Fixed-point scale of values: a value in [-1, 1] is stored as value * SCALE.
+     */
+    private static final double SCALE = 1 << 16;
+    /**
+     * Value of each piece type for the priors.
+     */
+    private static final int[] PRIOR_VALUES = {0, 1, 3, 3, 5, 9, 20};
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    /**
+     * Evaluation used at the leaves.
+     */
+    public final Evaluator evaluator;
+    /**
+     * Number of nodes each pool holds.
+     */
+    public final int capacity;
+    /**
+     * Number of threads walking the tree.
+     */
+    public final int threads;
+    /**
+     * Length of the random playout from each leaf before it is evaluated, 0 to evaluate the leaf itself.
+     */
+    public final int rolloutPlies;
+
+    /**
+     * Pool holding the tree; node 0 is the root.
+     */
+    private Tree tree;
+    /**
+     * Pool the tree is copied into when it is reused.
+     */
+    private Tree spare;
+    /**
+     * Number of nodes used in tree; may grow past capacity when the pool runs out.
+     */
+    private final AtomicInteger used = new AtomicInteger();
+    /**
+     * Position of the root node, or null if there is no tree.
+     */
+    private Position rootPosition;
+    /**
+     * Hashes of the game up to and including the root.
+     */
+    private final PositionHistory rootHistory = new PositionHistory();
+    private final Worker[] workers;
+    /**
+     * Root visit count when the current search started, and at which it stops.
+     */
+    private long startVisits, targetVisits;
+    /**
+     * Time manager of the current search, or null if it has none.
+     */
+    private TimeManager time;
+    private volatile boolean stopRequested;
+    /**
+     * Set when the pool has no room for more children; from then on the tree stops growing and
+     * playouts only refine the values of the nodes it has.
+     */
+    private volatile boolean poolFull;
+
+    /**
+     * Constructor for MonteCarloSearch.
+     *
+     * @param evaluator		evaluation used at the leaves
+     * @param megabytes		memory for the tree (both pools) in megabytes
+     * @param threads		number of threads walking the tree
+     * @param rolloutPlies	length of the random playout from each leaf, 0 for none
+     */
+    public MonteCarloSearch(Evaluator evaluator, int megabytes, int threads, int rolloutPlies){
+        this.evaluator = evaluator;
+        this.capacity = (int)Math.min(Integer.MAX_VALUE - 8, Math.max(1024, (long)megabytes * 1024 * 1024 / NODE_BYTES));
+        this.threads = Math.max(1, threads);
+        this.rolloutPlies = rolloutPlies;
+        this.tree = new Tree(this.capacity);
+        this.spare = new Tree(this.capacity);
+        this.workers = new Worker[this.threads];
+        for(int i = 0; i < this.threads; i++){
+            this.workers[i] = new Worker(i);
+        }
+    }
+
+    /**
+     * Forgets the tree.
+     */
+    public void newGame(){
+        this.rootPosition = null;
+    }
+
+    /**
+     * Asks a running search to stop after the playouts in progress. Can be called from any thread.
+     */
+    public void stop(){
+        this.stopRequested = true;
+    }
+
+    /**
+     * Searches a position. If it is one or two plies below the root of the previous search, the
+     * part of the tree under it is reused.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param maxDepth		ignored; a Monte Carlo search has no depth limit
+     * @param maxNodes		number of playouts, 0 for DEFAULT_PLAYOUTS
+     * @return				most played move, its score and the most played line; depth is the deepest playout
+     */
+    public SearchResult search(Position root, PositionHistory gameHistory, int maxDepth, long maxNodes){
+        return this.search(root, gameHistory, maxNodes > 0 ? maxNodes : DEFAULT_PLAYOUTS, null);
+    }
+
+    /**
+     * Searches a position for as long as a time manager allows. Nodes are playouts. Every 64
+     * playouts the hard limit is checked, and every 512 playouts count as an iteration for the soft
+     * limit, with the most played root move as its best move.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param time			time manager of this move
+     * @return				most played move, its score and the most played line; depth is the deepest playout
+     */
+    public SearchResult search(Position root, PositionHistory gameHistory, TimeManager time){
+        return this.search(root, gameHistory, Integer.MAX_VALUE, time);
+    }
+
+    /**
+     * Searches a position.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param playouts		number of playouts
+     * @param time			time manager of this move, or null
+     * @return				most played move, its score and the most played line; depth is the deepest playout
+     */
+    private SearchResult search(Position root, PositionHistory gameHistory, long playouts, TimeManager time){
+        long start = System.nanoTime();
+        if(time != null){
+            time.start();
+        }
+        this.time = time;
+        this.stopRequested = false;
+        this.poolFull = false;
+        if(!root.hasAnyLegalMove()){
+            this.rootPosition = null;
+            return new SearchResult(Move.NONE, root.isInCheck() ? -Search.MATE : 0, 0, 0, System.nanoTime() - start, new int[0]);
+        }
+        this.rootHistory.clear();
+        if(gameHistory != null){
+            for(int i = 0; i < gameHistory.size; i++){
+                this.rootHistory.push(gameHistory.hashes[i]);
+            }
+        }
+        if(this.rootHistory.size == 0 || this.rootHistory.current() != root.hash){
+            this.rootHistory.push(root.hash);
+        }
+
+        int reused = this.rootPosition == null ? -1 : this.find(root);
+        if(reused < 0){
+            this.tree.clear(0);
+            this.used.set(1);
+        }
+        else if(reused > 0){
+            this.reroot(reused);
+        }
+        this.rootPosition = root;
+        this.startVisits = this.tree.visits[0];
+        this.targetVisits = this.startVisits + playouts;
+
+        Thread[] helpers = new Thread[this.threads - 1];
+        for(int i = 0; i < helpers.length; i++){
+            helpers[i] = new Thread(this.workers[i + 1], "mcts-" + (i + 1));
+            helpers[i].start();
+        }
+        this.workers[0].run();
+        int depth = this.workers[0].maxDepth;
+        boolean interrupted = false;
+        for(int i = 0; i < helpers.length; i++){
+            try{
+                helpers[i].join();
+            }
+            catch(InterruptedException e){
+                this.stopRequested = true;
+                interrupted = true;//restored after the joins, or the next join would throw at once
+                i--;//the helper stops soon; wait for it so that it no longer touches the tree
+                continue;
+            }
+            depth = Math.max(depth, this.workers[i + 1].maxDepth);
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        return this.result(depth, this.tree.visits[0] - this.startVisits, System.nanoTime() - start);
+    }
+
+    /**
+     * Finds the node of a position among the nodes one and two plies below the root.
+     *
+     * @param position	position to look for
+     * @return			node index, 0 if it is the root itself, or -1 if it is not in the tree
+     */
+    private int find(Position position){
+        Tree t = this.tree;
+        if(this.rootPosition.equals(position)){
+            return 0;
+        }
+        if(t.state[0] != EXPANDED){
+            return -1;
+        }
+        for(int c = t.firstChild[0]; c < t.firstChild[0] + t.childCount[0]; c++){
+            Position after = this.rootPosition.play(t.moves[c]);
+            if(after.equals(position)){
+                return c;
+            }
+            if(t.state[c] == EXPANDED){
+                for(int g = t.firstChild[c]; g < t.firstChild[c] + t.childCount[c]; g++){
+                    if(after.play(t.moves[g]).equals(position)){
+                        return g;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Copies the subtree under a node into the spare pool, breadth first, and makes it the tree,
+     * with that node as the root.
+     *
+     * @param node	index of the new root in the current pool
+     */
+    private void reroot(int node){
+        Tree from = this.tree;
+        Tree to = this.spare;
+        from.copyTo(node, to, 0);
+        int next = 1;
+        for(int k = 0; k < next; k++){
+            int old = to.firstChild[k];//copyTo() left the node's index in the old pool here
+            if(to.state[k] != EXPANDED){
+                continue;
+            }
+            int first = from.firstChild[old];
+            int count = from.childCount[old];
+            for(int j = 0; j < count; j++){
+                from.copyTo(first + j, to, next + j);
+            }
+            to.firstChild[k] = next;
+            to.childCount[k] = count;
+            next += count;
+        }
+        this.tree = to;
+        this.spare = from;
+        this.used.set(next);
+    }
+
+    /**
+     * Builds the result of a search from the tree.
+     *
+     * @param depth		deepest playout
+     * @param playouts	number of playouts of this search
+     * @param nanos		time taken in nanoseconds
+     * @return			the result
+     */
+    private SearchResult result(int depth, long playouts, long nanos){
+        Tree t = this.tree;
+        int[] line = new int[Search.MAX_PLY];
+        int length = 0;
+        int node = 0;
+        while(length < Search.MAX_PLY && t.state[node] == EXPANDED){
+            int best = mostVisited(t, node);
+            if(t.visits[best] == 0){
+                break;
+            }
+            line[length++] = t.moves[best];
+            node = best;
+        }
+        int best = mostVisited(t, 0);
+        int score;
+        if(t.state[best] == MATED){
+            score = Search.MATE - 1;
+        }
+        else{
+            double q = t.visits[best] == 0 ? 0 : t.values[best] / (SCALE * t.visits[best]);
+            score = toCentipawns(q);
+        }
+        int[] pv = new int[Math.max(1, length)];
+        System.arraycopy(line, 0, pv, 0, length);
+        if(length == 0){
+            pv[0] = t.moves[best];
+        }
+        return new SearchResult(pv[0], score, depth, playouts, nanos, pv);
+    }
+
+    /**
+     * Returns the most visited child of an expanded node, preferring the better value on ties.
+     *
+     * @param t		the tree
+     * @param node	index of the node
+     * @return		index of the child
+     */
+    private static int mostVisited(Tree t, int node){
+        int first = t.firstChild[node];
+        int best = first;
+        for(int c = first + 1; c < first + t.childCount[node]; c++){
+            if(t.visits[c] > t.visits[best] || (t.visits[c] == t.visits[best] && t.values[c] > t.values[best])){
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Converts a score in centipawns to a value in [-1, 1] (the expected result on a logistic curve).
+     *
+     * @param centipawns	score in centipawns
+     * @return				value
+     */
+    private static double toValue(int centipawns){
+        return 2 / (1 + Math.pow(10, -centipawns / 400.0)) - 1;
+    }
+
+    /**
+     * Converts a value in [-1, 1] back to centipawns, the inverse of toValue().
+     *
+     * @param value	value
+     * @return		score in centipawns, kept below the mate scores
+     */
+    private static int toCentipawns(double value){
+        double q = Math.max(-0.999, Math.min(0.999, value));
+        return (int)Math.round(400 * Math.log10((1 + q) / (1 - q)));
+    }
+
+    /**
+     * The tree: one entry per node in each array. Values are sums from the point of view of the
+     * side that made the node's move.
+     */
+    private static final class Tree {
+        final int[] moves;
+        final int[] firstChild;
+        final int[] childCount;
+        final float[] priors;
+        final int[] visits;
+        final long[] values;
+        final int[] state;
+
+        Tree(int capacity){
+            this.moves = new int[capacity];
+            this.firstChild = new int[capacity];
+            this.childCount = new int[capacity];
+            this.priors = new float[capacity];
+            this.visits = new int[capacity];
+            this.values = new long[capacity];
+            this.state = new int[capacity];
+        }
+
+        /**
+         * Resets a node to an unvisited leaf.
+         *
+         * @param node	index of the node
+         */
+        void clear(int node){
+            this.moves[node] = Move.NONE;
+            this.childCount[node] = 0;
+            this.priors[node] = 0;
+            this.visits[node] = 0;
+            this.values[node] = 0;
+            this.state[node] = UNEXPANDED;
+        }
+
+        /**
+         * Copies a node into another pool. Its firstChild is set to the node's index in this pool,
+         * for reroot() to follow.
+         *
+         * @param node	index of the node in this pool
+         * @param to	target pool
+         * @param index	index of the node in the target pool
+         */
+        void copyTo(int node, Tree to, int index){
+            to.moves[index] = this.moves[node];
+            to.firstChild[index] = node;
+            to.childCount[index] = 0;
+            to.priors[index] = this.priors[node];
+            to.visits[index] = this.visits[node];
+            to.values[index] = this.values[node];
+            to.state[index] = this.state[node];
+        }
+    }
+
+    /**
+     * One thread's part of a search: its own path, move buffer, history and random numbers.
+     */
+    private final class Worker implements Runnable {
+        private final int[] path = new int[Search.MAX_PLY + 1];
+        private final int[] buffer = new int[Position.MAX_MOVES];
+        private final double[] logits = new double[Position.MAX_MOVES];
+        private final PositionHistory history = new PositionHistory();
+        private final SplittableRandom random;
+        /**
+         * Deepest playout of the current search.
+         */
+        int maxDepth;
+
+        Worker(int index){
+            this.random = new SplittableRandom(index);
+        }
+
+        /**
+         * Runs playouts until the search is stopped or has enough playouts. The first worker also
+         * checks the time manager, if there is one.
+         */
+        public void run(){
+            MonteCarloSearch search = MonteCarloSearch.this;
+            Tree t = search.tree;
+            this.maxDepth = 0;
+            this.history.clear();
+            for(int i = 0; i < search.rootHistory.size; i++){
+                this.history.push(search.rootHistory.hashes[i]);
+            }
+            boolean timed = search.time != null && this == search.workers[0];
+            long done = 0;
+            while(!search.stopRequested && (int)INTS.getOpaque(t.visits, 0) < search.targetVisits){
+                this.maxDepth = Math.max(this.maxDepth, this.playout(t));
+                if(timed && (++done & 63) == 0){
+                    long playouts = (int)INTS.getOpaque(t.visits, 0) - search.startVisits;
+                    if(search.time.hardLimitReached(playouts)
+                        || ((done & 511) == 0 && !search.time.startNextIteration(t.moves[mostVisited(t, 0)], playouts))){
+                        search.stopRequested = true;//stops the other workers too
+                    }
+                }
+            }
+        }
+
+        /**
+         * Walks from the root to a leaf, expands and scores it, and backs the score up.
+         *
+         * @param t	the tree
+         * @return	depth of the leaf
+         */
+        private int playout(Tree t){
+            Position position = MonteCarloSearch.this.rootPosition;
+            int node = 0;
+            int depth = 0;
+            double value;//for the side to move at the leaf
+            while(true){
+                if(depth > 0 && (position.halfmoveClock >= 100 || this.history.isRepetition(position.halfmoveClock))){
+                    value = 0;
+                    break;
+                }
+                int state = (int)INTS.getAcquire(t.state, node);
+                boolean leaf = state != EXPANDED || depth >= Search.MAX_PLY;
+                if(state == UNEXPANDED && depth < Search.MAX_PLY && !MonteCarloSearch.this.poolFull && INTS.compareAndSet(t.state, node, UNEXPANDED, EXPANDING)){
+                    state = this.expand(t, node, position);
+                }
+                if(state == MATED){
+                    value = -1;
+                    break;
+                }
+                if(state == DRAWN){
+                    value = 0;
+                    break;
+                }
+                if(leaf){
+                    value = this.evaluate(position);//just expanded, being expanded by another thread, or no room left
+                    break;
+                }
+                int child = this.select(t, node);
+                INTS.getAndAdd(t.visits, child, 1);//virtual loss: a visit that lost, until backed up
+                LONGS.getAndAdd(t.values, child, -(long)SCALE);
+                position = position.play(t.moves[child]);
+                this.history.push(position.hash);
+                this.path[++depth] = child;
+                node = child;
+            }
+            double q = -value;
+            for(int i = depth; i >= 1; i--){
+                LONGS.getAndAdd(t.values, this.path[i], Math.round((q + 1) * SCALE));//take back the virtual loss; the visit stays
+                q = -q;
+                this.history.pop();
+            }
+            LONGS.getAndAdd(t.values, 0, Math.round(q * SCALE));
+            INTS.getAndAdd(t.visits, 0, 1);
+            return depth;
+        }
+
+        /**
+         * Chooses the child of an expanded node with the highest PUCT score.
+         *
+         * @param t		the tree
+         * @param node	index of the node
+         * @return		index of the child
+         */
+        private int select(Tree t, int node){
+            int first = t.firstChild[node];
+            int end = first + t.childCount[node];
+            int parent_visits = (int)INTS.getOpaque(t.visits, node);
+            double parent_value = parent_visits == 0 ? 0 : -(long)LONGS.getOpaque(t.values, node) / (SCALE * parent_visits);
+            double first_play = parent_value - FIRST_PLAY_REDUCTION;
+            double exploration = EXPLORATION * Math.sqrt(Math.max(1, parent_visits));
+            int best = first;
+            double best_score = Double.NEGATIVE_INFINITY;
+            for(int c = first; c < end; c++){
+                int visits = (int)INTS.getOpaque(t.visits, c);
+                double q = visits == 0 ? first_play : (long)LONGS.getOpaque(t.values, c) / (SCALE * visits);
+                double score = q + exploration * t.priors[c] / (1 + visits);
+                if(score > best_score){
+                    best_score = score;
+                    best = c;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Adds the children of a node that this thread has claimed (state EXPANDING).
+         *
+         * @param t			the tree
+         * @param node		index of the node
+         * @param position	position of the node
+         * @return			new state of the node
+         */
+        private int expand(Tree t, int node, Position position){
+            int n = position.generateMoves(this.buffer);
+            if(n == 0){
+                int state = position.isInCheck() ? MATED : DRAWN;
+                INTS.setRelease(t.state, node, state);
+                return state;
+            }
+            int first = MonteCarloSearch.this.used.getAndAdd(n);
+            if(first + n > t.moves.length){
+                MonteCarloSearch.this.poolFull = true;
+                INTS.setRelease(t.state, node, UNEXPANDED);
+                return UNEXPANDED;
+            }
+            double max = Double.NEGATIVE_INFINITY;
+            for(int i = 0; i < n; i++){
+                this.logits[i] = logit(position, this.buffer[i]);
+                max = Math.max(max, this.logits[i]);
+            }
+            double sum = 0;
+            for(int i = 0; i < n; i++){
+                this.logits[i] = Math.exp(this.logits[i] - max);
+                sum += this.logits[i];
+            }
+            for(int i = 0; i < n; i++){
+                t.clear(first + i);
+                t.moves[first + i] = this.buffer[i];
+                t.priors[first + i] = (float)(this.logits[i] / sum);
+            }
+            t.firstChild[node] = first;
+            t.childCount[node] = n;
+            INTS.setRelease(t.state, node, EXPANDED);//publishes the children
+            return EXPANDED;
+        }
+
+        /**
+         * Scores a leaf, with a random playout first if rolloutPlies is set.
+         *
+         * @param position	position of the leaf
+         * @return			value for the side to move
+         */
+        private double evaluate(Position position){
+            MonteCarloSearch search = MonteCarloSearch.this;
+            double sign = 1;
+            for(int i = 0; i < search.rolloutPlies; i++){
+                int n = position.generateMoves(this.buffer);
+                if(n == 0){
+                    return position.isInCheck() ? -sign : 0;
+                }
+                if(position.halfmoveClock >= 100){
+                    return 0;
+                }
+                position = position.play(this.buffer[this.random.nextInt(n)]);
+                sign = -sign;
+            }
+            return sign * toValue(search.evaluator.evaluate(position));
+        }
+    }
+
+    /**
+     * Returns the unnormalized log-prior of a move: captures by the value of the victim less a
+     * little of the attacker, promotions to a queen up and underpromotions down.
+     *
+     * @param position	position the move is made in
+     * @param move		the move
+     * @return			log-prior
+     */
+    private static double logit(Position position, int move){
+        int to = Move.to(move);
+        int victim = position.pieceAt(to) & 7;
+        int attacker = position.pieceAt(Move.from(move)) & 7;
+        if(attacker == PackedPosition.PAWN && to == position.enPassantSquare){
+            victim = PackedPosition.PAWN;
+        }
+        double rl = 0;
+        if(victim != 0){
+            rl += 0.5 + 0.4 * PRIOR_VALUES[victim] - 0.05 * PRIOR_VALUES[attacker];
+        }
+        int promotion = Move.promotion(move);
+        if(promotion != 0){
+            rl += promotion == PackedPosition.QUEEN ? 2 : -1;
+        }
+        return rl;
+    }
+}
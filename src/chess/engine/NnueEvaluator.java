@@ -0,0 +1,228 @@
+package chess.engine;
+
+import chess.Move;
+import chess.PackedPosition;
+import chess.Position;
+
+/**
+ * NnueEvaluator scores positions with an NnueNetwork, keeping the first-layer accumulators of the
+ * positions along the current search path so that each one costs an update of a few weight rows
+ * rather than a sum over every piece.
+ * <p>
+ * Every thread has a stack of accumulators, one slot per ply. played() records in the child's slot
+ * which pieces the move took off and put on the board: the moving piece, a captured piece (also en
+ * passant), the Rook of a castling move, and for a promotion the new piece instead of the Pawn.
+ * Nothing is computed then, since the search makes many moves it never evaluates below (cutoffs,
+ * the moves of interior nodes); evaluate() walks down the stack to the nearest slot whose
+ * accumulators are up to date and applies the recorded changes from there up. Positions are
+ * immutable, so there is no unmake: the next move made at a ply simply replaces the slot. A slot is
+ * trusted only if it holds the very Position object the search passed, so a stale slot (another
+ * search on the same thread, a new root) is refreshed from scratch, never misused.
+ * <p>
+ * evaluate(Position) without a ply (the MonteCarloSearch leaves) always refreshes.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class NnueEvaluator implements Evaluator {
+    /**
+     * The network.
+     */
+    public final NnueNetwork network;
+    /**
+     * Accumulator stack of each thread using this evaluator.
+     */
+    private final ThreadLocal<Slot[]> stacks;
+
+    /**
+     * Constructor for NnueEvaluator.
+     *
+     * @param network	the network
+     */
+    public NnueEvaluator(NnueNetwork network){
+        this.network = network;
+        this.stacks = ThreadLocal.withInitial(() -> {
+            Slot[] stack = new Slot[Search.MAX_PLY + 2];
+            for(int i = 0; i < stack.length; i++){
+                stack[i] = new Slot(network.hidden);
+            }
+            return stack;
+        });
+    }
+
+    public int evaluate(Position position){
+        Slot scratch = this.stacks.get()[Search.MAX_PLY + 1];
+        scratch.position = null;
+        scratch.computed = false;
+        this.network.refresh(position, 0, scratch.white);
+        this.network.refresh(position, PackedPosition.BLACK, scratch.black);
+        return this.output(position, scratch);
+    }
+
+    public int evaluate(Position position, int ply){
+        Slot[] stack = this.stacks.get();
+        if(ply > Search.MAX_PLY){
+            return this.evaluate(position);
+        }
+        Slot slot = stack[ply];
+        if(slot.position != position){
+            slot.position = position;
+            slot.parent = null;
+            slot.computed = false;
+        }
+        if(!slot.computed){
+            this.compute(stack, ply);
+        }
+        return this.output(position, slot);
+    }
+
+    public void played(Position parent, int move, Position child, int ply){
+        if(ply < 1 || ply > Search.MAX_PLY){
+            return;
+        }
+        Slot[] stack = this.stacks.get();
+        Slot before = stack[ply - 1];
+        if(before.position != parent){//e.g. the root: remember it so that it can be refreshed
+            before.position = parent;
+            before.parent = null;
+            before.computed = false;
+        }
+        Slot slot = stack[ply];
+        slot.position = child;
+        slot.parent = parent;
+        slot.computed = false;
+        slot.adds = 0;
+        slot.subs = 0;
+
+        int from = Move.from(move), to = Move.to(move);
+        int code = parent.pieceAt(from);
+        int own = code & PackedPosition.BLACK;
+        slot.remove(code, from);
+        int captured = parent.pieceAt(to);
+        if(captured != 0){
+            slot.remove(captured, to);
+        }
+        else if((code & 7) == PackedPosition.PAWN && (from & 7) != (to & 7)){//en passant
+            slot.remove(PackedPosition.PAWN | (own ^ PackedPosition.BLACK), (from & ~7) | (to & 7));
+        }
+        slot.add(Move.promotion(move) != 0 ? Move.promotion(move) | own : code, to);
+        if((code & 7) == PackedPosition.KING && Math.abs(to - from) == 2){//castling moves the Rook too
+            int rook = PackedPosition.ROOK | own;
+            slot.remove(rook, to > from ? from + 3 : from - 4);
+            slot.add(rook, to > from ? from + 1 : from - 1);
+        }
+    }
+
+    /**
+     * Brings the accumulators of a slot up to date: from the nearest slot below it that is up to
+     * date and leads to it, or from scratch.
+     *
+     * @param stack	the thread's stack
+     * @param ply	the slot
+     */
+    private void compute(Slot[] stack, int ply){
+        int base = ply;
+        while(!stack[base].computed && base > 0 && stack[base].parent != null
+            && stack[base - 1].position == stack[base].parent){
+            base--;
+        }
+        Slot slot = stack[base];
+        if(!slot.computed){
+            this.network.refresh(slot.position, 0, slot.white);
+            this.network.refresh(slot.position, PackedPosition.BLACK, slot.black);
+            slot.computed = true;
+        }
+        for(int p = base + 1; p <= ply; p++){
+            Slot below = stack[p - 1];
+            slot = stack[p];
+            slot.rows(0);
+            this.network.update(below.white, slot.white, slot.addRows, slot.adds, slot.subRows, slot.subs);
+            slot.rows(PackedPosition.BLACK);
+            this.network.update(below.black, slot.black, slot.addRows, slot.adds, slot.subRows, slot.subs);
+            slot.computed = true;
+        }
+    }
+
+    private int output(Position position, Slot slot){
+        return position.turn == 'w' ? this.network.output(slot.white, slot.black)
+            : this.network.output(slot.black, slot.white);
+    }
+
+    /**
+     * Slot is the state of one ply: the position, its accumulators, and the pieces the move to it
+     * added and removed.
+     */
+    private static final class Slot {
+        /**
+         * Accumulator from white's point of view.
+         */
+        final int[] white;
+        /**
+         * Accumulator from black's point of view.
+         */
+        final int[] black;
+        /**
+         * Position of this ply, or null for a slot that holds nothing yet.
+         */
+        Position position = null;
+        /**
+         * Position the move to this one was played in, or null if the slot was filled by evaluate().
+         */
+        Position parent = null;
+        /**
+         * Whether white and black are the accumulators of position.
+         */
+        boolean computed = false;
+        /**
+         * Pieces the move put on the board, as piece code << 6 | square; at most 2 (castling).
+         */
+        final int[] added = new int[2];
+        /**
+         * Pieces the move took off the board, in the same form; at most 2 (a capture, castling).
+         */
+        final int[] removed = new int[2];
+        /**
+         * Number of pieces in added.
+         */
+        int adds = 0;
+        /**
+         * Number of pieces in removed.
+         */
+        int subs = 0;
+        /**
+         * added as feature row offsets from one side's point of view, filled by rows().
+         */
+        final int[] addRows = new int[2];
+        /**
+         * removed as feature row offsets from the same point of view.
+         */
+        final int[] subRows = new int[2];
+
+        Slot(int hidden){
+            this.white = new int[hidden];
+            this.black = new int[hidden];
+        }
+
+        void add(int code, int sq){
+            this.added[this.adds++] = code << 6 | sq;
+        }
+
+        void remove(int code, int sq){
+            this.removed[this.subs++] = code << 6 | sq;
+        }
+
+        /**
+         * Converts the recorded pieces to feature row offsets from one side's point of view.
+         *
+         * @param side	PackedPosition.BLACK for black's point of view, 0 for white's
+         */
+        void rows(int side){
+            int hidden = this.white.length;
+            for(int i = 0; i < this.adds; i++){
+                this.addRows[i] = NnueNetwork.feature(side, this.added[i] >> 6, this.added[i] & 63) * hidden;
+            }
+            for(int i = 0; i < this.subs; i++){
+                this.subRows[i] = NnueNetwork.feature(side, this.removed[i] >> 6, this.removed[i] & 63) * hidden;
+            }
+        }
+    }
+}
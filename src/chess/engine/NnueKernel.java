@@ -0,0 +1,36 @@
+package chess.engine;
+
+/**
+ * NnueKernel is a replacement for the loops of NnueNetwork. The one implementation, NnueSimd, uses
+ * the incubating Vector API and lives in the separate simd/ source root, which is compiled with
+ * --add-modules jdk.incubator.vector; NnueNetwork binds it by name when it is on the class path and
+ * the module is loaded, so the engine itself compiles and runs on a stock JDK.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+interface NnueKernel {
+    /**
+     * Computes dst = src + the rows of some features - the rows of others (see NnueNetwork.update()).
+     *
+     * @param src		accumulator to start from
+     * @param dst		accumulator to write
+     * @param weights	feature weights, row by row
+     * @param adds		row offsets to add
+     * @param nadd		number of rows to add
+     * @param subs		row offsets to subtract
+     * @param nsub		number of rows to subtract
+     * @param hidden	length of a row
+     */
+    void update(int[] src, int[] dst, int[] weights, int[] adds, int nadd, int[] subs, int nsub, int hidden);
+
+    /**
+     * Computes the output sum of the network before the bias and scaling (see NnueNetwork.output()).
+     *
+     * @param us		accumulator of the side to move
+     * @param them		accumulator of the other side
+     * @param weights	output weights, the side to move's first
+     * @param hidden	length of an accumulator
+     * @return			sum of the clamped activations times their weights
+     */
+    int output(int[] us, int[] them, int[] weights, int hidden);
+}
@@ -0,0 +1,295 @@
+package chess.engine;
+
+import chess.PackedPosition;
+import chess.Position;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * NnueNetwork holds the weights of a small quantized NNUE ("efficiently updatable neural network")
+ * and does its arithmetic. The network has 768 inputs (a piece of one of 6 types and 2 colors on
+ * one of 64 squares), one hidden layer of H neurons computed twice, from the point of view of each
+ * side, and one output:
+ * <pre>
+ *     accumulator[side] = biases + sum of the feature weight rows of the pieces on the board
+ *     score = (crelu(accumulator[side to move]) . outputWeights[0..H)
+ *            + crelu(accumulator[other side]) . outputWeights[H..2H) + outputBias) * SCALE / (QA * QB)
+ * </pre>
+ * where crelu clamps to [0, QA]. The accumulator is what makes the network cheap: a move changes at
+ * most 4 features, so the accumulator of a child is that of its parent plus and minus a few rows
+ * (update()), instead of a sum over every piece (refresh()). NnueEvaluator keeps the accumulators.
+ * <p>
+ * From its own side's point of view, every side sees its pieces as color 0 and the board from its
+ * first rank: the feature of a piece is 64 * (6 * color + type - 1) + square, with square numbered
+ * from a1 = 0 for white and from a8 = 0 for black.
+ * <p>
+ * The file format is little-endian: the 4 bytes "NNUE", int version (1), int H, then
+ * short[768 * H] feature weights (row by row), short[H] feature biases, short[2 * H] output weights
+ * and int output bias. Weights are quantized by QA in the hidden layer and by QB in the output.
+ * <p>
+ * The loops use the incubating Vector API (NnueSimd, in the separate simd/ source root) when that
+ * class is on the class path and the JVM was started with --add-modules jdk.incubator.vector, and
+ * plain loops otherwise. The engine compiles without the module.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class NnueNetwork {
+    /**
+     * Number of inputs: 2 colors, 6 piece types, 64 squares.
+     */
+    public static final int INPUTS = 768;
+    /**
+     * Quantization of the hidden layer: an activation of 1.0 is QA.
+     */
+    public static final int QA = 255;
+    /**
+     * Quantization of the output weights: a weight of 1.0 is QB.
+     */
+    public static final int QB = 64;
+    /**
+     * Centipawns of an output of 1.0.
+     */
+    public static final int SCALE = 400;
+    /**
+     * Network file used when none is named: set with -Dchess.nnue=PATH (default nnue.bin).
+     */
+    public static final String DEFAULT_PATH = System.getProperty("chess.nnue", "nnue.bin");
+    /**
+     * The Vector API loops, or null if the module or NnueSimd is missing.
+     */
+    static final NnueKernel SIMD = simd();
+
+    private static final int MAGIC = 'N' | 'N' << 8 | 'U' << 16 | 'E' << 24;
+    private static final int VERSION = 1;
+    /**
+     * Networks already loaded, by file, so that every engine of a tournament shares one copy.
+     */
+    private static final Map<Path, NnueNetwork> LOADED = new HashMap<>();
+    /**
+     * Feature rows of the pieces of a position being refreshed, one per square at most.
+     */
+    private static final ThreadLocal<int[]> ROWS = ThreadLocal.withInitial(() -> new int[64]);
+
+    /**
+     * Number of hidden neurons of each side.
+     */
+    public final int hidden;
+    /**
+     * Feature weights, row by row: the row of feature f starts at f * hidden.
+     */
+    final int[] featureWeights;
+    /**
+     * Feature biases, the accumulator of an empty board.
+     */
+    final int[] featureBiases;
+    /**
+     * Output weights: the side to move's hidden layer first, then the other side's.
+     */
+    final int[] outputWeights;
+    /**
+     * Output bias, quantized by QA * QB.
+     */
+    final int outputBias;
+
+    /**
+     * Constructor for NnueNetwork.
+     *
+     * @param hidden			number of hidden neurons of each side
+     * @param featureWeights	INPUTS * hidden feature weights, row by row
+     * @param featureBiases		hidden feature biases
+     * @param outputWeights		2 * hidden output weights
+     * @param outputBias		output bias, quantized by QA * QB
+     * @throws IllegalArgumentException	if an array has the wrong length, or the output weights are
+     *										large enough to overflow the 32-bit output sum
+     */
+    public NnueNetwork(int hidden, int[] featureWeights, int[] featureBiases, int[] outputWeights, int outputBias){
+        if(hidden <= 0 || featureWeights.length != INPUTS * hidden || featureBiases.length != hidden
+            || outputWeights.length != 2 * hidden){
+            throw new IllegalArgumentException("Bad network shape");
+        }
+        long largest = 0;
+        for(int w : outputWeights){
+            largest = Math.max(largest, Math.abs((long)w));
+        }
+        if(2L * hidden * QA * largest + Math.abs((long)outputBias) > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Output weights too large for a 32-bit output sum");
+        }
+        this.hidden = hidden;
+        this.featureWeights = featureWeights.clone();
+        this.featureBiases = featureBiases.clone();
+        this.outputWeights = outputWeights.clone();
+        this.outputBias = outputBias;
+    }
+
+    /**
+     * Reads a network file.
+     *
+     * @param path	network file in the format described in the class comment
+     * @return		the network
+     * @throws IOException	if the file cannot be read or is not a network
+     */
+    public static NnueNetwork load(Path path) throws IOException{
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+        if(in.remaining() < 12 || in.getInt() != MAGIC || in.getInt() != VERSION){
+            throw new IOException("Not a version " + VERSION + " NNUE file: " + path);
+        }
+        int hidden = in.getInt();
+        if(hidden <= 0 || in.remaining() != (INPUTS * (long)hidden + 3L * hidden) * 2 + 4){
+            throw new IOException("Truncated or oversized NNUE file: " + path);
+        }
+        int[] feature_weights = readShorts(in, INPUTS * hidden);
+        int[] feature_biases = readShorts(in, hidden);
+        int[] output_weights = readShorts(in, 2 * hidden);
+        try{
+            return new NnueNetwork(hidden, feature_weights, feature_biases, output_weights, in.getInt());
+        }
+        catch(IllegalArgumentException e){
+            throw new IOException(e.getMessage() + ": " + path);
+        }
+    }
+
+    /**
+     * Returns a network file, loading it the first time.
+     *
+     * @param path	network file
+     * @return		the network
+     * @throws IOException	if the file cannot be read or is not a network
+     */
+    public static synchronized NnueNetwork shared(Path path) throws IOException{
+        Path key = path.toAbsolutePath().normalize();
+        NnueNetwork rl = LOADED.get(key);
+        if(rl == null){
+            rl = load(key);
+            LOADED.put(key, rl);
+        }
+        return rl;
+    }
+
+    /**
+     * Returns the network named by -Dchess.nnue, loading it the first time.
+     *
+     * @return  the network
+     * @throws IOException	if the file cannot be read or is not a network
+     */
+    public static NnueNetwork shared() throws IOException{
+        return shared(Paths.get(DEFAULT_PATH));
+    }
+
+    /**
+     * Returns the feature of a piece from one side's point of view.
+     *
+     * @param side	PackedPosition.BLACK for black's point of view, 0 for white's
+     * @param code	PackedPosition piece code
+     * @param sq	square of the piece (row 0 is the 8th rank)
+     * @return		feature index, in [0, INPUTS)
+     */
+    public static int feature(int side, int code, int sq){
+        int color = (code & PackedPosition.BLACK) == side ? 0 : 1;
+        return 64 * (6 * color + (code & 7) - 1) + (side == 0 ? sq ^ 56 : sq);
+    }
+
+    /**
+     * Computes an accumulator from scratch.
+     *
+     * @param position	the position
+     * @param side		PackedPosition.BLACK for black's point of view, 0 for white's
+     * @param out		accumulator of length hidden
+     */
+    public void refresh(Position position, int side, int[] out){
+        int[] rows = ROWS.get();
+        int n = 0;
+        for(int sq = 0; sq < 64; sq++){
+            int code = position.pieceAt(sq);
+            if(code == 0){
+                continue;
+            }
+            rows[n++] = feature(side, code, sq) * this.hidden;
+        }
+        this.update(this.featureBiases, out, rows, n, rows, 0);
+    }
+
+    /**
+     * Computes dst = src + the rows of some features - the rows of others, in one pass. src and dst
+     * may be the same array.
+     *
+     * @param src	accumulator to start from
+     * @param dst	accumulator to write
+     * @param adds	row offsets (feature * hidden) to add
+     * @param nadd	number of rows to add
+     * @param subs	row offsets to subtract
+     * @param nsub	number of rows to subtract
+     */
+    void update(int[] src, int[] dst, int[] adds, int nadd, int[] subs, int nsub){
+        if(SIMD != null){
+            SIMD.update(src, dst, this.featureWeights, adds, nadd, subs, nsub, this.hidden);
+            return;
+        }
+        //row by row, so that the JIT can vectorize the inner loops itself
+        int[] w = this.featureWeights;
+        System.arraycopy(src, 0, dst, 0, this.hidden);
+        for(int a = 0; a < nadd; a++){
+            for(int i = 0, row = adds[a]; i < this.hidden; i++){
+                dst[i] += w[row + i];
+            }
+        }
+        for(int s = 0; s < nsub; s++){
+            for(int i = 0, row = subs[s]; i < this.hidden; i++){
+                dst[i] -= w[row + i];
+            }
+        }
+    }
+
+    /**
+     * Computes the output of the network.
+     *
+     * @param us	accumulator of the side to move
+     * @param them	accumulator of the other side
+     * @return		score in centipawns from the point of view of the side to move
+     */
+    public int output(int[] us, int[] them){
+        int sum;
+        if(SIMD != null){
+            sum = SIMD.output(us, them, this.outputWeights, this.hidden);
+        }
+        else{
+            sum = 0;
+            int[] w = this.outputWeights;
+            for(int i = 0; i < this.hidden; i++){
+                sum += Math.min(Math.max(us[i], 0), QA) * w[i] + Math.min(Math.max(them[i], 0), QA) * w[this.hidden + i];
+            }
+        }
+        return (int)((sum + (long)this.outputBias) * SCALE / (QA * QB));
+    }
+
+    /**
+     * Creates the Vector API kernel if it can run.
+     *
+     * @return  NnueSimd, or null if jdk.incubator.vector is not loaded or NnueSimd is not on the class path
+     */
+    private static NnueKernel simd(){
+        if(ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()){
+            return null;
+        }
+        try{
+            return (NnueKernel)Class.forName("chess.engine.NnueSimd").getDeclaredConstructor().newInstance();
+        }
+        catch(ReflectiveOperationException | LinkageError e){
+            return null;
+        }
+    }
+
+    private static int[] readShorts(ByteBuffer in, int n){
+        int[] rl = new int[n];
+        for(int i = 0; i < n; i++){
+            rl[i] = in.getShort();
+        }
+        return rl;
+    }
+}
@@ -0,0 +1,180 @@
+package chess.engine;
+
+/**
+ * PawnHashTable caches the pawn-structure part of the evaluation: doubled, isolated and passed
+ * pawns. These terms depend on nothing but where the pawns stand, and most moves are not pawn
+ * moves, so in a search the same pawn skeleton is evaluated over and over; with the table it is
+ * evaluated once and looked up afterwards.
+ * <p>
+ * An entry is keyed by the two pawn masks themselves (bit sq = row * 8 + col set for every white or
+ * black pawn), so there are no false hits. The table has a fixed number of entries and a new
+ * skeleton simply replaces the one in its slot. A PawnHashTable is not thread-safe; every search
+ * thread uses its own (see ClassicalEvaluator).
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class PawnHashTable {
+    /**
+     * Number of entries of a table made by the default constructor (about 512 KB).
+     */
+    public static final int DEFAULT_ENTRIES = 1 << 14;
+
+    /**
+     * Penalty for every pawn beyond the first on a file, middlegame and endgame.
+     */
+    private static final int DOUBLED_MIDDLE = 10, DOUBLED_END = 20;
+    /**
+     * Penalty for a pawn without friendly pawns on the neighboring files, middlegame and endgame.
+     */
+    private static final int ISOLATED_MIDDLE = 10, ISOLATED_END = 15;
+    /**
+     * Bonus for a passed pawn by rank as seen from its own side (2 is the starting rank), middlegame
+     * and endgame.
+     */
+    private static final int[] PASSED_MIDDLE = {0, 0, 5, 10, 15, 25, 40, 60};
+    private static final int[] PASSED_END = {0, 0, 10, 20, 35, 60, 100, 150};
+    /**
+     * Squares of each file.
+     */
+    private static final long[] FILES = new long[8];
+    /**
+     * Squares a pawn on each square must pass on its own and the neighboring files: an enemy pawn
+     * on any of them means it is not passed.
+     */
+    private static final long[] WHITE_SPAN = new long[64], BLACK_SPAN = new long[64];
+
+    static{
+        for(int col = 0; col < 8; col++){
+            FILES[col] = 0x0101010101010101L << col;
+        }
+        for(int sq = 0; sq < 64; sq++){
+            int row = sq >> 3, col = sq & 7;
+            for(int r = 0; r < 8; r++){
+                for(int c = Math.max(0, col - 1); c <= Math.min(7, col + 1); c++){
+                    if(r < row){
+                        WHITE_SPAN[sq] |= 1L << (r * 8 + c);
+                    }
+                    else if(r > row){
+                        BLACK_SPAN[sq] |= 1L << (r * 8 + c);
+                    }
+                }
+            }
+        }
+    }
+
+    private final long[] whitePawns;
+    private final long[] blackPawns;
+    private final long[] passed;
+    /**
+     * Middlegame score in the upper and endgame score in the lower 32 bits, from white's point of view.
+     */
+    private final long[] scores;
+    private final int shift;
+    /**
+     * Number of lookups answered from the table.
+     */
+    public long hits = 0;
+    /**
+     * Number of lookups that had to evaluate the pawns.
+     */
+    public long misses = 0;
+
+    /**
+     * Constructor for PawnHashTable with DEFAULT_ENTRIES entries.
+     */
+    public PawnHashTable(){
+        this(DEFAULT_ENTRIES);
+    }
+
+    /**
+     * Constructor for PawnHashTable.
+     *
+     * @param entries	number of entries, rounded down to a power of two
+     */
+    public PawnHashTable(int entries){
+        int size = Integer.highestOneBit(Math.max(2, entries));
+        this.whitePawns = new long[size];
+        this.blackPawns = new long[size];
+        this.passed = new long[size];
+        this.scores = new long[size];
+        this.shift = 64 - Integer.numberOfTrailingZeros(size);
+    }
+
+    /**
+     * Finds the entry of a pawn skeleton, evaluating it if it is not in the table.
+     *
+     * @param white	mask of the white pawns
+     * @param black	mask of the black pawns
+     * @return		index of the entry, for middlegame(), endgame() and passed()
+     */
+    public int probe(long white, long black){
+        int index = (int)((white * 0x9E3779B97F4A7C15L ^ black * 0xC2B2AE3D27D4EB4FL) >>> this.shift);
+        if(this.whitePawns[index] == white && this.blackPawns[index] == black){
+            this.hits++;//an empty entry is the skeleton without pawns, which scores 0
+            return index;
+        }
+        this.misses++;
+        int middle = 0, end = 0;
+        long passed = 0;
+        for(int col = 0; col < 8; col++){
+            long neighbors = (col > 0 ? FILES[col - 1] : 0) | (col < 7 ? FILES[col + 1] : 0);
+            int white_count = Long.bitCount(white & FILES[col]);
+            int black_count = Long.bitCount(black & FILES[col]);
+            int doubled = Math.max(0, white_count - 1) - Math.max(0, black_count - 1);
+            int isolated = ((white & neighbors) == 0 ? white_count : 0) - ((black & neighbors) == 0 ? black_count : 0);
+            middle -= doubled * DOUBLED_MIDDLE + isolated * ISOLATED_MIDDLE;
+            end -= doubled * DOUBLED_END + isolated * ISOLATED_END;
+        }
+        for(long pawns = white; pawns != 0; pawns &= pawns - 1){
+            int sq = Long.numberOfTrailingZeros(pawns);
+            if((black & WHITE_SPAN[sq]) == 0){
+                passed |= 1L << sq;
+                middle += PASSED_MIDDLE[8 - (sq >> 3)];
+                end += PASSED_END[8 - (sq >> 3)];
+            }
+        }
+        for(long pawns = black; pawns != 0; pawns &= pawns - 1){
+            int sq = Long.numberOfTrailingZeros(pawns);
+            if((white & BLACK_SPAN[sq]) == 0){
+                passed |= 1L << sq;
+                middle -= PASSED_MIDDLE[(sq >> 3) + 1];
+                end -= PASSED_END[(sq >> 3) + 1];
+            }
+        }
+        this.whitePawns[index] = white;
+        this.blackPawns[index] = black;
+        this.passed[index] = passed;
+        this.scores[index] = (long)middle << 32 | (end & 0xFFFFFFFFL);
+        return index;
+    }
+
+    /**
+     * Returns the middlegame pawn-structure score of an entry.
+     *
+     * @param index	entry returned by probe()
+     * @return		score in centipawns from white's point of view
+     */
+    public int middlegame(int index){
+        return (int)(this.scores[index] >> 32);
+    }
+
+    /**
+     * Returns the endgame pawn-structure score of an entry.
+     *
+     * @param index	entry returned by probe()
+     * @return		score in centipawns from white's point of view
+     */
+    public int endgame(int index){
+        return (int)this.scores[index];
+    }
+
+    /**
+     * Returns the passed pawns of an entry.
+     *
+     * @param index	entry returned by probe()
+     * @return		mask of the passed pawns of both colors
+     */
+    public long passed(int index){
+        return this.passed[index];
+    }
+}
@@ -0,0 +1,608 @@
+package chess.engine;
+
+import chess.Move;
+import chess.PackedPosition;
+import chess.Position;
+import chess.PositionHistory;
+import chess.jfr.SearchIterationEvent;
+import java.util.Arrays;
+
+/**
+ * Search finds the best move in a position with an iterative-deepening alpha-beta (principal
+ * variation) search: it searches depth 1, 2, 3, ... until a depth or node limit is reached, the
+ * TimeManager runs out, or it is stopped, and the move of the last completed depth is the answer
+ * (if even depth 1 runs out, the best root move it scored). Positions already searched are looked
+ * up in a TranspositionTable, moves are tried best-first (table move, captures by most valuable
+ * victim, killer moves, then by history), and the leaves are resolved with a capture-only
+ * quiescence search scored by an Evaluator.
+ * <p>
+ * A Search is used by one thread at a time; stop() may be called from any thread. All buffers are
+ * allocated once, so searching only allocates the Positions made on the way (copy-on-make).
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Search implements Engine {
+    /**
+     * Score of being mated right now; mate in n plies scores MATE - n.
+     */
+    public static final int MATE = 32000;
+    /**
+     * Score bound larger than any real score.
+     */
+    public static final int INFINITE = 32500;
+    /**
+     * Deepest ply the search ever looks at.
+     */
+    public static final int MAX_PLY = 128;
+
+    /**
+     * Value of each piece type for move ordering (most valuable victim first).
+     */
+    private static final int[] ORDER_VALUES = {0, 1, 3, 3, 5, 9, 20};
+
+    /**
+     * Evaluation used at the leaves.
+     */
+    public final Evaluator evaluator;
+    /**
+     * Transposition table; may be shared with other searches.
+     */
+    public final TranspositionTable table;
+
+    private final int[][] moves = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    private final int[][] scores = new int[MAX_PLY + 1][Position.MAX_MOVES];
+    private final int[][] killers = new int[MAX_PLY + 1][2];
+    private final int[][] historyScores = new int[64][64];
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+    /**
+     * Hashes of the game so far followed by the positions on the current search path, for
+     * repetition detection.
+     */
+    private final PositionHistory path = new PositionHistory();
+
+    private long nodes;
+    private long nodeLimit;
+    private int iterationDepth;
+    private boolean aborted;
+    /**
+     * Whether depth 1 may be cut short once a root move has been scored (search()), rather than
+     * always completed (searchMultiPv(), which needs every line).
+     */
+    private boolean partialFirstIteration;
+    /**
+     * Score of the principal variation at the root of the current iteration, pv[0].
+     */
+    private int rootScore;
+    private volatile boolean stopRequested;
+    /**
+     * Time manager of the current search, or null if it has none.
+     */
+    private TimeManager time;
+    /**
+     * Root moves not to search, the first excludedCount of them: the lines already found by a
+     * multi-PV search at the current depth.
+     */
+    private final int[] excluded = new int[Position.MAX_MOVES];
+    private int excludedCount;
+
+    /**
+     * Constructor for Search.
+     *
+     * @param evaluator	evaluation used at the leaves
+     * @param table		transposition table
+     */
+    public Search(Evaluator evaluator, TranspositionTable table){
+        this.evaluator = evaluator;
+        this.table = table;
+        new SearchIterationEvent();//loads JFR now (hundreds of ms on a cold JVM), not on the clock of the first move
+    }
+
+    /**
+     * Forgets everything learned in earlier searches (transposition table, killer moves and
+     * history), so that a new game does not depend on the previous ones.
+     */
+    public void newGame(){
+        this.table.clear();
+        for(int[] k : this.killers){
+            Arrays.fill(k, Move.NONE);
+        }
+        for(int[] h : this.historyScores){
+            Arrays.fill(h, 0);
+        }
+    }
+
+    /**
+     * Asks a running search to stop as soon as possible. The search then returns the result of
+     * the last depth it completed. Can be called from any thread.
+     */
+    public void stop(){
+        this.stopRequested = true;
+    }
+
+    /**
+     * Searches a position.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param maxDepth		deepest iteration to search, at most MAX_PLY
+     * @param maxNodes		number of nodes after which to stop, 0 for no limit
+     * @return				result of the last completed iteration; depth 1 is always completed
+     */
+    public SearchResult search(Position root, PositionHistory gameHistory, int maxDepth, long maxNodes){
+        return this.search(root, gameHistory, maxDepth, maxNodes, null, null);
+    }
+
+    /**
+     * Searches a position under a clock: as deep as the time manager allows.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param time			time manager of this move
+     * @return				result of the last completed iteration; depth 1 is always completed
+     */
+    public SearchResult search(Position root, PositionHistory gameHistory, TimeManager time){
+        return this.search(root, gameHistory, MAX_PLY, 0, time, null);
+    }
+
+    /**
+     * Searches a position within a depth and node limit and, if there is one, a time manager,
+     * reporting every completed iteration, e.g. to see when the best move settled.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param maxDepth		deepest iteration to search, at most MAX_PLY
+     * @param maxNodes		number of nodes after which to stop, 0 for no limit
+     * @param time			time manager of this move, or null
+     * @param listener		told about the result after every completed depth, or null
+     * @return				result of the last completed iteration, or if the limits cut depth 1 short, its
+     *						best root move so far (at least one root move is always scored)
+     */
+    public SearchResult search(Position root, PositionHistory gameHistory, int maxDepth, long maxNodes, TimeManager time, SearchListener listener){
+        long start = System.nanoTime();
+        this.begin(root, gameHistory, maxNodes, time);
+        this.partialFirstIteration = true;
+        SearchResult result = null;
+        for(int depth = 1; depth <= Math.max(1, Math.min(maxDepth, MAX_PLY)); depth++){
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            this.iterationDepth = depth;
+            int score = this.negamax(root, depth, -INFINITE, INFINITE, 0);
+            if(!this.aborted){
+                int[] line = Arrays.copyOf(this.pv[0], this.pvLength[0]);
+                result = new SearchResult(line.length > 0 ? line[0] : Move.NONE, score, depth, this.nodes,
+                    System.nanoTime() - start, line);
+                if(listener != null){
+                    listener.iterationCompleted(new SearchResult[]{result});
+                }
+            }
+            else if(result == null){//depth 1 ran out: answer with the best root move scored so far
+                int[] line = Arrays.copyOf(this.pv[0], this.pvLength[0]);
+                result = new SearchResult(line[0], this.rootScore, depth, this.nodes, System.nanoTime() - start, line);
+            }
+            if(event.shouldCommit()){
+                event.depth = depth;
+                event.bestMove = result == null || result.bestMove == Move.NONE ? "" : Move.toString(result.bestMove);
+                event.score = score;
+                event.nodes = this.nodes;
+                event.completed = !this.aborted;
+                event.commit();
+            }
+            if(this.aborted || result.bestMove == Move.NONE || MATE - Math.abs(score) <= depth){
+                break;//out of budget, no legal move, or a forced mate that deeper searches cannot improve
+            }
+            if(time != null && !time.startNextIteration(result.bestMove, this.nodes)){
+                break;//the next iteration would not finish in time
+            }
+        }
+        return new SearchResult(result.bestMove, result.score, result.depth, this.nodes, System.nanoTime() - start, result.pv);
+    }
+
+    /**
+     * Searches the best few moves of a position (multi-PV), e.g. for reviewing a game. At every
+     * depth the best line is searched first, then the next one with the moves of the lines before
+     * excluded at the root, and so on. All lines share the iterative deepening, the transposition
+     * table and the move ordering, so each line after the first mostly re-reads what the ones before
+     * it stored; lines = 5 costs far less than five searches.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param lines			number of lines (K) to find
+     * @param maxDepth		deepest iteration to search, at most MAX_PLY
+     * @param maxNodes		number of nodes after which to stop, 0 for no limit
+     * @param listener		told about the lines after every completed depth, or null
+     * @return				the lines of the last completed depth, best first; fewer than K if there are fewer legal moves
+     */
+    public SearchResult[] searchMultiPv(Position root, PositionHistory gameHistory, int lines, int maxDepth, long maxNodes, SearchListener listener){
+        long start = System.nanoTime();
+        this.begin(root, gameHistory, maxNodes, null);
+        this.partialFirstIteration = false;
+        int count = Math.max(1, Math.min(lines, root.legalMoves().length));
+        SearchResult[] result = new SearchResult[0];
+        for(int depth = 1; depth <= Math.max(1, Math.min(maxDepth, MAX_PLY)); depth++){
+            SearchIterationEvent event = new SearchIterationEvent();
+            event.begin();
+            this.iterationDepth = depth;
+            SearchResult[] found = new SearchResult[count];
+            int n = 0;
+            this.excludedCount = 0;
+            while(n < count){
+                int score = this.negamax(root, depth, -INFINITE, INFINITE, 0);
+                if(this.aborted || this.pvLength[0] == 0){
+                    break;//out of budget, or no moves left to search
+                }
+                int[] line = Arrays.copyOf(this.pv[0], this.pvLength[0]);
+                found[n++] = new SearchResult(line[0], score, depth, this.nodes, System.nanoTime() - start, line);
+                this.excluded[this.excludedCount++] = line[0];
+            }
+            this.excludedCount = 0;
+            if(n == count){
+                Arrays.sort(found, (a, b) -> Integer.compare(b.score, a.score));
+                result = found;
+                if(listener != null){
+                    listener.iterationCompleted(result);
+                }
+            }
+            if(event.shouldCommit()){
+                event.depth = depth;
+                event.bestMove = n == 0 ? "" : Move.toString(found[0].bestMove);
+                event.score = n == 0 ? 0 : found[0].score;
+                event.nodes = this.nodes;
+                event.completed = n == count;
+                event.commit();
+            }
+            if(this.aborted){
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resets the counters and limits and sets up the repetition history for a new search.
+     *
+     * @param root			position to search
+     * @param gameHistory	hashes of the positions of the game before root (for repetitions), or null
+     * @param maxNodes		number of nodes after which to stop, 0 for no limit
+     * @param time			time manager of this move, or null
+     */
+    private void begin(Position root, PositionHistory gameHistory, long maxNodes, TimeManager time){
+        if(time != null){
+            time.start();
+        }
+        this.time = time;
+        this.stopRequested = false;
+        this.aborted = false;
+        this.nodes = 0;
+        this.nodeLimit = maxNodes > 0 ? maxNodes : Long.MAX_VALUE;
+        this.excludedCount = 0;
+        this.path.clear();
+        if(gameHistory != null){
+            for(int i = 0; i < gameHistory.size; i++){
+                this.path.push(gameHistory.hashes[i]);
+            }
+        }
+        if(this.path.size == 0 || this.path.current() != root.hash){
+            this.path.push(root.hash);
+        }
+        for(int[] h : this.historyScores){
+            for(int i = 0; i < 64; i++){
+                h[i] >>= 1;
+            }
+        }
+    }
+
+    /**
+     * Alpha-beta search of one position.
+     *
+     * @param position	position to search
+     * @param depth		remaining depth
+     * @param alpha		lower bound of the window
+     * @param beta		upper bound of the window
+     * @param ply		distance from the root
+     * @return			score of the position from the point of view of the side to move
+     */
+    private int negamax(Position position, int depth, int alpha, int beta, int ply){
+        this.pvLength[ply] = ply;
+        if(ply > 0 && (position.halfmoveClock >= 100 || this.path.isRepetition(position.halfmoveClock))){
+            return 0;
+        }
+        boolean in_check = position.isInCheck();
+        if(in_check){
+            depth++;//never stop the search in the middle of a check
+        }
+        if(depth <= 0 || ply >= MAX_PLY){
+            return this.quiesce(position, alpha, beta, ply);
+        }
+        if(this.countNode()){
+            return 0;
+        }
+
+        long entry = this.table.probe(position.hash);
+        int table_move = TranspositionTable.move(entry);
+        if(entry != 0 && ply > 0 && TranspositionTable.depth(entry) >= depth){
+            int score = fromTable(TranspositionTable.score(entry), ply);
+            int bound = TranspositionTable.bound(entry);
+            if(bound == TranspositionTable.EXACT || (bound == TranspositionTable.LOWER && score >= beta)
+                || (bound == TranspositionTable.UPPER && score <= alpha)){
+                return score;
+            }
+        }
+
+        int[] list = this.moves[ply];
+        int n = position.generateMoves(list);
+        if(n == 0){
+            return in_check ? -MATE + ply : 0;
+        }
+        this.scoreMoves(position, list, n, ply, table_move);
+
+        int original_alpha = alpha;
+        int best = -INFINITE;
+        int best_move = Move.NONE;
+        int searched = 0;
+        for(int i = 0; i < n; i++){
+            int move = this.pickNext(list, n, i, ply);
+            if(ply == 0 && this.isExcluded(move)){
+                continue;
+            }
+            Position child = position.play(move);
+            this.evaluator.played(position, move, child, ply + 1);
+            this.path.push(child.hash);
+            int score;
+            if(searched++ == 0){
+                score = -this.negamax(child, depth - 1, -beta, -alpha, ply + 1);
+            }
+            else{
+                score = -this.negamax(child, depth - 1, -alpha - 1, -alpha, ply + 1);
+                if(score > alpha && score < beta){
+                    score = -this.negamax(child, depth - 1, -beta, -alpha, ply + 1);
+                }
+            }
+            this.path.pop();
+            if(this.aborted){
+                return 0;
+            }
+            if(score > best){
+                best = score;
+                best_move = move;
+                if(score > alpha){
+                    alpha = score;
+                    this.updatePv(ply, move);
+                    if(ply == 0){
+                        this.rootScore = score;
+                    }
+                    if(alpha >= beta){
+                        if(isQuiet(position, move)){
+                            if(this.killers[ply][0] != move){
+                                this.killers[ply][1] = this.killers[ply][0];
+                                this.killers[ply][0] = move;
+                            }
+                            int[] h = this.historyScores[Move.from(move)];
+                            h[Move.to(move)] = Math.min(h[Move.to(move)] + depth * depth, 50_000);
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if(ply == 0 && this.excludedCount > 0){
+            return best;//not the score of the position, since some moves were left out
+        }
+        int bound = best >= beta ? TranspositionTable.LOWER : best > original_alpha ? TranspositionTable.EXACT : TranspositionTable.UPPER;
+        this.table.store(position.hash, best_move, toTable(best, ply), depth, bound);
+        return best;
+    }
+
+    /**
+     * Quiescence search: only captures and promotions are searched, and the side to move may
+     * always "stand pat" on the static evaluation, so that leaves are never scored in the middle
+     * of an exchange.
+     *
+     * @param position	position to search
+     * @param alpha		lower bound of the window
+     * @param beta		upper bound of the window
+     * @param ply		distance from the root
+     * @return			score of the position from the point of view of the side to move
+     */
+    private int quiesce(Position position, int alpha, int beta, int ply){
+        this.pvLength[ply] = ply;
+        if(this.countNode()){
+            return 0;
+        }
+        int stand_pat = this.evaluator.evaluate(position, ply);
+        if(stand_pat >= beta || ply >= MAX_PLY){
+            return stand_pat;
+        }
+        if(stand_pat > alpha){
+            alpha = stand_pat;
+        }
+        int[] list = this.moves[ply];
+        int all = position.generateMoves(list);
+        int n = 0;
+        for(int i = 0; i < all; i++){
+            if(!isQuiet(position, list[i])){
+                list[n++] = list[i];
+            }
+        }
+        this.scoreMoves(position, list, n, ply, Move.NONE);
+        int best = stand_pat;
+        for(int i = 0; i < n; i++){
+            int move = this.pickNext(list, n, i, ply);
+            Position child = position.play(move);
+            this.evaluator.played(position, move, child, ply + 1);
+            int score = -this.quiesce(child, -beta, -alpha, ply + 1);
+            if(this.aborted){
+                return 0;
+            }
+            if(score > best){
+                best = score;
+                if(score > alpha){
+                    alpha = score;
+                    if(alpha >= beta){
+                        break;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Counts a node and checks the limits. Depth 1 is only stopped once a root move has been scored,
+     * so that there is always a move to play. The clock is read every 1024 nodes, or every 64 during
+     * depth 1, when the JVM may still be interpreting the search and nodes are slow.
+     *
+     * @return  true if the search has to stop, false otherwise
+     */
+    private boolean countNode(){
+        this.nodes++;
+        boolean stoppable = this.iterationDepth > 1 || (this.partialFirstIteration && this.pvLength[0] > 0);
+        if(stoppable && (this.nodes >= this.nodeLimit || ((this.nodes & (this.iterationDepth > 1 ? 1023 : 63)) == 0
+            && (this.stopRequested || (this.time != null && this.time.hardLimitReached(this.nodes)))))){
+            this.aborted = true;
+        }
+        return this.aborted;
+    }
+
+    /**
+     * Gives each move an ordering score: table move first, then captures and promotions (most
+     * valuable victim, least valuable attacker), then killer moves, then quiet moves by history.
+     *
+     * @param position		position the moves are made in
+     * @param list			moves
+     * @param n				number of moves
+     * @param ply			distance from the root
+     * @param tableMove		best move stored in the transposition table, or Move.NONE
+     */
+    private void scoreMoves(Position position, int[] list, int n, int ply, int tableMove){
+        int[] s = this.scores[ply];
+        for(int i = 0; i < n; i++){
+            int move = list[i];
+            int to = Move.to(move);
+            int victim = position.pieceAt(to) & 7;
+            int attacker = position.pieceAt(Move.from(move)) & 7;
+            if(move == tableMove){
+                s[i] = 1_000_000;
+            }
+            else if(victim != 0 || Move.promotion(move) != 0 || (attacker == PackedPosition.PAWN && to == position.enPassantSquare)){
+                s[i] = 100_000 + ORDER_VALUES[victim] * 100 + ORDER_VALUES[Move.promotion(move)] * 10 - ORDER_VALUES[attacker];
+            }
+            else if(move == this.killers[ply][0]){
+                s[i] = 90_000;
+            }
+            else if(move == this.killers[ply][1]){
+                s[i] = 89_000;
+            }
+            else{
+                s[i] = this.historyScores[Move.from(move)][to];
+            }
+        }
+    }
+
+    /**
+     * Moves the best scored of the remaining moves to index i (selection sort, one step at a
+     * time, since a cutoff often comes after the first few moves).
+     *
+     * @param list	moves
+     * @param n		number of moves
+     * @param i		index of the first move not tried yet
+     * @param ply	distance from the root
+     * @return		the move now at index i
+     */
+    private int pickNext(int[] list, int n, int i, int ply){
+        int[] s = this.scores[ply];
+        int best = i;
+        for(int j = i + 1; j < n; j++){
+            if(s[j] > s[best]){
+                best = j;
+            }
+        }
+        int move = list[best];
+        list[best] = list[i];
+        list[i] = move;
+        int score = s[best];
+        s[best] = s[i];
+        s[i] = score;
+        return move;
+    }
+
+    /**
+     * Sets the principal variation of this ply to a move followed by the principal variation of
+     * the position it leads to.
+     *
+     * @param ply	distance from the root
+     * @param move	new best move at this ply
+     */
+    private void updatePv(int ply, int move){
+        this.pv[ply][ply] = move;
+        for(int i = ply + 1; i < this.pvLength[ply + 1]; i++){
+            this.pv[ply][i] = this.pv[ply + 1][i];
+        }
+        this.pvLength[ply] = Math.max(this.pvLength[ply + 1], ply + 1);
+    }
+
+    /**
+     * Checks whether a root move is excluded from the current multi-PV line.
+     *
+     * @param move	the move
+     * @return		true if the move belongs to an earlier line, false otherwise
+     */
+    private boolean isExcluded(int move){
+        for(int i = 0; i < this.excludedCount; i++){
+            if(this.excluded[i] == move){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a move neither captures nor promotes.
+     *
+     * @param position	position the move is made in
+     * @param move		the move
+     * @return			true if the move is quiet, false otherwise
+     */
+    private static boolean isQuiet(Position position, int move){
+        int to = Move.to(move);
+        if(position.pieceAt(to) != 0 || Move.promotion(move) != 0){
+            return false;
+        }
+        return !(to == position.enPassantSquare && (position.pieceAt(Move.from(move)) & 7) == PackedPosition.PAWN);
+    }
+
+    /**
+     * Converts a mate score relative to the root into one relative to the current position, for
+     * storing in the transposition table.
+     *
+     * @param score	score relative to the root
+     * @param ply	distance from the root
+     * @return		score to store
+     */
+    private static int toTable(int score, int ply){
+        if(score > MATE - MAX_PLY){
+            return score + ply;
+        }
+        if(score < -MATE + MAX_PLY){
+            return score - ply;
+        }
+        return score;
+    }
+
+    /**
+     * Inverse of toTable().
+     *
+     * @param score	stored score
+     * @param ply	distance from the root
+     * @return		score relative to the root
+     */
+    private static int fromTable(int score, int ply){
+        if(score > MATE - MAX_PLY){
+            return score - ply;
+        }
+        if(score < -MATE + MAX_PLY){
+            return score + ply;
+        }
+        return score;
+    }
+}
@@ -0,0 +1,16 @@
+package chess.engine;
+
+/**
+ * SearchListener receives the results of a search while it is still running, one completed depth
+ * at a time, e.g. to show a game review as it improves.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public interface SearchListener {
+    /**
+     * Called on the searching thread after every completed depth.
+     *
+     * @param lines	the lines found at that depth, best first; the array belongs to the listener
+     */
+    void iterationCompleted(SearchResult[] lines);
+}
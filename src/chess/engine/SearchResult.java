@@ -0,0 +1,94 @@
+package chess.engine;
+
+import chess.Move;
+
+/**
+ * SearchResult is what one search (or one iteration of it) found: the best move, its score and
+ * the line the search expects, plus how much work it took.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class SearchResult {
+    /**
+     * Best move found, or Move.NONE if the side to move has no legal move.
+     */
+    public final int bestMove;
+    /**
+     * Score of the best move in centipawns from the point of view of the side to move. Scores
+     * beyond Search.MATE - Search.MAX_PLY mean a forced mate (see mateIn()).
+     */
+    public final int score;
+    /**
+     * Depth of the last completed iteration.
+     */
+    public final int depth;
+    /**
+     * Number of positions visited.
+     */
+    public final long nodes;
+    /**
+     * Time taken in nanoseconds.
+     */
+    public final long nanos;
+    /**
+     * Principal variation: the best move followed by the expected replies.
+     */
+    public final int[] pv;
+
+    /**
+     * Constructor for SearchResult.
+     *
+     * @param bestMove	best move found
+     * @param score		score of the best move
+     * @param depth		depth of the last completed iteration
+     * @param nodes		number of positions visited
+     * @param nanos		time taken in nanoseconds
+     * @param pv		principal variation
+     */
+    public SearchResult(int bestMove, int score, int depth, long nodes, long nanos, int[] pv){
+        this.bestMove = bestMove;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.nanos = nanos;
+        this.pv = pv;
+    }
+
+    /**
+     * Returns the number of moves to a forced mate.
+     *
+     * @return  moves until mate (positive if the side to move mates, negative if it gets mated), 0 if no mate was found
+     */
+    public int mateIn(){
+        if(Math.abs(this.score) < Search.MATE - Search.MAX_PLY){
+            return 0;
+        }
+        int plies = Search.MATE - Math.abs(this.score);
+        return this.score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2;
+    }
+
+    /**
+     * Returns the number of positions visited per second.
+     *
+     * @return  nodes per second
+     */
+    public long nodesPerSecond(){
+        return this.nanos == 0 ? 0 : this.nodes * 1_000_000_000L / this.nanos;
+    }
+
+    /**
+     * Overrides the toString method from Object.
+     *
+     * @return  depth, score, nodes and principal variation, e.g. "depth 5 score cp 35 nodes 12034 pv e2 e4 e7 e5"
+     */
+    public String toString(){
+        StringBuilder sb = new StringBuilder("depth ").append(this.depth);
+        boolean mate = Math.abs(this.score) >= Search.MATE - Search.MAX_PLY;
+        sb.append(mate ? " score mate " + this.mateIn() : " score cp " + this.score);
+        sb.append(" nodes ").append(this.nodes).append(" pv");
+        for(int move : this.pv){
+            sb.append(' ').append(Move.toString(move).replace(" ", "").toLowerCase());
+        }
+        return sb.toString();
+    }
+}
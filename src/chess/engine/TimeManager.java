@@ -0,0 +1,152 @@
+package chess.engine;
+
+/**
+ * TimeManager decides how long one search may take, given the clock: the time left, the increment
+ * and the number of moves to the next time control. It sets two limits:
+ * <ul>
+ * <li>the soft limit, checked between iterations: no new iteration is started after it, since the
+ * next one would take longer than all before it. It is stretched while the best move keeps changing
+ * from one iteration to the next, because then the search has not settled yet;</li>
+ * <li>the hard limit, checked inside the search every few thousand nodes: the search is aborted
+ * when it is reached, however far it got. It stays well below the time left, so the engine never
+ * loses on time as long as the first iteration fits.</li>
+ * </ul>
+ * <p>
+ * The clock can be measured in wall-clock time (for play) or in nodes (for benchmarks and tests).
+ * In node mode the same budget is spent on the same searches on every run and every machine, so
+ * results are reproducible.
+ * <p>
+ * A TimeManager belongs to one search of one move; make a new one for the next move.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class TimeManager {
+    /**
+     * Time kept back in wall-clock mode for everything around the search (printing, the GUI, the
+     * operating system), in milliseconds.
+     */
+    public static final long MOVE_OVERHEAD_MILLIS = 30;
+    /**
+     * Number of moves the remaining time is assumed to last when there is no moves-to-go.
+     */
+    public static final int DEFAULT_MOVES_TO_GO = 30;
+
+    /**
+     * Whether the clock counts nodes instead of nanoseconds.
+     */
+    public final boolean nodeMode;
+    /**
+     * Time (nanoseconds or nodes) the search is expected to take when it is stable.
+     */
+    public final long optimum;
+    /**
+     * Time (nanoseconds or nodes) after which the search is aborted.
+     */
+    public final long hardLimit;
+
+    /**
+     * System.nanoTime() when the search started.
+     */
+    private long start;
+    /**
+     * Best move of the last completed iteration.
+     */
+    private int lastBestMove;
+    /**
+     * How much the best move changed lately: 1 is added on every change and halved on every
+     * iteration, so it stays between 0 and 2.
+     */
+    private double instability = 0;
+
+    /**
+     * Constructor for TimeManager.
+     *
+     * @param nodeMode	whether the clock counts nodes instead of nanoseconds
+     * @param remaining	time left on the clock, in nanoseconds or nodes
+     * @param increment	time added after the move, in nanoseconds or nodes
+     * @param movesToGo	number of moves until the next time control, 0 if the rest of the game has to be played on this time
+     */
+    private TimeManager(boolean nodeMode, long remaining, long increment, int movesToGo){
+        this.nodeMode = nodeMode;
+        int moves = movesToGo > 0 ? Math.min(movesToGo, DEFAULT_MOVES_TO_GO * 2) : DEFAULT_MOVES_TO_GO;
+        long available = Math.max(1, remaining);
+        long optimum = available / moves + (moves > 1 ? increment * 3 / 4 : 0);
+        long hard = moves == 1 ? available * 9 / 10 : Math.min(available * 3 / 4, optimum * 5);
+        this.hardLimit = Math.max(1, hard);
+        this.optimum = Math.max(1, Math.min(optimum, this.hardLimit));
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Creates a wall-clock time manager.
+     *
+     * @param remainingMillis	time left on the engine's clock in milliseconds
+     * @param incrementMillis	increment per move in milliseconds
+     * @param movesToGo			number of moves until the next time control, 0 for none
+     * @return					the time manager
+     */
+    public static TimeManager forClock(long remainingMillis, long incrementMillis, int movesToGo){
+        long remaining = Math.max(1, remainingMillis - MOVE_OVERHEAD_MILLIS);
+        return new TimeManager(false, remaining * 1_000_000, incrementMillis * 1_000_000, movesToGo);
+    }
+
+    /**
+     * Creates a node-budget time manager: the clock holds nodes, and the search spends them.
+     *
+     * @param remainingNodes	nodes left on the engine's clock
+     * @param incrementNodes	nodes added per move
+     * @param movesToGo			number of moves until the next time control, 0 for none
+     * @return					the time manager
+     */
+    public static TimeManager forNodes(long remainingNodes, long incrementNodes, int movesToGo){
+        return new TimeManager(true, remainingNodes, incrementNodes, movesToGo);
+    }
+
+    /**
+     * Starts measuring. Called by the search when it starts.
+     */
+    public void start(){
+        this.start = System.nanoTime();
+        this.lastBestMove = 0;
+        this.instability = 0;
+    }
+
+    /**
+     * Returns how much of the clock the search used so far.
+     *
+     * @param nodes	nodes searched so far
+     * @return		nanoseconds or nodes used
+     */
+    public long elapsed(long nodes){
+        return this.nodeMode ? nodes : System.nanoTime() - this.start;
+    }
+
+    /**
+     * Checks the hard limit. Cheap enough to call every few thousand nodes.
+     *
+     * @param nodes	nodes searched so far
+     * @return		true if the search has to stop now, false otherwise
+     */
+    public boolean hardLimitReached(long nodes){
+        return this.elapsed(nodes) >= this.hardLimit;
+    }
+
+    /**
+     * Decides after a completed iteration whether to start another one. The time for it is half
+     * the optimum (the next iteration takes about as long as all before it), stretched by up to
+     * three times while the best move is unstable, and never past half the hard limit.
+     *
+     * @param bestMove	best move of the completed iteration
+     * @param nodes		nodes searched so far
+     * @return			true to search another iteration, false to stop and play the best move
+     */
+    public boolean startNextIteration(int bestMove, long nodes){
+        this.instability /= 2;
+        if(this.lastBestMove != 0 && bestMove != this.lastBestMove){
+            this.instability += 1;
+        }
+        this.lastBestMove = bestMove;
+        double soft = Math.min(this.optimum / 2.0 * (1 + this.instability), this.hardLimit / 2.0);
+        return this.elapsed(nodes) < soft;
+    }
+}
@@ -0,0 +1,130 @@
+package chess.engine;
+
+import java.util.Arrays;
+
+/**
+ * TranspositionTable remembers search results by position hash, so that a position reached
+ * again (through another move order, or in the next iteration) is not searched again. It is a
+ * fixed-size, direct-mapped table of two long arrays; nothing is allocated after construction.
+ * <p>
+ * Each entry is a key word and a data word. The key word is stored as hash ^ data, so an entry
+ * torn by two threads writing at once simply fails to match, and the table can be shared by
+ * several searches without locking.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class TranspositionTable {
+    /**
+     * Bound type of a score that is exact.
+     */
+    public static final int EXACT = 1;
+    /**
+     * Bound type of a score that is a lower bound (the search failed high).
+     */
+    public static final int LOWER = 2;
+    /**
+     * Bound type of a score that is an upper bound (the search failed low).
+     */
+    public static final int UPPER = 3;
+
+    private final long[] keys;
+    private final long[] data;
+    private final int mask;
+
+    /**
+     * Constructor for TranspositionTable.
+     *
+     * @param megabytes	size of the table; rounded down to a power of two number of entries
+     */
+    public TranspositionTable(int megabytes){
+        long entries = Math.max(1024, ((long)megabytes << 20) / 16);
+        int size = Integer.highestOneBit((int)Math.min(entries, 1 << 30));
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Forgets all entries.
+     */
+    public void clear(){
+        Arrays.fill(this.keys, 0);
+        Arrays.fill(this.data, 0);
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash	Zobrist hash of the position
+     * @return		the data word of the entry (see move(), score(), depth() and bound()), or 0 if there is none
+     */
+    public long probe(long hash){
+        int index = (int)hash & this.mask;
+        long entry = this.data[index];
+        if((this.keys[index] ^ entry) != hash){
+            return 0;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the result of searching a position. An entry of the same position searched deeper
+     * is kept; any other entry is replaced.
+     *
+     * @param hash	Zobrist hash of the position
+     * @param move	best move found, or Move.NONE
+     * @param score	score found
+     * @param depth	depth searched
+     * @param bound	EXACT, LOWER or UPPER
+     */
+    public void store(long hash, int move, int score, int depth, int bound){
+        int index = (int)hash & this.mask;
+        long old = this.data[index];
+        if((this.keys[index] ^ old) == hash && depth(old) > depth && bound != EXACT){
+            return;
+        }
+        long entry = (move & 0xFFFFL) | ((score & 0xFFFFL) << 16) | ((long)(depth & 0xFF) << 32) | ((long)bound << 40);
+        this.data[index] = entry;
+        this.keys[index] = hash ^ entry;
+    }
+
+    /**
+     * Returns the best move stored in an entry.
+     *
+     * @param entry	data word returned by probe()
+     * @return		best move of the entry
+     */
+    public static int move(long entry){
+        return (int)(entry & 0xFFFF);
+    }
+
+    /**
+     * Returns the score stored in an entry.
+     *
+     * @param entry	data word returned by probe()
+     * @return		score of the entry
+     */
+    public static int score(long entry){
+        return (short)(entry >>> 16);
+    }
+
+    /**
+     * Returns the depth an entry was searched to.
+     *
+     * @param entry	data word returned by probe()
+     * @return		depth of the entry
+     */
+    public static int depth(long entry){
+        return (int)(entry >>> 32) & 0xFF;
+    }
+
+    /**
+     * Returns whether the score of an entry is EXACT, a LOWER bound or an UPPER bound.
+     *
+     * @param entry	data word returned by probe()
+     * @return		bound type of the entry, 0 if entry is 0
+     */
+    public static int bound(long entry){
+        return (int)(entry >>> 40) & 3;
+    }
+}
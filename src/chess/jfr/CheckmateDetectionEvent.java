@@ -0,0 +1,31 @@
+package chess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for one Chess.isCheckMate() call.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+@Name("chess.CheckmateDetection")
+@Label("Checkmate Detection")
+@Description("Chess.isCheckMate() looking for a legal move of the side in check")
+@Category({"Chess", "Rules"})
+@Threshold("1 ms")
+@StackTrace(false)
+public class CheckmateDetectionEvent extends Event {
+    @Label("Game Id")
+    public long gameId;
+
+    @Label("Side To Move")
+    public char sideToMove;
+
+    @Label("Checkmate")
+    public boolean checkmate;
+}
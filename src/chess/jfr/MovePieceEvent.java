@@ -0,0 +1,32 @@
+package chess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for one Chess.movePiece() or movePieceWithPromotion() call.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+@Name("chess.MovePiece")
+@Label("Move Piece")
+@Description("Chess.movePiece() making an accepted move")
+@Category({"Chess", "Rules"})
+@Threshold("1 ms")
+@StackTrace(false)
+public class MovePieceEvent extends Event {
+    @Label("Game Id")
+    public long gameId;
+
+    @Label("Move")
+    @Description("Move in coordinate form, e.g. e7 e8 N")
+    public String move;
+
+    @Label("Capture")
+    public boolean capture;
+}
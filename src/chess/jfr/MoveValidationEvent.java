@@ -0,0 +1,34 @@
+package chess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for one Chess.canMove() call. Like all events in this package it is only
+ * recorded when it takes longer than its threshold (1 ms by default, can be changed in the
+ * recording settings), so it can stay enabled under production load.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+@Name("chess.MoveValidation")
+@Label("Move Validation")
+@Description("Chess.canMove() checking a move typed by a player")
+@Category({"Chess", "Rules"})
+@Threshold("1 ms")
+@StackTrace(false)
+public class MoveValidationEvent extends Event {
+    @Label("Game Id")
+    public long gameId;
+
+    @Label("Move")
+    @Description("Move in coordinate form, e.g. e2 e4")
+    public String move;
+
+    @Label("Legal")
+    public boolean legal;
+}
@@ -0,0 +1,40 @@
+package chess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight recorder event for one iteration (one depth) of an iterative-deepening search. The
+ * default threshold is higher than for the rules events since most iterations take milliseconds.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Description("One depth of an iterative-deepening search")
+@Category({"Chess", "Search"})
+@Threshold("10 ms")
+@StackTrace(false)
+public class SearchIterationEvent extends Event {
+    @Label("Depth")
+    public int depth;
+
+    @Label("Best Move")
+    public String bestMove;
+
+    @Label("Score")
+    @Description("Score in centipawns from the point of view of the side to move")
+    public int score;
+
+    @Label("Nodes")
+    public long nodes;
+
+    @Label("Completed")
+    @Description("False if the search was stopped before the iteration finished")
+    public boolean completed;
+}
@@ -0,0 +1,495 @@
+package chess.journal;
+
+import chess.Chess;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MoveJournal is an append-only, memory-mapped log of every accepted move, draw and resignation of
+ * any number of games, used to rebuild in-progress games after the JVM dies.
+ * <p>
+ * Each record is 16 bytes: the game id, then one long holding the record type, the four
+ * coordinates given to Chess.movePiece()/movePieceWithPromotion(), the promotion type and a
+ * checksum. Appending only copies those two longs into the mapped file. A background thread
+ * forces the pages written since its last run to disk every few milliseconds, so many appends
+ * share one flush (group commit) and the move path never waits for the disk. Callers that must
+ * know a record is durable can wait for it with awaitDurable().
+ * <p>
+ * The file grows in segments of SEGMENT_SIZE bytes. Records of finished games stay in the file;
+ * compacting it is left to an offline job.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public class MoveJournal implements AutoCloseable {
+    /**
+     * Size of one journal record in bytes.
+     */
+    public static final int RECORD_SIZE = 16;
+    /**
+     * Size of one mapped segment of the journal file in bytes.
+     */
+    public static final int SEGMENT_SIZE = 1 << 26;
+    /**
+     * Default time between two group commits in milliseconds.
+     */
+    public static final int DEFAULT_FLUSH_MILLIS = 5;
+
+    /**
+     * Record type of a new game starting from the initial position.
+     */
+    public static final byte START = 1;
+    /**
+     * Record type of a regular (possibly promoting) move.
+     */
+    public static final byte MOVE = 2;
+    /**
+     * Record type of a move made together with a draw proposal. The opponent can only answer with
+     * "draw", so the game is treated as finished from here on.
+     */
+    public static final byte MOVE_DRAW_OFFER = 3;
+    /**
+     * Record type of the side to move resigning.
+     */
+    public static final byte RESIGN = 4;
+    /**
+     * Record type of a draw being accepted.
+     */
+    public static final byte DRAW = 5;
+    /**
+     * Record type of the game ending in checkmate.
+     */
+    public static final byte CHECKMATE = 6;
+
+    /**
+     * The journal file.
+     */
+    public Path path;
+    /**
+     * Mapped segments of the journal file, in file order.
+     */
+    private final ArrayList<MappedByteBuffer> segments = new ArrayList<>();
+    /**
+     * File offset where the next record is written. Guarded by this.
+     */
+    private long position;
+    /**
+     * File offset up to which records are known to be on disk. Guarded by durableLock.
+     */
+    private long durable;
+    /**
+     * Monitor used by awaitDurable() and the flusher.
+     */
+    private final Object durableLock = new Object();
+    /**
+     * Next id handed out by nextGameId().
+     */
+    private long nextGameId = 1;
+    /**
+     * Records of the live games found when the journal was opened, by game id. Consumed by recover().
+     */
+    private HashMap<Long, GameLog> liveGames = new HashMap<>();
+    /**
+     * Background thread doing the group commits.
+     */
+    private Thread flusher;
+    /**
+     * Set when the journal is closed.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Opens (or creates) a journal file with the default group commit interval. Existing records
+     * are scanned so that appending continues after them and recover() can rebuild live games.
+     *
+     * @param path	journal file
+     * @return		the opened journal
+     * @throws IOException	if the file cannot be opened or mapped
+     */
+    public static MoveJournal open(Path path) throws IOException{
+        return open(path, DEFAULT_FLUSH_MILLIS);
+    }
+
+    /**
+     * Opens (or creates) a journal file.
+     *
+     * @param path			journal file
+     * @param flushMillis	time between two group commits in milliseconds
+     * @return				the opened journal
+     * @throws IOException	if the file cannot be opened or mapped
+     */
+    public static MoveJournal open(Path path, int flushMillis) throws IOException{
+        MoveJournal journal = new MoveJournal(path);
+        journal.scan();
+        journal.startFlusher(flushMillis);
+        return journal;
+    }
+
+    /**
+     * Constructor for MoveJournal. Maps the segments the file already has.
+     *
+     * @param path	journal file
+     * @throws IOException	if the file cannot be opened or mapped
+     */
+    private MoveJournal(Path path) throws IOException{
+        this.path = path;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE)){
+            long segment_count = Math.max(1, (channel.size() + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            for(long i = 0; i < segment_count; i++){
+                this.segments.add(channel.map(FileChannel.MapMode.READ_WRITE, i * SEGMENT_SIZE, SEGMENT_SIZE));
+            }
+        }
+    }
+
+    /**
+     * Returns a game id that has not been used in this journal yet.
+     *
+     * @return  fresh game id
+     */
+    public synchronized long nextGameId(){
+        return this.nextGameId++;
+    }
+
+    /**
+     * Appends the start of a new game.
+     *
+     * @param gameId	id of the game
+     * @return			file offset right after the record, for awaitDurable()
+     */
+    public long appendStart(long gameId){
+        return this.append(gameId, pack(START, 0, 0, 0, 0, 0));
+    }
+
+    /**
+     * Appends an accepted move.
+     *
+     * @param gameId	id of the game
+     * @param sr		starting row index
+     * @param sc		starting column index
+     * @param er		ending row index
+     * @param ec		ending column index
+     * @param promo		promotion type ('N', 'B', 'R' or 'Q'), or 0 for no explicit promotion
+     * @param drawOffer	whether the move came with a draw proposal
+     * @return			file offset right after the record, for awaitDurable()
+     */
+    public long appendMove(long gameId, int sr, int sc, int er, int ec, char promo, boolean drawOffer){
+        return this.append(gameId, pack(drawOffer ? MOVE_DRAW_OFFER : MOVE, sr, sc, er, ec, promo));
+    }
+
+    /**
+     * Appends a game-ending event.
+     *
+     * @param gameId	id of the game
+     * @param type		RESIGN, DRAW or CHECKMATE
+     * @param turn		whose turn it was when the game ended ('w' or 'b')
+     * @return			file offset right after the record, for awaitDurable()
+     */
+    public long appendEvent(long gameId, byte type, char turn){
+        return this.append(gameId, pack(type, 0, 0, 0, 0, turn));
+    }
+
+    /**
+     * Copies one record into the mapped file. The lock is only held for the two stores, and it
+     * guarantees that everything below position is completely written when the flusher reads it.
+     *
+     * @param gameId	id of the game
+     * @param body		type, coordinates and promotion packed by pack()
+     * @return			file offset right after the record
+     */
+    private long append(long gameId, long body){
+        long word = body | checksum(gameId, body);
+        synchronized(this){
+            if(this.closed){
+                throw new IllegalStateException("journal is closed");
+            }
+            long offset = this.position;
+            MappedByteBuffer segment = this.segmentFor(offset);
+            int index = (int)(offset % SEGMENT_SIZE);
+            segment.putLong(index, gameId);
+            segment.putLong(index + 8, word);
+            this.position = offset + RECORD_SIZE;
+            return this.position;
+        }
+    }
+
+    /**
+     * Returns the mapped segment containing the given offset, mapping a new one if the file has to
+     * grow. Only called while holding this.
+     *
+     * @param offset	file offset of a record
+     * @return			segment to write the record into
+     */
+    private MappedByteBuffer segmentFor(long offset){
+        int index = (int)(offset / SEGMENT_SIZE);
+        while(index >= this.segments.size()){
+            try(FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+                long start = (long)this.segments.size() * SEGMENT_SIZE;
+                this.segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, SEGMENT_SIZE));
+            }
+            catch(IOException e){
+                throw new IllegalStateException("cannot grow journal " + this.path, e);
+            }
+        }
+        return this.segments.get(index);
+    }
+
+    /**
+     * Blocks until every record up to the given file offset has been forced to disk.
+     *
+     * @param offset	value returned by one of the append methods
+     * @throws InterruptedException	if interrupted while waiting
+     */
+    public void awaitDurable(long offset) throws InterruptedException{
+        synchronized(this.durableLock){
+            while(this.durable < offset && !this.closed){
+                this.durableLock.wait();
+            }
+        }
+    }
+
+    /**
+     * Forces all records appended so far to disk right away.
+     */
+    public void sync(){
+        long end;
+        ArrayList<MappedByteBuffer> mapped;
+        synchronized(this){
+            end = this.position;
+            mapped = new ArrayList<>(this.segments);
+        }
+        long start;
+        synchronized(this.durableLock){
+            start = this.durable;
+        }
+        if(end <= start){
+            return;
+        }
+        for(long seg_start = start - start % SEGMENT_SIZE; seg_start < end; seg_start += SEGMENT_SIZE){
+            int from = (int)(Math.max(start, seg_start) - seg_start);
+            int to = (int)(Math.min(end, seg_start + SEGMENT_SIZE) - seg_start);
+            mapped.get((int)(seg_start / SEGMENT_SIZE)).force(from, to - from);
+        }
+        synchronized(this.durableLock){
+            if(end > this.durable){
+                this.durable = end;
+            }
+            this.durableLock.notifyAll();
+        }
+    }
+
+    /**
+     * Starts the group commit thread.
+     *
+     * @param flushMillis	time between two group commits in milliseconds
+     */
+    private void startFlusher(int flushMillis){
+        this.flusher = new Thread(() -> {
+            long interval = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+            while(!this.closed){
+                LockSupport.parkNanos(interval);
+                this.sync();
+            }
+        }, "journal-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Flushes everything and stops the group commit thread. The journal cannot be appended to
+     * afterwards.
+     */
+    public void close(){
+        this.sync();
+        synchronized(this){
+            this.closed = true;
+        }
+        synchronized(this.durableLock){
+            this.durableLock.notifyAll();
+        }
+        LockSupport.unpark(this.flusher);
+    }
+
+    /**
+     * Scans the existing records once: finds where appending continues, the largest game id in use
+     * and the records of every game that has not finished yet.
+     */
+    private void scan(){
+        long max_id = 0;
+        long end = 0;
+        for(int s = 0; s < this.segments.size(); s++){
+            MappedByteBuffer segment = this.segments.get(s);
+            for(int index = 0; index < SEGMENT_SIZE; index += RECORD_SIZE){
+                long game_id = segment.getLong(index);
+                long word = segment.getLong(index + 8);
+                if(game_id == 0 && word == 0){
+                    continue;//never written (or torn before anything landed)
+                }
+                long offset = (long)s * SEGMENT_SIZE + index;
+                end = offset + RECORD_SIZE;
+                if(!isValid(game_id, word)){
+                    continue;//torn record
+                }
+                max_id = Math.max(max_id, game_id);
+                byte type = typeOf(word);
+                GameLog log = this.liveGames.get(game_id);
+                if(type == START){
+                    log = new GameLog();
+                    this.liveGames.put(game_id, log);
+                }
+                else if(log == null || log.finished){
+                    continue;
+                }
+                else if(type == MOVE){
+                    log.add(word);
+                }
+                else{//draw offer or game-ending event
+                    log.finished = true;
+                    log.words = null;
+                }
+            }
+        }
+        this.liveGames.values().removeIf(log -> log.finished);
+        this.position = end;
+        this.durable = end;
+        this.nextGameId = max_id + 1;
+    }
+
+    /**
+     * Rebuilds every game that had not finished when the journal was last written, by replaying
+     * its moves through Chess.movePiece()/movePieceWithPromotion() in parallel across games. The
+     * rebuilt games keep appending to this journal under their old ids. Can only be called once.
+     *
+     * @return	the live games by game id
+     */
+    public Map<Long, Chess> recover(){
+        ConcurrentHashMap<Long, Chess> rl = new ConcurrentHashMap<>();
+        this.liveGames.entrySet().parallelStream().forEach(entry -> {
+            Chess game = replay(entry.getValue());
+            game.journal = this;
+            game.gameId = entry.getKey();
+            rl.put(entry.getKey(), game);
+        });
+        this.liveGames = new HashMap<>();
+        return rl;
+    }
+
+    /**
+     * Replays the moves of one game from the initial position.
+     *
+     * @param log	the game's move records
+     * @return		the rebuilt game
+     */
+    private static Chess replay(GameLog log){
+        Chess game = new Chess();
+        game.generateBoard();
+        for(int i = 0; i < log.size; i++){
+            long word = log.words[i];
+            int sr = (int)(word >>> 48) & 0xFF;
+            int sc = (int)(word >>> 40) & 0xFF;
+            int er = (int)(word >>> 32) & 0xFF;
+            int ec = (int)(word >>> 24) & 0xFF;
+            char promo = (char)((word >>> 16) & 0xFF);
+            if(promo != 0){
+                game.movePieceWithPromotion(sr, sc, er, ec, String.valueOf(promo));
+            }
+            else{
+                game.movePiece(sr, sc, er, ec);
+            }
+            game.changeTurn();
+        }
+        return game;
+    }
+
+    /**
+     * Packs a record type, the move coordinates and the promotion type into the second record word,
+     * leaving the low 16 bits for the checksum.
+     *
+     * @param type	record type
+     * @param sr	starting row index
+     * @param sc	starting column index
+     * @param er	ending row index
+     * @param ec	ending column index
+     * @param extra	promotion type, or whose turn it was for game-ending events
+     * @return		packed word without checksum
+     */
+    private static long pack(byte type, int sr, int sc, int er, int ec, int extra){
+        return ((long)type << 56) | ((long)(sr & 0xFF) << 48) | ((long)(sc & 0xFF) << 40)
+            | ((long)(er & 0xFF) << 32) | ((long)(ec & 0xFF) << 24) | ((long)(extra & 0xFF) << 16);
+    }
+
+    /**
+     * Returns the record type of a packed word.
+     *
+     * @param word	second record word
+     * @return		record type
+     */
+    private static byte typeOf(long word){
+        return (byte)(word >>> 56);
+    }
+
+    /**
+     * Computes the 16-bit checksum of a record.
+     *
+     * @param gameId	id of the game
+     * @param body		packed word without checksum
+     * @return			checksum in the low 16 bits
+     */
+    private static long checksum(long gameId, long body){
+        long h = (gameId ^ 0x5DEECE66DL) * 0x9E3779B97F4A7C15L;
+        h = (h ^ body) * 0xC2B2AE3D27D4EB4FL;
+        return (h >>> 48) & 0xFFFF;
+    }
+
+    /**
+     * Checks whether a record was written completely.
+     *
+     * @param gameId	first record word
+     * @param word		second record word
+     * @return			true if the record is intact, false otherwise
+     */
+    private static boolean isValid(long gameId, long word){
+        byte type = typeOf(word);
+        return type >= START && type <= CHECKMATE && checksum(gameId, word & ~0xFFFFL) == (word & 0xFFFF);
+    }
+
+    /**
+     * GameLog collects the move records of one game while the journal is scanned.
+     */
+    private static class GameLog {
+        /**
+         * Packed move words, in order.
+         */
+        long[] words = new long[64];
+        /**
+         * Number of move words.
+         */
+        int size = 0;
+        /**
+         * Whether the game has ended.
+         */
+        boolean finished = false;
+
+        /**
+         * Adds a move record.
+         *
+         * @param word	packed move word
+         */
+        void add(long word){
+            if(this.size == this.words.length){
+                long[] grown = new long[this.size * 2];
+                System.arraycopy(this.words, 0, grown, 0, this.size);
+                this.words = grown;
+            }
+            this.words[this.size++] = word;
+        }
+    }
+}
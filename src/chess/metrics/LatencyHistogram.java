@@ -0,0 +1,190 @@
+package chess.metrics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * LatencyHistogram counts durations in log-linear buckets, the way HdrHistogram does: every power
+ * of two is split into 16 equally wide buckets, so any recorded value is known to within 1/16
+ * (about 6%) whatever its magnitude, from single nanoseconds up to about two seconds. Recording is
+ * an index computation and one increment; nothing is allocated and nothing is sorted.
+ * <p>
+ * A histogram has a single writer (the thread playing the game it belongs to). Other threads may
+ * read it at any time: the writer publishes every field with a release store and readers use
+ * acquire loads (through VarHandles), so a reader sees each recording soon after it is made and
+ * never a torn long, without any lock or atomic read-modify-write on the recording path. The
+ * fields are separate, so a reader may see a recording in one of them and not yet in another.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class LatencyHistogram {
+    /**
+     * Number of bits of each value that are kept; 2^SUB_BITS buckets per power of two.
+     */
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /**
+     * Largest value that gets a bucket of its own; larger values are counted in the last bucket.
+     */
+    public static final long MAX_VALUE = (1L << 31) - 1;
+    /**
+     * Number of buckets needed to cover 0 to MAX_VALUE.
+     */
+    private static final int BUCKETS = bucketOf(MAX_VALUE) + 1;
+    /**
+     * Release/acquire access to the elements of counts and to count, sum and max.
+     */
+    private static final VarHandle COUNTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle COUNT, SUM, MAX;
+
+    static{
+        try{
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            COUNT = lookup.findVarHandle(LatencyHistogram.class, "count", long.class);
+            SUM = lookup.findVarHandle(LatencyHistogram.class, "sum", long.class);
+            MAX = lookup.findVarHandle(LatencyHistogram.class, "max", long.class);
+        }
+        catch(ReflectiveOperationException e){
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Count per bucket.
+     */
+    private final int[] counts = new int[BUCKETS];
+    /**
+     * Number of values recorded.
+     */
+    private long count;
+    /**
+     * Sum of the values recorded.
+     */
+    private long sum;
+    /**
+     * Largest value recorded.
+     */
+    private long max;
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos	duration in nanoseconds
+     */
+    public void record(long nanos){
+        if(nanos < 0){
+            nanos = 0;
+        }
+        //plain reads are enough for the single writer; the stores publish to the readers
+        int bucket = bucketOf(Math.min(nanos, MAX_VALUE));
+        COUNTS.setRelease(this.counts, bucket, this.counts[bucket] + 1);
+        SUM.setRelease(this, this.sum + nanos);
+        if(nanos > this.max){
+            MAX.setRelease(this, nanos);
+        }
+        COUNT.setRelease(this, this.count + 1);
+    }
+
+    /**
+     * Adds the counts of another histogram to this one. The caller is the writer of this histogram;
+     * the other one may be recording meanwhile.
+     *
+     * @param other	histogram to add
+     */
+    public void add(LatencyHistogram other){
+        for(int i = 0; i < BUCKETS; i++){
+            COUNTS.setRelease(this.counts, i, this.counts[i] + (int)COUNTS.getAcquire(other.counts, i));
+        }
+        SUM.setRelease(this, this.sum + (long)SUM.getAcquire(other));
+        MAX.setRelease(this, Math.max(this.max, (long)MAX.getAcquire(other)));
+        COUNT.setRelease(this, this.count + (long)COUNT.getAcquire(other));
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return  number of values
+     */
+    public long count(){
+        return (long)COUNT.getAcquire(this);
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return  mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double mean(){
+        long count = (long)COUNT.getAcquire(this);
+        return count == 0 ? 0 : (double)(long)SUM.getAcquire(this) / count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return  maximum in nanoseconds
+     */
+    public long max(){
+        return (long)MAX.getAcquire(this);
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values lie, rounded up to
+     * the end of its bucket (and never above max()).
+     *
+     * @param fraction	fraction between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return			percentile in nanoseconds, 0 if nothing was recorded
+     */
+    public long percentile(double fraction){
+        int[] counts = new int[BUCKETS];//one snapshot, so that both passes see the same counts
+        long total = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            counts[i] = (int)COUNTS.getAcquire(this.counts, i);
+            total += counts[i];
+        }
+        if(total == 0){
+            return 0;
+        }
+        long max = this.max();
+        long rank = Math.max(1, (long)Math.ceil(fraction * total));
+        long seen = 0;
+        for(int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if(seen >= rank){
+                return Math.min(highestValueIn(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket a value is counted in.
+     *
+     * @param value	value between 0 and MAX_VALUE
+     * @return		bucket index
+     */
+    private static int bucketOf(long value){
+        if(value < SUB_COUNT){
+            return (int)value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1);
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    /**
+     * Returns the largest value counted in a bucket.
+     *
+     * @param bucket	bucket index
+     * @return			largest value of the bucket
+     */
+    private static long highestValueIn(int bucket){
+        if(bucket < SUB_COUNT){
+            return bucket;
+        }
+        int exponent = bucket / SUB_COUNT + SUB_BITS - 1;
+        long sub = bucket % SUB_COUNT;
+        long width = 1L << (exponent - SUB_BITS);
+        return ((SUB_COUNT + sub) << (exponent - SUB_BITS)) + width - 1;
+    }
+}
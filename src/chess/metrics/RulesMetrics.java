@@ -0,0 +1,243 @@
+package chess.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * RulesMetrics counts how a game uses the rules engine: how many moves Chess.canMove() looked at
+ * and rejected, and how long Chess.checkCheckStatus() and Chess.isCheckMate() took. Each game has
+ * its own instance, registered as the MBean "chess:type=GameRules,id=...,name=...", and the MBean
+ * "chess:type=Rules,name=all" shows the totals over all games, including finished ones.
+ * <p>
+ * Metrics are off unless the JVM is started with -Dchess.metrics=true. ENABLED is a static final
+ * constant, so when it is false the JIT removes the instrumentation in Chess completely (including
+ * the System.nanoTime() calls) and it can stay compiled in.
+ * <p>
+ * Every game only ever writes to its own counters and histograms, so games never contend with
+ * each other; the aggregate view adds them up when it is read.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class RulesMetrics implements RulesMetricsMBean, AutoCloseable {
+    /**
+     * Whether metrics are collected at all (system property chess.metrics).
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("chess.metrics");
+
+    /**
+     * Metrics of the games that are still registered.
+     */
+    private static final Set<RulesMetrics> LIVE = ConcurrentHashMap.newKeySet();
+    /**
+     * Totals of all games that were closed. Its monitor also guards moving a game from LIVE into it.
+     */
+    private static final RulesMetrics RETIRED = new RulesMetrics(null);
+    /**
+     * The aggregate view over LIVE and RETIRED.
+     */
+    private static final RulesMetrics ALL = new RulesMetrics(null);
+    /**
+     * Source of the id part of per-game MBean names.
+     */
+    private static final AtomicLong NEXT_ID = new AtomicLong(1);
+    private static boolean allRegistered = false;
+
+    private final LongAdder canMoveCalls = new LongAdder();
+    private final LongAdder canMoveRejected = new LongAdder();
+    private final LatencyHistogram checkStatus = new LatencyHistogram();
+    private final LatencyHistogram checkMate = new LatencyHistogram();
+    /**
+     * Name this instance is registered under, or null if it is not registered.
+     */
+    private final ObjectName objectName;
+
+    /**
+     * Constructor for RulesMetrics.
+     *
+     * @param objectName	MBean name, or null for the internal RETIRED and ALL instances
+     */
+    private RulesMetrics(ObjectName objectName){
+        this.objectName = objectName;
+    }
+
+    /**
+     * Creates the metrics of a new game and registers them with the platform MBean server.
+     * Should only be called when ENABLED is true.
+     *
+     * @param game	human-readable name of the game, e.g. the remote address of a session
+     * @return		the game's metrics; close() them when the game is over
+     */
+    public static RulesMetrics register(String game){
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try{
+            synchronized(RETIRED){
+                if(!allRegistered){
+                    server.registerMBean(ALL, new ObjectName("chess:type=Rules,name=all"));
+                    allRegistered = true;
+                }
+            }
+            RulesMetrics metrics = new RulesMetrics(new ObjectName("chess:type=GameRules,id="
+                + NEXT_ID.getAndIncrement() + ",name=" + ObjectName.quote(game)));
+            server.registerMBean(metrics, metrics.objectName);
+            LIVE.add(metrics);
+            return metrics;
+        }
+        catch(JMException e){
+            throw new IllegalStateException("Cannot register rules metrics", e);
+        }
+    }
+
+    /**
+     * Counts one Chess.canMove() call.
+     *
+     * @param legal	what canMove() returned
+     */
+    public void moveChecked(boolean legal){
+        this.canMoveCalls.increment();
+        if(!legal){
+            this.canMoveRejected.increment();
+        }
+    }
+
+    /**
+     * Records the duration of one Chess.checkCheckStatus() call.
+     *
+     * @param nanos	duration in nanoseconds
+     */
+    public void recordCheckStatus(long nanos){
+        this.checkStatus.record(nanos);
+    }
+
+    /**
+     * Records the duration of one Chess.isCheckMate() call.
+     *
+     * @param nanos	duration in nanoseconds
+     */
+    public void recordCheckMate(long nanos){
+        this.checkMate.record(nanos);
+    }
+
+    /**
+     * Unregisters the MBean of this game and adds its numbers to the totals of finished games.
+     */
+    public void close(){
+        synchronized(RETIRED){
+            if(!LIVE.remove(this)){
+                return;
+            }
+            RETIRED.canMoveCalls.add(this.canMoveCalls.sum());
+            RETIRED.canMoveRejected.add(this.canMoveRejected.sum());
+            RETIRED.checkStatus.add(this.checkStatus);
+            RETIRED.checkMate.add(this.checkMate);
+        }
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+        }
+        catch(JMException e){
+            //already unregistered by someone else; nothing left to clean up
+        }
+    }
+
+    /**
+     * Returns the value of a counter for this view: the game's own counter, or the sum over all
+     * games for the aggregate view.
+     *
+     * @param counter	which counter (0 for canMove calls, 1 for rejected moves)
+     * @return			counter value
+     */
+    private long counter(int counter){
+        if(this != ALL){
+            return (counter == 0 ? this.canMoveCalls : this.canMoveRejected).sum();
+        }
+        synchronized(RETIRED){
+            long rl = RETIRED.counter(counter);
+            for(RulesMetrics metrics : LIVE){
+                rl += metrics.counter(counter);
+            }
+            return rl;
+        }
+    }
+
+    /**
+     * Returns a histogram for this view: the game's own histogram, or a merged copy over all games
+     * for the aggregate view.
+     *
+     * @param checkMate	true for the isCheckMate() histogram, false for checkCheckStatus()
+     * @return			the histogram
+     */
+    private LatencyHistogram histogram(boolean checkMate){
+        if(this != ALL){
+            return checkMate ? this.checkMate : this.checkStatus;
+        }
+        LatencyHistogram rl = new LatencyHistogram();
+        synchronized(RETIRED){
+            rl.add(RETIRED.histogram(checkMate));
+            for(RulesMetrics metrics : LIVE){
+                rl.add(metrics.histogram(checkMate));
+            }
+        }
+        return rl;
+    }
+
+    public long getCanMoveCalls(){
+        return this.counter(0);
+    }
+
+    public long getCanMoveRejected(){
+        return this.counter(1);
+    }
+
+    public long getCheckStatusCalls(){
+        return this.histogram(false).count();
+    }
+
+    public double getCheckStatusMeanNanos(){
+        return this.histogram(false).mean();
+    }
+
+    public long getCheckStatusP50Nanos(){
+        return this.histogram(false).percentile(0.5);
+    }
+
+    public long getCheckStatusP99Nanos(){
+        return this.histogram(false).percentile(0.99);
+    }
+
+    public long getCheckStatusP999Nanos(){
+        return this.histogram(false).percentile(0.999);
+    }
+
+    public long getCheckStatusMaxNanos(){
+        return this.histogram(false).max();
+    }
+
+    public long getCheckMateCalls(){
+        return this.histogram(true).count();
+    }
+
+    public double getCheckMateMeanNanos(){
+        return this.histogram(true).mean();
+    }
+
+    public long getCheckMateP50Nanos(){
+        return this.histogram(true).percentile(0.5);
+    }
+
+    public long getCheckMateP99Nanos(){
+        return this.histogram(true).percentile(0.99);
+    }
+
+    public long getCheckMateP999Nanos(){
+        return this.histogram(true).percentile(0.999);
+    }
+
+    public long getCheckMateMaxNanos(){
+        return this.histogram(true).max();
+    }
+}
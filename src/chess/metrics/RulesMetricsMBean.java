@@ -0,0 +1,79 @@
+package chess.metrics;
+
+/**
+ * Management interface of RulesMetrics: what JMX clients (jconsole, VisualVM, a metrics agent)
+ * see for one game or for all games together. Durations are in nanoseconds.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public interface RulesMetricsMBean {
+    /**
+     * @return  number of moves given to Chess.canMove()
+     */
+    long getCanMoveCalls();
+
+    /**
+     * @return  number of moves Chess.canMove() rejected
+     */
+    long getCanMoveRejected();
+
+    /**
+     * @return  number of Chess.checkCheckStatus() calls
+     */
+    long getCheckStatusCalls();
+
+    /**
+     * @return  mean duration of Chess.checkCheckStatus()
+     */
+    double getCheckStatusMeanNanos();
+
+    /**
+     * @return  median duration of Chess.checkCheckStatus()
+     */
+    long getCheckStatusP50Nanos();
+
+    /**
+     * @return  99th percentile duration of Chess.checkCheckStatus()
+     */
+    long getCheckStatusP99Nanos();
+
+    /**
+     * @return  99.9th percentile duration of Chess.checkCheckStatus()
+     */
+    long getCheckStatusP999Nanos();
+
+    /**
+     * @return  longest duration of Chess.checkCheckStatus()
+     */
+    long getCheckStatusMaxNanos();
+
+    /**
+     * @return  number of Chess.isCheckMate() calls
+     */
+    long getCheckMateCalls();
+
+    /**
+     * @return  mean duration of Chess.isCheckMate()
+     */
+    double getCheckMateMeanNanos();
+
+    /**
+     * @return  median duration of Chess.isCheckMate()
+     */
+    long getCheckMateP50Nanos();
+
+    /**
+     * @return  99th percentile duration of Chess.isCheckMate()
+     */
+    long getCheckMateP99Nanos();
+
+    /**
+     * @return  99.9th percentile duration of Chess.isCheckMate()
+     */
+    long getCheckMateP999Nanos();
+
+    /**
+     * @return  longest duration of Chess.isCheckMate()
+     */
+    long getCheckMateMaxNanos();
+}
@@ -1,227 +1,81 @@
 package chess.piece;
 
+import chess.Move;
+import chess.PackedPosition;
 import chess.Piece;
-import java.util.ArrayList;
+import chess.Position;
 
 /**
  * King is a subclass extending chess.Piece. It represents King pieces in a chess game.
+ * There are only two instances, one per color, shared by every board; see Piece.of().
+ * Whether a King may still castle is kept in the Position's castling rights.
  * 
  * @author Seok Yim, Mae Khaled
  *
  */
 public class King extends Piece{
 
-	/**
-	 * Denotes whether this King piece has already made its first move or not
-	 */
-    public boolean hadFirstMove = false;
     /**
-     * Denotes whether this King piece is currently checked or not
-     */
-    public boolean isInChcek = false;
-
-    /**
-     * Constructor for King.
+     * Constructor for King. Use Piece.of() to get the shared instance instead.
      * 
-     * @param cr    current row index
-     * @param cc    current column index
      * @param color color of the King
      */
-    public King(int cr, int cc, char color){
-        super(cr,cc,color);
+    public King(char color){
+        super(PackedPosition.KING, color);
     }
 
     /**
-     * Checks whether a specific move for a Piece
-     * is valid. Assumes the move is not repeating the current Piece location.
-     * Assumes that er and ec are between 0 and 7, inclusive on both sides.
+     * Writes the legal moves of a King standing on the given square into out, including castling.
      * 
-     * @param er    		ending/final row index for this move
-     * @param ec    		ending/final column index for this move
-     * @param chessboard	Piece[][] chessboard
-     * @param turn_number	the number of turns passed since the start of game
-     * @return      		true if is a valid move, false otherwise
+     * @param position  the position the King is in
+     * @param from      square the King stands on
+     * @param out       move array (see chess.Move)
+     * @param n         number of moves already in out
+     * @return          number of moves in out afterwards
      */
-    public boolean isValidMove(int er, int ec, Piece[][] chessboard, int turn_number) {
-        boolean qualifies = false;
-        ArrayList<Integer[]> al = this.getAllPossibleMoves(chessboard,turn_number);
-        for(Integer[] I : al){
-            if(I[0] == er && I[1] == ec){
-                qualifies = true;
-                break;
-            }
-        }
-        if(!qualifies){
-            return false;
-        }
-        
-        boolean is_castling = false;
-        if(!this.canReach(er, ec, chessboard)){
-            is_castling = true;
-        }
-
-        if(!is_castling){
-            //checking whether the ending position has a piece and if so, whether that piece is killable
-            Piece ending_position = chessboard[er][ec];
-            if(ending_position != null){
-                if(this.color == ending_position.color){
-                    return false;
-                }
-            }
-            //assume we made the move and check whether its King is safe
-            //temporarily make the move and revert back later
-            int sr = this.currentLocation[0];
-            int sc = this.currentLocation[1];
-            Piece temp = chessboard[er][ec];
-            chessboard[er][ec] = this;
-            this.setCurrentLocation(er, ec);
-            chessboard[sr][sc] = null;
-
-            if(leavesKingChecked(chessboard, this.color)){
-                chessboard[sr][sc] = this;
-               chessboard[er][ec] = temp;
-               this.setCurrentLocation(sr, sc);
-                return false;
-            }
-            else{
-                chessboard[sr][sc] = this;
-                chessboard[er][ec] = temp;
-                this.setCurrentLocation(sr, sc);
-                return true;
-            }
-        }
-        else{
-            return true;
+    public int generateMoves(Position position, int from, int[] out, int n){
+        for(int to : KING_TARGETS[from]){
+            n = addIfLegal(position, from, to, out, n);
         }
+        return this.castlingMoves(position, from, out, n);
     }
 
     /**
-     * Moves Piece to a specific location. Assumes that the move to be made is valid (
-     * does no condition checking).
-     * 
-     * @param er    ending/final row index after move
-     * @param ec    ending/final column index after move
-     */
-    public void move(int er, int ec){
-        super.move(er,ec);
-        this.hadFirstMove = true; 
-    }
-    /**
-     * Determines whether a Piece can reach a specific location to kill an enemy
-     * if the enemy were to be there.
+     * Adds the castling moves of a King on its starting square. The King and the Rook must not have
+     * moved, the squares between them must be empty, and the King may not be in check, pass through
+     * an attacked square or land on one.
      * 
-     * @param er            ending row index
-     * @param ec            ending column index
-     * @param chessboard    Piece[][] chessboard
-     * @return				true if the piece can reach the specified location to possibly kill an enemy, false otherwise
+     * @param position  the position the King is in
+     * @param from      square the King stands on
+     * @param out       move array
+     * @param n         number of moves already in out
+     * @return          number of moves in out afterwards
      */
-    public boolean canReach(int er, int ec, Piece[][] chessboard){
-        //check if move is within the piece's capability
-        int row_diff = Math.abs(this.currentLocation[0] - er);
-        int col_diff = Math.abs(this.currentLocation[1] - ec);
-        if(!(row_diff <= 1 && col_diff <= 1)){
-            return false;
+    private int castlingMoves(Position position, int from, int[] out, int n){
+        int home = this.color == 'w' ? 60 : 4;
+        int king_side = this.color == 'w' ? PackedPosition.WHITE_KING_SIDE : PackedPosition.BLACK_KING_SIDE;
+        int queen_side = this.color == 'w' ? PackedPosition.WHITE_QUEEN_SIDE : PackedPosition.BLACK_QUEEN_SIDE;
+        if(from != home || (position.castling & (king_side | queen_side)) == 0){
+            return n;
         }
-        return true;
-    }
-    /**
-     * Returns all possible moves that a specific piece is capable of making.
-     * The returned possible moves might be blocked by other pieces (so they could be
-     * considered invalid), but they are ensured to be moves within the board.
-     * 
-     * @param chessboard	Piece[][] chessboard
-     * @param turn_number	the number of turns passed since the start of the game
-     * @return				the ArrayList of Integer[] of length 2 containing the row and column indices of the final location for the possible move
-     */
-    public ArrayList<Integer[]> getAllPossibleMoves(Piece[][] chessboard, int turn_number){
-        int sr, sc;
-        ArrayList<Integer[]> rl = new ArrayList<>();
-        
-        int[][] adders = new int[][]{{1,1},{1,0},{1,-1},{0,1},{0,-1},{-1,1},{-1,0},{-1,-1}};
-        for(int i = 0; i < adders.length; i++){
-            sr = this.currentLocation[0] + adders[i][0];
-            sc = this.currentLocation[1] + adders[i][1];
-            if(sr >= 0 && sr <= 7 && sc >= 0 && sc <= 7){
-                rl.add(new Integer[]{sr,sc});
-            }
+        char enemy = this.color == 'w' ? 'b' : 'w';
+        if(position.isAttacked(from, enemy)){
+            return n;//cannot castle out of check
         }
-        
-        if(!this.hadFirstMove && !this.isInChcek){//takes into consideration CASTLING
-            int[][] temp_arr = {{7,7},{7,0}};
-            if(this.color == 'b'){
-                temp_arr = new int[][]{{0,0},{0,7}};
-            }
-            for(int i = 0; i < temp_arr.length; i++){
-                Piece temp_rook = chessboard[temp_arr[i][0]][temp_arr[i][1]];
-                if(temp_rook != null  && temp_rook instanceof Rook){
-                    Rook real_rook = (Rook)temp_rook;
-                    if(!real_rook.hadFirstMove && this.blank_inbetween(this, real_rook, chessboard)){
-                        //when attempting to castle, you cannot pass through check
-                        int add_amount = 1;
-                        if(this.currentLocation[1] > real_rook.currentLocation[1]){
-                            add_amount = -1;
-                        }
-                        int or = this.currentLocation[0];
-                        int oc = this.currentLocation[1];
-                        sr = or;
-                        sc = oc;
-                        int counter = 0;
-                        
-                        boolean passes_through_check = false;
-                        while(counter < 2){
-                            chessboard[sr][sc] = null;
-                            sc += add_amount;
-                            this.setCurrentLocation(sr, sc);
-                            chessboard[sr][sc] = this;
-                            if(leavesKingChecked(chessboard, this.color)){
-                                passes_through_check = true;
-                                break;
-                            }
-                            counter++;
-                        }
-
-                        if(!passes_through_check){
-                            rl.add(new Integer[]{sr,sc});
-                        }
-                        this.setCurrentLocation(or, oc);
-                        chessboard[sr][sc] = null;
-                        chessboard[or][oc] = this;
-                    }
-                }
-            }
+        int rook = PackedPosition.ROOK | (this.code & PackedPosition.BLACK);
+        if((position.castling & king_side) != 0 && position.pieceAt(home + 3) == rook
+        && position.pieceAt(home + 1) == 0 && position.pieceAt(home + 2) == 0
+        && position.isSafeAfter(from, home + 1, -1) && position.isSafeAfter(from, home + 2, -1)){
+            out[n++] = Move.of(from, home + 2);
         }
-        return rl;
-    }
-    
-    /**
-     * Checks whether there are no Pieces in between two Pieces.
-     * Assumes that the two Pieces given are in the same row.
-     * 
-     * @param a				Piece 1
-     * @param b				Piece 2
-     * @param chessboard	Piece[][] chessboard
-     * @return				true if no Pieces are in between Piece 1 and 2, false otherwise
-     */
-    private boolean blank_inbetween(Piece a, Piece b, Piece[][] chessboard){//Assumes a and b share the same row index
-        int row = a.currentLocation[0];
-
-        int lower, higher;
-        if(a.currentLocation[1] < b.currentLocation[1]){
-            lower = a.currentLocation[1];
-            higher = b.currentLocation[1];
+        if((position.castling & queen_side) != 0 && position.pieceAt(home - 4) == rook
+        && position.pieceAt(home - 1) == 0 && position.pieceAt(home - 2) == 0 && position.pieceAt(home - 3) == 0
+        && position.isSafeAfter(from, home - 1, -1) && position.isSafeAfter(from, home - 2, -1)){
+            out[n++] = Move.of(from, home - 2);
         }
-        else{
-            lower = b.currentLocation[1];
-            higher = a.currentLocation[1];
-        }
-        
-        for(int i = lower + 1; i < higher; i++){
-            if(chessboard[row][i] != null){
-                return false;
-            }
-        }
-        return true;
+        return n;
     }
+
     /**
      * Overrides the toString method from its superclass.
      * 
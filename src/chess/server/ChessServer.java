@@ -0,0 +1,166 @@
+package chess.server;
+
+import chess.journal.MoveJournal;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ChessServer hosts many concurrent chess games in one JVM. Every accepted connection gets its
+ * own GameSession, running on its own (virtual, when available) thread. While running, the server
+ * periodically prints how many sessions are live and how much heap they take up per game.
+ * <p>
+ * With a journal, every session's game is journaled under its own game id, so that games cut off
+ * by a crash or a dropped connection can be resumed from the console (Chess with the same file).
+ * 
+ * @author Seok Yim, Mae Khaled
+ */
+public class ChessServer {
+    /**
+     * Port the server listens on.
+     */
+    public int port;
+    /**
+     * Number of sessions that are currently connected.
+     */
+    public AtomicInteger liveSessions = new AtomicInteger();
+    /**
+     * Number of sessions that were ever accepted.
+     */
+    public AtomicInteger totalSessions = new AtomicInteger();
+    /**
+     * Used heap (in bytes) measured right before the server started accepting connections.
+     */
+    public long baselineHeap;
+    /**
+     * Whether to run a full GC before measuring heap for the stats report.
+     */
+    public boolean gcBeforeStats = false;
+    /**
+     * Journal shared by all sessions, or null if games are not journaled.
+     */
+    public MoveJournal journal;
+
+    /**
+     * Constructor for ChessServer.
+     * 
+     * @param port	port to listen on
+     */
+    public ChessServer(int port){
+        this.port = port;
+    }
+
+    /**
+     * The main method. Usage: ChessServer [--journal=file] [port] [statsIntervalSeconds] [gc]
+     * <p>
+     * Passing "gc" as the third argument runs a full GC before each stats report, so that the
+     * per-game figure reflects retained memory of idle games rather than garbage. With --journal
+     * every game is journaled to the given file.
+     * 
+     * @param args  the command line arguments
+     * @throws IOException	if the server socket or the journal file cannot be opened
+     */
+    public static void main(String[] args) throws IOException{
+        String journal_file = null;
+        if(args.length > 0 && args[0].startsWith("--journal=")){
+            journal_file = args[0].substring(10);
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int stats_interval = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        ChessServer server = new ChessServer(port);
+        server.gcBeforeStats = args.length > 2 && args[2].equals("gc");
+        if(journal_file == null){
+            server.serve(stats_interval);
+            return;
+        }
+        try(MoveJournal journal = MoveJournal.open(Paths.get(journal_file))){
+            server.journal = journal;
+            server.serve(stats_interval);
+        }
+    }
+
+    /**
+     * Accepts connections forever, starting a GameSession for each one.
+     * 
+     * @param statsIntervalSeconds	how often to print session statistics, 0 to never print them
+     * @throws IOException			if the server socket cannot be opened
+     */
+    public void serve(int statsIntervalSeconds) throws IOException{
+        if(this.gcBeforeStats){
+            System.gc();
+        }
+        this.baselineHeap = usedHeap();
+        System.out.println("Listening on port " + this.port + (Threads.virtualThreadsAvailable()
+            ? " (virtual threads)" : " (platform threads; virtual threads need JDK 21+)"));
+        if(statsIntervalSeconds > 0){
+            Thread reporter = new Thread(() -> this.reportStats(statsIntervalSeconds), "stats");
+            reporter.setDaemon(true);
+            reporter.start();
+        }
+
+        ExecutorService executor = Threads.newPerTaskExecutor();
+        try(ServerSocket server_socket = new ServerSocket(this.port, 16384)){
+            while(true){
+                Socket socket = server_socket.accept();
+                executor.execute(new GameSession(socket, this));
+            }
+        }
+        finally{
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Called by a GameSession when it starts serving its client.
+     */
+    public void sessionStarted(){
+        this.liveSessions.incrementAndGet();
+        this.totalSessions.incrementAndGet();
+    }
+
+    /**
+     * Called by a GameSession once its client is gone.
+     */
+    public void sessionEnded(){
+        this.liveSessions.decrementAndGet();
+    }
+
+    /**
+     * Prints live session count and heap used per live session every few seconds.
+     * 
+     * @param intervalSeconds	seconds between two reports
+     */
+    private void reportStats(int intervalSeconds){
+        while(true){
+            try{
+                Thread.sleep(intervalSeconds * 1000L);
+            }
+            catch(InterruptedException e){
+                return;
+            }
+            if(this.gcBeforeStats){
+                System.gc();
+            }
+            int live = this.liveSessions.get();
+            long heap = usedHeap() - this.baselineHeap;
+            String per_game = live == 0 ? "-" : (heap / live) + " bytes";
+            System.out.println("sessions live=" + live + " total=" + this.totalSessions.get()
+                + " heap=" + (heap >> 10) + " KiB per-game=" + per_game);
+        }
+    }
+
+    /**
+     * Returns currently used heap in bytes.
+     * 
+     * @return  used heap in bytes
+     */
+    private static long usedHeap(){
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
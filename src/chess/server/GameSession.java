@@ -0,0 +1,143 @@
+package chess.server;
+
+import chess.Chess;
+import chess.metrics.RulesMetrics;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+/**
+ * GameSession is one chess game served over one socket connection. It simply runs
+ * Chess.initiateGame() with the connection as its input and output, so a remote player types
+ * exactly what a console player would ("e2 e4", "resign", "draw?", "g7 g8 N", ...).
+ * <p>
+ * Chess.playGame() assumes well-formed input, which a console player can be trusted with but a
+ * remote one cannot: lines that are not of that form (see isWellFormed()) are answered with
+ * "Illegal move, try again" before they reach the game.
+ * 
+ * @author Seok Yim, Mae Khaled
+ */
+public class GameSession implements Runnable {
+    /**
+     * Connection of the player(s) this session is serving.
+     */
+    public Socket socket;
+    /**
+     * The server that started this session; notified when the session ends.
+     */
+    public ChessServer server;
+    /**
+     * The game being played in this session.
+     */
+    public Chess game;
+
+    /**
+     * Constructor for GameSession.
+     * 
+     * @param socket	accepted client connection
+     * @param server	server that owns the session
+     */
+    public GameSession(Socket socket, ChessServer server){
+        this.socket = socket;
+        this.server = server;
+        this.game = new SessionGame();
+        if(server.journal != null){
+            this.game.journal = server.journal;
+            this.game.gameId = server.journal.nextGameId();
+        }
+    }
+
+    /**
+     * Plays the game until it ends or the client disconnects, then closes the connection.
+     */
+    public void run(){
+        this.server.sessionStarted();
+        try(Socket s = this.socket){
+            s.setTcpNoDelay(true);
+            if(RulesMetrics.ENABLED){
+                this.game.metrics = RulesMetrics.register(String.valueOf(s.getRemoteSocketAddress()));
+            }
+            this.game.out = new PrintStream(new BufferedOutputStream(s.getOutputStream()), false, StandardCharsets.UTF_8);
+            Scanner scanner = new Scanner(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            this.game.initiateGame(scanner);
+        }
+        catch(NoSuchElementException | IOException e){
+            //client went away in the middle of the game; nothing to clean up besides the socket
+        }
+        finally{
+            if(this.game.metrics != null){
+                this.game.metrics.close();
+            }
+            this.server.sessionEnded();
+        }
+    }
+
+    /**
+     * Checks that a line has the form Chess.playGame() expects: a single word ("resign", "draw",
+     * anything else is simply an illegal move), or two squares from a1 to h8 followed by "draw?",
+     * a promotion type (Q, R, B or N), or a promotion type and "draw?".
+     * 
+     * @param line	line typed by the remote player, trimmed
+     * @return		true if the line can be given to the game, false otherwise
+     */
+    public static boolean isWellFormed(String line){
+        String[] elements = line.split(" ");
+        if(elements.length == 1){
+            return true;
+        }
+        if(elements.length > 4 || !isSquare(elements[0]) || !isSquare(elements[1])){
+            return false;
+        }
+        if(elements.length == 3){
+            return elements[2].equals("draw?") || isPromotionType(elements[2]);
+        }
+        if(elements.length == 4){
+            return isPromotionType(elements[2]) && elements[3].equals("draw?");
+        }
+        return true;
+    }
+
+    private static boolean isSquare(String s){
+        return s.length() == 2 && s.charAt(0) >= 'a' && s.charAt(0) <= 'h' && s.charAt(1) >= '1' && s.charAt(1) <= '8';
+    }
+
+    private static boolean isPromotionType(String s){
+        return s.equals("Q") || s.equals("R") || s.equals("B") || s.equals("N");
+    }
+
+    /**
+     * SessionGame is the Chess of a session: it only hands well-formed lines to playGame(), and a
+     * promotion type only with a move of a Pawn to the last rank.
+     */
+    private static final class SessionGame extends Chess {
+        @Override
+        public String promptInput(Scanner scanner){
+            String line = super.promptInput(scanner).trim();
+            while(!isWellFormed(line) || !this.promotes(line)){
+                this.out.print("Illegal move, try again");
+                line = super.promptInput(scanner).trim();
+            }
+            return line;
+        }
+
+        /**
+         * Checks that a promotion type, if the line has one, comes with a promoting move.
+         * 
+         * @param line	well-formed line
+         * @return		false if the line names a promotion type for a move that does not promote
+         */
+        private boolean promotes(String line){
+            String[] elements = line.split(" ");
+            if(elements.length < 3 || elements[2].equals("draw?")){
+                return true;
+            }
+            return this.isValidPromotion(8 - (elements[0].charAt(1) - '0'), elements[0].charAt(0) - 'a',
+                8 - (elements[1].charAt(1) - '0'), elements[1].charAt(0) - 'a');
+        }
+    }
+}
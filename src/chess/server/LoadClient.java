@@ -0,0 +1,224 @@
+package chess.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LoadClient is a load generator for ChessServer. It opens many concurrent sessions, plays a fixed
+ * script of moves in each (both colors from the same connection), and reports move latency
+ * percentiles. Between the moves and resigning, every session sends one malformed line (MALFORMED),
+ * which the server must reject without dropping the game, and stays connected and idle for a while
+ * so the server's per-game memory report can be read off at full session count.
+ * 
+ * @author Seok Yim, Mae Khaled
+ */
+public class LoadClient {
+    /**
+     * Moves played by every session: 26 moves of the Breyer Ruy Lopez. No position occurs twice and
+     * the game never ends, so a session is one game on one connection; movesPerSession is at most
+     * its length.
+     */
+    public static final String[] SCRIPT = {
+        "e2 e4", "e7 e5", "g1 f3", "b8 c6", "f1 b5", "a7 a6", "b5 a4", "g8 f6", "e1 g1", "f8 e7",
+        "f1 e1", "b7 b5", "a4 b3", "d7 d6", "c2 c3", "e8 g8", "h2 h3", "c6 b8", "d2 d4", "b8 d7",
+        "b1 d2", "c8 b7", "b3 c2", "f8 e8", "d2 f1", "e7 f8", "f1 g3", "g7 g6", "a2 a4", "c7 c5",
+        "d4 d5", "c5 c4", "c1 g5", "h7 h6", "g5 e3", "d7 c5", "d1 d2", "h6 h5", "e3 g5", "f8 e7",
+        "a1 a3", "f6 d7", "g5 h6", "d7 b6", "b2 b4", "b6 d7", "f3 h2", "e7 f8", "h6 g5", "f8 e7",
+        "f2 f4", "f7 f6",
+    };
+    /**
+     * Line sent after the scripted moves: too many terms, and squares off the board.
+     */
+    public static final String MALFORMED = "e9 z2 x y z";
+    /**
+     * The end of the prompt that ChessServer prints when it waits for a move.
+     */
+    public static final String PROMPT = "'s move: ";
+
+    /**
+     * The main method. Usage: LoadClient [host] [port] [sessions] [movesPerSession] [idleSeconds]
+     * 
+     * @param args	the command line arguments
+     * @throws InterruptedException	if interrupted while waiting for the sessions
+     */
+    public static void main(String[] args) throws InterruptedException{
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        int sessions = args.length > 2 ? Integer.parseInt(args[2]) : 10000;
+        int moves = Math.min(args.length > 3 ? Integer.parseInt(args[3]) : 40, SCRIPT.length);
+        int idle_seconds = args.length > 4 ? Integer.parseInt(args[4]) : 15;
+
+        long[][] latencies = new long[sessions][];
+        CountDownLatch connected = new CountDownLatch(sessions);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Threads.newPerTaskExecutor();
+        long started = System.nanoTime();
+        for(int i = 0; i < sessions; i++){
+            final int id = i;
+            executor.execute(() -> latencies[id] = runSession(host, port, moves, idle_seconds, connected, start));
+        }
+        connected.await();
+        System.out.println(sessions + " sessions connected in " + millisSince(started) + " ms");
+        long play_started = System.nanoTime();
+        start.countDown();
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+
+        report(latencies, millisSince(play_started));
+    }
+
+    /**
+     * Plays one session: connects, waits for everyone else to connect, plays the scripted moves,
+     * sends MALFORMED, idles, then resigns. If the server ends a game early a fresh connection is opened.
+     * 
+     * @param host			server host
+     * @param port			server port
+     * @param moves			number of moves to play
+     * @param idleSeconds	seconds to stay connected without playing after the moves
+     * @param connected		counted down once this session is connected
+     * @param start			released when all sessions are connected
+     * @return				latency of every move in nanoseconds (only the moves that completed)
+     */
+    private static long[] runSession(String host, int port, int moves, int idleSeconds,
+    CountDownLatch connected, CountDownLatch start){
+        long[] rl = new long[moves];
+        int played = 0;
+        boolean counted = false;
+        try{
+            while(played < moves){
+                try(Socket socket = new Socket(host, port)){
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+                    boolean alive = readUntilPrompt(in);
+                    if(!counted){
+                        counted = true;
+                        connected.countDown();
+                        start.await();
+                    }
+                    for(int k = 0; alive && played < moves; k++){
+                        long before = System.nanoTime();
+                        out.write(SCRIPT[k] + "\n");
+                        out.flush();
+                        alive = readUntilPrompt(in);
+                        if(alive){
+                            rl[played++] = System.nanoTime() - before;
+                        }
+                    }
+                    if(alive){
+                        out.write(MALFORMED + "\n");
+                        out.flush();
+                        alive = readUntilPrompt(in);
+                        if(!alive){
+                            System.err.println("session dropped after a malformed line");
+                        }
+                    }
+                    if(alive){
+                        Thread.sleep(idleSeconds * 1000L);
+                        out.write("resign\n");
+                        out.flush();
+                        while(in.read() != -1){
+                            //drain the final board and result
+                        }
+                    }
+                }
+            }
+        }
+        catch(IOException | InterruptedException e){
+            System.err.println("session failed: " + e);
+        }
+        finally{
+            if(!counted){
+                connected.countDown();
+            }
+        }
+        return Arrays.copyOf(rl, played);
+    }
+
+    /**
+     * Reads server output until the next move prompt.
+     * 
+     * @param in	reader over the connection
+     * @return		true if a prompt was read, false if the server closed the connection
+     * @throws IOException	if reading fails
+     */
+    private static boolean readUntilPrompt(BufferedReader in) throws IOException{
+        int matched = 0;
+        int c;
+        while((c = in.read()) != -1){
+            if(c == PROMPT.charAt(matched)){
+                matched++;
+                if(matched == PROMPT.length()){
+                    return true;
+                }
+            }
+            else{
+                matched = c == PROMPT.charAt(0) ? 1 : 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Prints move count, throughput and latency percentiles.
+     * 
+     * @param latencies	per-session move latencies in nanoseconds
+     * @param millis	wall clock time spent playing
+     */
+    private static void report(long[][] latencies, long millis){
+        ArrayList<long[]> finished = new ArrayList<>();
+        int total = 0;
+        for(long[] l : latencies){
+            if(l != null){
+                finished.add(l);
+                total += l.length;
+            }
+        }
+        long[] all = new long[total];
+        int pos = 0;
+        for(long[] l : finished){
+            System.arraycopy(l, 0, all, pos, l.length);
+            pos += l.length;
+        }
+        Arrays.sort(all);
+        System.out.println(total + " moves in " + millis + " ms (including idle time)");
+        if(total == 0){
+            return;
+        }
+        System.out.println("latency p50=" + micros(all, 0.50) + "us p90=" + micros(all, 0.90)
+            + "us p99=" + micros(all, 0.99) + "us p99.9=" + micros(all, 0.999)
+            + "us max=" + (all[total - 1] / 1000) + "us");
+    }
+
+    /**
+     * Returns the given percentile of a sorted array of nanosecond values, in microseconds.
+     * 
+     * @param sorted		sorted latencies in nanoseconds
+     * @param percentile	percentile between 0 and 1
+     * @return				latency at that percentile in microseconds
+     */
+    private static long micros(long[] sorted, double percentile){
+        int index = (int)Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1000;
+    }
+
+    /**
+     * Returns milliseconds passed since the given System.nanoTime() value.
+     * 
+     * @param start	earlier System.nanoTime() value
+     * @return		milliseconds passed since then
+     */
+    private static long millisSince(long start){
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,50 @@
+package chess.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads hands out the executor that every connection (server side) and every simulated player
+ * (client side) runs on. On a JDK with virtual threads this is a virtual-thread-per-task executor,
+ * so a blocked Scanner.nextLine() costs a few hundred bytes of stack instead of a platform thread.
+ * On older JDKs it falls back to a cached pool of platform threads.
+ * 
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Threads {
+
+    private Threads(){
+    }
+
+    /**
+     * Creates a new executor that starts one thread per submitted task.
+     * 
+     * @return  virtual-thread-per-task executor when available, cached thread pool otherwise
+     */
+    public static ExecutorService newPerTaskExecutor(){
+        try{
+            //looked up reflectively so the sources still compile on JDKs without Loom
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)factory.invoke(null);
+        }
+        catch(ReflectiveOperationException e){
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Tells whether newPerTaskExecutor() hands out virtual threads on this JVM.
+     * 
+     * @return  true if virtual threads are available, false otherwise
+     */
+    public static boolean virtualThreadsAvailable(){
+        try{
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch(NoSuchMethodException e){
+            return false;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package chess.tournament;
+
+import chess.Move;
+import chess.Position;
+import chess.San;
+import chess.engine.Engine;
+import chess.engine.EngineConfig;
+import chess.engine.Search;
+import chess.engine.SearchResult;
+import chess.engine.TimeManager;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * EpdRunner runs a test suite of EPD positions, like WAC or the STS, against one engine setup.
+ * A position is solved when the engine's move is one of its "bm" (best move) operands and none of
+ * its "am" (avoid move) operands. For every position it reports the result, the time and nodes the
+ * search took, the nodes per second, and the time to solution: when the alpha-beta Search found
+ * the solution at the depth from which it never changed its mind again.
+ * <p>
+ * Positions are searched in parallel, each worker with its own engine, so a suite of a thousand
+ * positions takes a fraction of the time. Besides the report, a tab-separated summary with one line
+ * per position in suite order and a totals line can be written; runs of two builds are compared by
+ * diffing their summaries.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class EpdRunner {
+    /**
+     * One position of the suite and, once searched, what the engine did with it.
+     */
+    private static final class Entry {
+        String id;
+        Position position;
+        String[] best;
+        String[] avoid;
+        int move = Move.NONE;
+        boolean solved;
+        int depth;
+        long nodes;
+        long nanos;
+        /**
+         * Time and nodes until the solution was found for good, -1 if it was not.
+         */
+        long solveNanos = -1;
+        long solveNodes = -1;
+    }
+
+    private final List<Entry> entries;
+    private final EngineConfig config;
+    private final AtomicInteger nextEntry = new AtomicInteger();
+    private final PrintStream out = System.out;
+
+    /**
+     * Number of worker threads.
+     */
+    public int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Search time per position in milliseconds, 0 to search to the depth and node limits of the
+     * engine setup instead.
+     */
+    public long moveTime = 0;
+
+    /**
+     * Constructor for EpdRunner.
+     *
+     * @param file		path of the EPD suite
+     * @param config	engine setup to test
+     * @throws IOException	if the suite cannot be read or has a line without a bm or am operation
+     */
+    public EpdRunner(String file, EngineConfig config) throws IOException{
+        this.entries = readSuite(file);
+        this.config = config;
+    }
+
+    /**
+     * Reads an EPD suite: four FEN fields followed by operations, e.g.
+     * "2rr3k/pp3pp1/1nnqbN1p/3pN3/2pP4/2P3Q1/PPB4P/R4RK1 w - - bm Qg6; id \"WAC.001\";".
+     *
+     * @param file	path of the suite
+     * @return		its positions, in file order
+     * @throws IOException	if the file cannot be read or a line is not a test position
+     */
+    private static List<Entry> readSuite(String file) throws IOException{
+        List<Entry> rl = new ArrayList<>();
+        for(String line : Files.readAllLines(Paths.get(file))){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] fields = line.split("\\s+", 5);
+            if(fields.length < 5){
+                throw new IOException("Not an EPD test position: " + line);
+            }
+            Entry entry = new Entry();
+            entry.position = Position.fromFen(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]);
+            entry.id = "#" + (rl.size() + 1);
+            entry.best = new String[0];
+            entry.avoid = new String[0];
+            for(String operation : fields[4].split(";")){
+                String[] op = operation.trim().split("\\s+", 2);
+                if(op.length < 2){
+                    continue;
+                }
+                String operands = op[1].replace("\"", "").trim();
+                switch(op[0]){
+                    case "bm":
+                        entry.best = operands.split("\\s+");
+                        break;
+                    case "am":
+                        entry.avoid = operands.split("\\s+");
+                        break;
+                    case "id":
+                        entry.id = operands;
+                        break;
+                    default:
+                        break;//other operations (c0, acd, ...) are not needed
+                }
+            }
+            if(entry.best.length == 0 && entry.avoid.length == 0){
+                throw new IOException("No bm or am operation: " + line);
+            }
+            rl.add(entry);
+        }
+        if(rl.isEmpty()){
+            throw new IOException("No positions in " + file);
+        }
+        return rl;
+    }
+
+    /**
+     * Searches all positions and prints the report.
+     *
+     * @param summaryFile	path of the tab-separated summary to write, or null for none
+     * @return				number of positions solved
+     * @throws IOException			if the summary cannot be written
+     * @throws InterruptedException	if interrupted while waiting for the workers
+     */
+    public int run(String summaryFile) throws IOException, InterruptedException{
+        this.out.printf("%s on %d positions, %d threads, %s%n", this.config.name, this.entries.size(), this.threads,
+            this.moveTime > 0 ? this.moveTime + " ms per position" : "depth " + this.config.depth
+            + (this.config.nodes > 0 ? ", " + this.config.nodes + " nodes" : "") + " per position");
+        long start = System.nanoTime();
+        Thread[] workers = new Thread[Math.max(1, this.threads)];
+        for(int i = 0; i < workers.length; i++){
+            workers[i] = new Thread(this::searchEntries, "epd-" + i);
+            workers[i].start();
+        }
+        for(Thread worker : workers){
+            worker.join();
+        }
+        long wall = System.nanoTime() - start;
+        int solved = 0;
+        long nodes = 0, nanos = 0;
+        for(Entry entry : this.entries){
+            solved += entry.solved ? 1 : 0;
+            nodes += entry.nodes;
+            nanos += entry.nanos;
+        }
+        this.out.printf("Solved %d of %d, %d nodes in %.1f s of search (%.1f s wall clock), %d nps%n", solved,
+            this.entries.size(), nodes, nanos / 1e9, wall / 1e9, nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos);
+        if(summaryFile != null){
+            try(PrintWriter summary = new PrintWriter(Files.newBufferedWriter(Paths.get(summaryFile)))){
+                summary.println("id\tresult\tmove\texpected\tdepth\tnodes\tms\tnps\tsolve_ms\tsolve_nodes");
+                for(Entry entry : this.entries){
+                    summary.println(entry.id + "\t" + (entry.solved ? "solved" : "failed") + "\t" + moveName(entry.move)
+                        + "\t" + expected(entry) + "\t" + entry.depth + "\t" + entry.nodes + "\t" + entry.nanos / 1_000_000
+                        + "\t" + nodesPerSecond(entry.nodes, entry.nanos) + "\t"
+                        + (entry.solveNanos < 0 ? -1 : entry.solveNanos / 1_000_000) + "\t" + entry.solveNodes);
+                }
+                summary.println("total\t" + solved + "/" + this.entries.size() + "\t\t\t\t" + nodes + "\t"
+                    + nanos / 1_000_000 + "\t" + nodesPerSecond(nodes, nanos) + "\t\t");
+            }
+        }
+        return solved;
+    }
+
+    /**
+     * Body of one worker thread: searches positions until there are none left.
+     */
+    private void searchEntries(){
+        Engine engine = this.config.newEngine();
+        while(true){
+            int index = this.nextEntry.getAndIncrement();
+            if(index >= this.entries.size()){
+                break;
+            }
+            Entry entry = this.entries.get(index);
+            engine.newGame();
+            TimeManager time = this.moveTime > 0 ? TimeManager.forClock(this.moveTime, 0, 1) : null;
+            SearchResult result;
+            if(engine instanceof Search){
+                result = ((Search)engine).search(entry.position, null, this.moveTime > 0 ? Search.MAX_PLY : this.config.depth,
+                    this.moveTime > 0 ? 0 : this.config.nodes, time, lines -> {
+                        //the solution counts from the first depth of an unbroken run of solving depths
+                        if(!this.solves(entry, lines[0].bestMove)){
+                            entry.solveNanos = -1;
+                            entry.solveNodes = -1;
+                        }
+                        else if(entry.solveNanos < 0){
+                            entry.solveNanos = lines[0].nanos;
+                            entry.solveNodes = lines[0].nodes;
+                        }
+                    });
+            }
+            else{
+                result = time != null ? engine.search(entry.position, null, time)
+                    : engine.search(entry.position, null, this.config.depth, this.config.nodes);
+            }
+            entry.move = result.bestMove;
+            entry.solved = this.solves(entry, result.bestMove);
+            entry.depth = result.depth;
+            entry.nodes = result.nodes;
+            entry.nanos = result.nanos;
+            if(!entry.solved){
+                entry.solveNanos = -1;
+                entry.solveNodes = -1;
+            }
+            else if(entry.solveNanos < 0){//engines without iterations solve when they finish
+                entry.solveNanos = result.nanos;
+                entry.solveNodes = result.nodes;
+            }
+            this.report(entry);
+        }
+    }
+
+    /**
+     * Prints the result of one position.
+     *
+     * @param entry	the searched position
+     */
+    private synchronized void report(Entry entry){
+        this.out.printf("%-12s %-6s %-8s expected %-12s depth %2d nodes %10d time %7d ms nps %8d to solution %s%n", entry.id,
+            entry.solved ? "solved" : "failed", moveName(entry.move), expected(entry), entry.depth, entry.nodes,
+            entry.nanos / 1_000_000, nodesPerSecond(entry.nodes, entry.nanos),
+            entry.solveNanos < 0 ? "-" : entry.solveNanos / 1_000_000 + " ms " + entry.solveNodes + " nodes");
+        this.out.flush();
+    }
+
+    /**
+     * Checks a move against the bm and am operations of a position.
+     *
+     * @param entry	the position
+     * @param move	move of the engine
+     * @return		true if the move is a best move and not one to avoid, false otherwise
+     */
+    private boolean solves(Entry entry, int move){
+        if(move == Move.NONE){
+            return false;
+        }
+        for(String avoid : entry.avoid){
+            if(San.parse(entry.position, avoid) == move){
+                return false;
+            }
+        }
+        if(entry.best.length == 0){
+            return true;
+        }
+        for(String best : entry.best){
+            if(San.parse(entry.position, best) == move){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a move in coordinate notation, e.g. "e7e8q", or "-" for none.
+     *
+     * @param move	packed move
+     * @return		its name
+     */
+    private static String moveName(int move){
+        return move == Move.NONE ? "-" : Move.toString(move).replace(" ", "").toLowerCase();
+    }
+
+    /**
+     * Returns the expected moves of a position as written in the suite, e.g. "Qg6" or "!Bxh7".
+     *
+     * @param entry	the position
+     * @return		bm operands, then am operands each prefixed with "!"
+     */
+    private static String expected(Entry entry){
+        StringBuilder sb = new StringBuilder(String.join(",", entry.best));
+        for(String avoid : entry.avoid){
+            sb.append(sb.length() > 0 ? "," : "").append('!').append(avoid);
+        }
+        return sb.toString();
+    }
+
+    private static long nodesPerSecond(long nodes, long nanos){
+        return nanos == 0 ? 0 : nodes * 1_000_000_000L / nanos;
+    }
+
+    /**
+     * Runs a suite from the command line.
+     *
+     * @param args	suite file, engine setup (see EngineConfig), then options: threads=N, movetime=ms and summary=file
+     * @throws IOException			if the suite cannot be read or the summary cannot be written
+     * @throws InterruptedException	if interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        if(args.length < 2){
+            System.err.println("Usage: EpdRunner suiteFile engine [threads=N] [movetime=ms] [summary=file]");
+            System.exit(2);
+        }
+        EpdRunner runner = new EpdRunner(args[0], new EngineConfig(args[1]));
+        String summary = null;
+        for(int i = 2; i < args.length; i++){
+            String[] kv = args[i].split("=", 2);
+            switch(kv[0]){
+                case "threads":
+                    runner.threads = Integer.parseInt(kv[1]);
+                    break;
+                case "movetime":
+                    runner.moveTime = Long.parseLong(kv[1]);
+                    break;
+                case "summary":
+                    summary = kv[1];
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        runner.run(summary);
+    }
+}
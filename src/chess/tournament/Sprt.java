@@ -0,0 +1,147 @@
+package chess.tournament;
+
+/**
+ * Sprt is a sequential probability ratio test between two Elo hypotheses: H0 "the first engine is
+ * elo0 stronger" and H1 "it is elo1 stronger". After every game the log-likelihood ratio (LLR) of
+ * the results so far is compared to two bounds derived from the accepted error rates; as soon as
+ * it leaves the interval one hypothesis is accepted and the match can stop. A clear difference is
+ * thus decided after few games, and only close matches run long.
+ * <p>
+ * The LLR uses the usual normal approximation on the game scores (wins, draws and losses count 1,
+ * 0.5 and 0), the same "generalized SPRT" that engine testing frameworks use.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public final class Sprt {
+    /**
+     * Result of decide() while the test goes on.
+     */
+    public static final int CONTINUE = 0;
+    /**
+     * Result of decide() once H0 is accepted.
+     */
+    public static final int ACCEPT_H0 = -1;
+    /**
+     * Result of decide() once H1 is accepted.
+     */
+    public static final int ACCEPT_H1 = 1;
+
+    /**
+     * Elo difference of H0.
+     */
+    public final double elo0;
+    /**
+     * Elo difference of H1.
+     */
+    public final double elo1;
+    /**
+     * LLR at or below which H0 is accepted.
+     */
+    public final double lowerBound;
+    /**
+     * LLR at or above which H1 is accepted.
+     */
+    public final double upperBound;
+
+    /**
+     * Constructor for Sprt.
+     *
+     * @param elo0	Elo difference of H0
+     * @param elo1	Elo difference of H1 (larger than elo0)
+     * @param alpha	probability of accepting H1 when H0 is true
+     * @param beta	probability of accepting H0 when H1 is true
+     */
+    public Sprt(double elo0, double elo1, double alpha, double beta){
+        this.elo0 = elo0;
+        this.elo1 = elo1;
+        this.lowerBound = Math.log(beta / (1 - alpha));
+        this.upperBound = Math.log((1 - beta) / alpha);
+    }
+
+    /**
+     * Returns the log-likelihood ratio of H1 against H0 for the given results.
+     *
+     * @param wins		games won by the first engine
+     * @param draws		games drawn
+     * @param losses	games lost by the first engine
+     * @return			LLR, 0 while it cannot be computed yet (no games, or all results equal)
+     */
+    public double llr(long wins, long draws, long losses){
+        long n = wins + draws + losses;
+        if(n == 0){
+            return 0;
+        }
+        double score = (wins + draws * 0.5) / n;
+        double variance = (wins * sq(1 - score) + draws * sq(0.5 - score) + losses * sq(score)) / n;
+        if(variance == 0){
+            return 0;
+        }
+        double s0 = expectedScore(this.elo0);
+        double s1 = expectedScore(this.elo1);
+        return n * (s1 - s0) * (2 * score - s0 - s1) / (2 * variance);
+    }
+
+    /**
+     * Decides the test for the given results.
+     *
+     * @param wins		games won by the first engine
+     * @param draws		games drawn
+     * @param losses	games lost by the first engine
+     * @return			CONTINUE, ACCEPT_H0 or ACCEPT_H1
+     */
+    public int decide(long wins, long draws, long losses){
+        double llr = this.llr(wins, draws, losses);
+        if(llr >= this.upperBound){
+            return ACCEPT_H1;
+        }
+        if(llr <= this.lowerBound){
+            return ACCEPT_H0;
+        }
+        return CONTINUE;
+    }
+
+    /**
+     * Returns the expected score of a player that is elo stronger than its opponent.
+     *
+     * @param elo	Elo difference
+     * @return		expected score between 0 and 1
+     */
+    public static double expectedScore(double elo){
+        return 1 / (1 + Math.pow(10, -elo / 400));
+    }
+
+    /**
+     * Returns the Elo difference that corresponds to an expected score.
+     *
+     * @param score	score between 0 and 1
+     * @return		Elo difference (infinite for a score of 0 or 1)
+     */
+    public static double elo(double score){
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    /**
+     * Returns the Elo difference estimated from the results and its 95% error margin.
+     *
+     * @param wins		games won by the first engine
+     * @param draws		games drawn
+     * @param losses	games lost by the first engine
+     * @return			{estimate, margin}; NaN while there are no games
+     */
+    public static double[] eloEstimate(long wins, long draws, long losses){
+        long n = wins + draws + losses;
+        if(n == 0){
+            return new double[]{Double.NaN, Double.NaN};
+        }
+        double score = (wins + draws * 0.5) / n;
+        double variance = (wins * sq(1 - score) + draws * sq(0.5 - score) + losses * sq(score)) / n;
+        double error = 1.96 * Math.sqrt(variance / n);
+        double low = elo(Math.max(score - error, 1e-6));
+        double high = elo(Math.min(score + error, 1 - 1e-6));
+        return new double[]{elo(score), (high - low) / 2};
+    }
+
+    private static double sq(double x){
+        return x * x;
+    }
+}
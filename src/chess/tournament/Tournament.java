@@ -0,0 +1,357 @@
+package chess.tournament;
+
+import chess.Chess;
+import chess.Move;
+import chess.Position;
+import chess.engine.Engine;
+import chess.engine.EngineConfig;
+import chess.engine.SearchResult;
+import chess.engine.TimeManager;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tournament plays many games between two engine configurations, without a board or any input,
+ * on all cores at once, and decides with a sequential probability ratio test (Sprt) whether the
+ * first one is stronger. Every opening position is played twice with colors swapped, so that an
+ * unbalanced opening favors neither engine. Games are played through Chess (playMove(),
+ * checkCheckStatus(), changeTurn()) and end on checkmate, stalemate, threefold repetition, the
+ * fifty-move rule or, as a draw, a move limit. Each result is printed as soon as the game ends,
+ * and the match stops as soon as the SPRT is decided.
+ * <p>
+ * With a clock (tc=, or nodetc= for a clock counting nodes), each engine has its own time for the
+ * game, plus an increment per move, and its searches are limited by a TimeManager instead of the
+ * engine's depth and node settings. An engine whose clock runs out loses on time.
+ *
+ * @author Seok Yim, Mae Khaled
+ */
+public class Tournament {
+    /**
+     * Opening positions, played in order.
+     */
+    public final List<Position> openings;
+    /**
+     * The engine under test.
+     */
+    public final EngineConfig first;
+    /**
+     * The engine it is compared with.
+     */
+    public final EngineConfig second;
+    /**
+     * The test deciding when to stop.
+     */
+    public final Sprt sprt;
+    /**
+     * Maximum number of games to play if the SPRT stays undecided.
+     */
+    public int maxGames = 20000;
+    /**
+     * Number of games played at the same time.
+     */
+    public int threads = Runtime.getRuntime().availableProcessors();
+    /**
+     * Number of plies after which a game is adjudicated a draw.
+     */
+    public int maxPlies = 400;
+    /**
+     * Time on each engine's clock at the start of a game, in milliseconds or, with nodeClock, in
+     * nodes; 0 for no clock.
+     */
+    public long clock = 0;
+    /**
+     * Time added to the clock after each move, in the unit of clock.
+     */
+    public long increment = 0;
+    /**
+     * Whether the clock counts nodes instead of milliseconds.
+     */
+    public boolean nodeClock = false;
+    /**
+     * Stream that results are written to.
+     */
+    public PrintStream out = System.out;
+
+    /**
+     * Index of the next game to start.
+     */
+    private final AtomicInteger nextGame = new AtomicInteger();
+    /**
+     * Set once the SPRT is decided; games still running are abandoned.
+     */
+    private volatile boolean decided = false;
+    /**
+     * Results from the point of view of the first engine. Guarded by this.
+     */
+    private long wins, draws, losses;
+
+    /**
+     * Constructor for Tournament.
+     *
+     * @param openings	opening positions
+     * @param first		the engine under test
+     * @param second	the engine it is compared with
+     * @param sprt		the test deciding when to stop
+     */
+    public Tournament(List<Position> openings, EngineConfig first, EngineConfig second, Sprt sprt){
+        this.openings = openings;
+        this.first = first;
+        this.second = second;
+        this.sprt = sprt;
+    }
+
+    /**
+     * The main method. Usage:
+     * Tournament openingsFile engineA engineB [games=N] [threads=N] [elo0=0] [elo1=5] [alpha=0.05] [beta=0.05] [maxplies=400]
+     * [tc=seconds+increment | nodetc=nodes+increment]
+     * <p>
+     * The openings file has one FEN (or EPD) position per line; empty lines and lines starting
+     * with '#' are skipped. Engines are given as described in EngineConfig, e.g. "new:depth=6,pst=80".
+     *
+     * @param args  the command line arguments
+     * @throws IOException	if the openings file cannot be read
+     * @throws InterruptedException	if interrupted while waiting for the games
+     */
+    public static void main(String[] args) throws IOException, InterruptedException{
+        if(args.length < 3){
+            System.err.println("Usage: Tournament openingsFile engineA engineB [games=N] [threads=N] [elo0=0] [elo1=5] [alpha=0.05] [beta=0.05] [maxplies=400] [tc=seconds+increment | nodetc=nodes+increment]");
+            System.exit(2);
+        }
+        double elo0 = 0, elo1 = 5, alpha = 0.05, beta = 0.05;
+        int games = 20000, threads = Runtime.getRuntime().availableProcessors(), max_plies = 400;
+        long clock = 0, increment = 0;
+        boolean node_clock = false;
+        for(int i = 3; i < args.length; i++){
+            String[] kv = args[i].split("=", 2);
+            switch(kv[0]){
+                case "games":
+                    games = Integer.parseInt(kv[1]);
+                    break;
+                case "threads":
+                    threads = Integer.parseInt(kv[1]);
+                    break;
+                case "elo0":
+                    elo0 = Double.parseDouble(kv[1]);
+                    break;
+                case "elo1":
+                    elo1 = Double.parseDouble(kv[1]);
+                    break;
+                case "alpha":
+                    alpha = Double.parseDouble(kv[1]);
+                    break;
+                case "beta":
+                    beta = Double.parseDouble(kv[1]);
+                    break;
+                case "maxplies":
+                    max_plies = Integer.parseInt(kv[1]);
+                    break;
+                case "tc":
+                case "nodetc":
+                    String[] parts = kv[1].split("\\+", 2);
+                    node_clock = kv[0].equals("nodetc");
+                    double scale = node_clock ? 1 : 1000;//seconds to milliseconds
+                    clock = Math.round(Double.parseDouble(parts[0]) * scale);
+                    increment = parts.length > 1 ? Math.round(Double.parseDouble(parts[1]) * scale) : 0;
+                    break;
+                default:
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+            }
+        }
+        Tournament tournament = new Tournament(readPositions(args[0]), new EngineConfig(args[1]),
+            new EngineConfig(args[2]), new Sprt(elo0, elo1, alpha, beta));
+        tournament.maxGames = games;
+        tournament.threads = threads;
+        tournament.maxPlies = max_plies;
+        tournament.clock = clock;
+        tournament.increment = increment;
+        tournament.nodeClock = node_clock;
+        tournament.run();
+    }
+
+    /**
+     * Reads positions from a file of FEN or EPD lines. Only the first four fields of each line
+     * (placement, side to move, castling, en passant) are used.
+     *
+     * @param file	path of the file
+     * @return		the positions, in file order
+     * @throws IOException	if the file cannot be read
+     */
+    public static List<Position> readPositions(String file) throws IOException{
+        List<Position> rl = new ArrayList<>();
+        for(String line : Files.readAllLines(Paths.get(file))){
+            line = line.trim();
+            if(line.isEmpty() || line.startsWith("#")){
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if(fields.length < 4){
+                throw new IOException("Not a FEN or EPD line: " + line);
+            }
+            rl.add(Position.fromFen(fields[0] + " " + fields[1] + " " + fields[2] + " " + fields[3]));
+        }
+        if(rl.isEmpty()){
+            throw new IOException("No positions in " + file);
+        }
+        return rl;
+    }
+
+    /**
+     * Plays the match until the SPRT is decided or maxGames games were played, then prints the
+     * final result.
+     *
+     * @throws InterruptedException	if interrupted while waiting for the games
+     */
+    public void run() throws InterruptedException{
+        this.out.printf("%s vs %s, %d openings, up to %d games on %d threads, SPRT elo0=%.1f elo1=%.1f bounds [%.2f, %.2f]%n",
+            this.first.name, this.second.name, this.openings.size(), this.maxGames, this.threads,
+            this.sprt.elo0, this.sprt.elo1, this.sprt.lowerBound, this.sprt.upperBound);
+        Thread[] workers = new Thread[this.threads];
+        for(int i = 0; i < workers.length; i++){
+            workers[i] = new Thread(this::playGames, "tournament-" + i);
+            workers[i].start();
+        }
+        for(Thread worker : workers){
+            worker.join();
+        }
+        synchronized(this){
+            int decision = this.sprt.decide(this.wins, this.draws, this.losses);
+            double[] elo = Sprt.eloEstimate(this.wins, this.draws, this.losses);
+            this.out.printf("Final: %s vs %s +%d =%d -%d, Elo %+.1f +/- %.1f, LLR %.2f: %s%n", this.first.name,
+                this.second.name, this.wins, this.draws, this.losses, elo[0], elo[1],
+                this.sprt.llr(this.wins, this.draws, this.losses),
+                decision == Sprt.ACCEPT_H1 ? "H1 accepted, " + this.first.name + " is stronger"
+                : decision == Sprt.ACCEPT_H0 ? "H0 accepted, " + this.first.name + " is not stronger"
+                : "undecided");
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Body of one worker thread: plays games until there are none left. Each worker has its own
+     * game and searches, so workers share nothing but the results.
+     */
+    private void playGames(){
+        Engine first_search = this.first.newEngine();
+        Engine second_search = this.second.newEngine();
+        Chess game = new Chess();
+        while(!this.decided){
+            int index = this.nextGame.getAndIncrement();
+            if(index >= this.maxGames){
+                break;
+            }
+            Position opening = this.openings.get((index / 2) % this.openings.size());
+            char first_color = index % 2 == 0 ? opening.turn : (opening.turn == 'w' ? 'b' : 'w');
+            first_search.newGame();
+            second_search.newGame();
+            game.setPosition(opening);
+            String reason = this.play(game, first_search, second_search, first_color);
+            if(reason == null){
+                break;//match decided while this game was running
+            }
+            this.record(index, first_color, game.winner, reason);
+        }
+    }
+
+    /**
+     * Plays one game to its end.
+     *
+     * @param game			game set up at its opening position
+     * @param firstSearch	search of the first engine
+     * @param secondSearch	search of the second engine
+     * @param firstColor	color the first engine plays
+     * @return				why the game ended (game.winner is set to 'w', 'b', or 'd' for a draw), or null if it was abandoned
+     */
+    private String play(Chess game, Engine firstSearch, Engine secondSearch, char firstColor){
+        long[] clocks = {this.clock, this.clock};//first engine, second engine
+        for(int plies = 0; ; plies++){
+            if(this.decided){
+                return null;
+            }
+            boolean first_to_move = game.turn == firstColor;
+            EngineConfig config = first_to_move ? this.first : this.second;
+            Engine search = first_to_move ? firstSearch : secondSearch;
+            SearchResult result;
+            if(this.clock > 0){
+                int side = first_to_move ? 0 : 1;
+                TimeManager time = this.nodeClock ? TimeManager.forNodes(clocks[side], this.increment, 0)
+                    : TimeManager.forClock(clocks[side], this.increment, 0);
+                result = search.search(game.position, game.history, time);
+                clocks[side] -= this.nodeClock ? result.nodes : result.nanos / 1_000_000;
+                if(clocks[side] < 0){
+                    game.winner = game.turn == 'w' ? 'b' : 'w';
+                    return "time forfeit";
+                }
+                clocks[side] += this.increment;
+            }
+            else{
+                result = search.search(game.position, game.history, config.depth, config.nodes);
+            }
+            if(result.bestMove == Move.NONE){//only when the opening itself is already decided
+                game.winner = game.position.isInCheck() ? (game.turn == 'w' ? 'b' : 'w') : 'd';
+                return game.winner == 'd' ? "stalemate" : "checkmate";
+            }
+            char mover = game.turn;
+            game.playMove(result.bestMove);
+            int check_status = game.checkCheckStatus();
+            game.changeTurn();
+            if(check_status == 2){
+                game.winner = mover;
+                return "checkmate";
+            }
+            if(check_status == 3){
+                return "stalemate";
+            }
+            if(game.isThreefoldRepetition()){
+                return "threefold repetition";
+            }
+            if(game.isFiftyMoveRule()){
+                return "fifty-move rule";
+            }
+            if(plies + 1 >= this.maxPlies){
+                return "move limit";
+            }
+        }
+    }
+
+    /**
+     * Counts the result of a finished game, prints it and checks whether the SPRT is decided.
+     *
+     * @param index			index of the game
+     * @param firstColor	color the first engine played
+     * @param winner		'w', 'b', or 'd' for a draw
+     * @param reason		why the game ended
+     */
+    private synchronized void record(int index, char firstColor, char winner, String reason){
+        if(this.decided){
+            return;
+        }
+        String result;
+        if(winner == 'd'){
+            this.draws++;
+            result = "1/2-1/2";
+        }
+        else if(winner == firstColor){
+            this.wins++;
+            result = winner == 'w' ? "1-0" : "0-1";
+        }
+        else{
+            this.losses++;
+            result = winner == 'w' ? "1-0" : "0-1";
+        }
+        String white = firstColor == 'w' ? this.first.name : this.second.name;
+        String black = firstColor == 'w' ? this.second.name : this.first.name;
+        double[] elo = Sprt.eloEstimate(this.wins, this.draws, this.losses);
+        double llr = this.sprt.llr(this.wins, this.draws, this.losses);
+        this.out.printf("Game %d: %s - %s %s (%s)  +%d =%d -%d  Elo %+.1f +/- %.1f  LLR %.2f%n", index + 1, white,
+            black, result, reason, this.wins, this.draws, this.losses, elo[0], elo[1], llr);
+        if(this.sprt.decide(this.wins, this.draws, this.losses) != Sprt.CONTINUE){
+            this.decided = true;
+        }
+    }
+}